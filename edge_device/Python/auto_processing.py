@@ -1,4 +1,4 @@
-import os, cv2, pickle, shutil, threading, time, datetime, serial, mysql.connector
+import os, cv2, pickle, shutil, socket, threading, time, datetime, serial, mysql.connector, collections
 import serial.tools.list_ports
 import face_recognition
 import numpy as np
@@ -58,6 +58,30 @@ BRIGHTNESS_THRESHOLD = 32   # minimum average brightness
 # Cooldown between door-open commands on same face
 OPEN_DOOR_COOLDOWN = 5      # seconds
 
+# Door command server for the app, only on loopback as the app reaches it through SSH
+COMMAND_HOST = "127.0.0.1"
+COMMAND_PORT = 5050
+# Seconds to wait for each line the Arduino prints as the door moves before answering with an error
+ACK_TIMEOUT  = 5
+# The Arduino reads a command until serial has been quiet for a second, closer ones would run together
+SERIAL_GAP   = 1.1
+
+# App command -> (Arduino command, ack detail)
+DOOR_COMMANDS = {
+    "open":  ("1", "opened"),
+    "close": ("2", "closed"),
+}
+
+# Arduino command -> lines it prints as the door moves, in order
+DOOR_LINES = {
+    "1": ("Door opened.",),
+    "2": ("Door closed.",),
+    "3": ("Door opened.", "Door closed."),
+}
+# The manual button opens and closes the door without being asked
+MANUAL_LINE  = "Manual open button pressed."
+MANUAL_LINES = ("Door opened.", "Door closed.")
+
 # ------------------------- Paths & Files -------------------------
 
 base_dir      = Path(__file__).parent
@@ -89,6 +113,19 @@ cam.configure(
 # Lock to serialize calls into dlib/face_recognition
 DLIB_LOCK = threading.Lock()
 
+# Lock around writing to the Arduino, so commands from the app, the face loop and the
+# command file go out one at a time and are queued in the order they were written
+SERIAL_LOCK = threading.Lock()
+last_write  = 0.0
+
+# Lock around the commands waiting for the Arduino, see ack_waiting
+ACK_LOCK = threading.Lock()
+# Commands written that the Arduino hasn't finished, oldest first. It carries them out one at a
+# time, so its door lines belong to the oldest. Each is [deadline, lines still to come, reply or None, ack detail]
+in_flight = collections.deque()
+# Lines still to come from a press of the manual button
+manual_lines = collections.deque()
+
 # ------------------------- Utility Functions -------------------------
 
 def log(msg):
@@ -102,15 +139,30 @@ def log(msg):
         f.write(line + "\n")
         f.flush()
 
-def send_command(cmd):
+def send_command(cmd, reply=None, detail=None):
     """
     Send a one-character command to the Arduino over serial,
     then log a descriptive message for that command.
+    If reply is given it's answered with "ack DETAIL" once the door has moved, or an error.
     """
-    try:
-        arduino.write(bytes(cmd, 'utf-8'))
-    except Exception as e:
-        log(f"[ERROR] Sending command {cmd}: {e}")
+    global last_write
+    with SERIAL_LOCK:
+        wait = last_write + SERIAL_GAP - time.time()
+        if wait > 0:
+            time.sleep(wait)
+        try:
+            arduino.write(bytes(cmd, 'utf-8'))
+            written = True
+        except Exception as e:
+            log(f"[ERROR] Sending command {cmd}: {e}")
+            written = False
+        last_write = time.time()
+        if written and cmd in DOOR_LINES:
+            lines = DOOR_LINES[cmd]
+            with ACK_LOCK:
+                in_flight.append([last_write + ACK_TIMEOUT * len(lines), collections.deque(lines), reply, detail])
+    if not written and reply:
+        reply("err could not reach the door")
     time.sleep(0.05)
 
     # Map command codes to log messages
@@ -134,6 +186,7 @@ def read():
         line = arduino.readline().decode("utf-8", errors="ignore").strip()
         if line:
             log(f"Arduino: {line}")
+            ack_waiting(line)
             if line == "Doorbell rung.":
                 sendMotionNotif.personAtDoorNotif()
     except Exception as e:
@@ -155,13 +208,87 @@ def python_loop():
     """
     Loop that checks for commands from the app (via file),
     forwards them to Arduino, and logs incoming serial messages.
+    read() waits up to timeout_s for a line, so the loop doesn't need to sleep.
     """
     while True:
         cmd = check_command()
         if cmd:
             send_command(cmd)
         read()
-        time.sleep(0.1)
+        expire_acks()
+
+# ------------------------- App Command Server -------------------------
+
+def ack_waiting(line):
+    """
+    Match an Arduino line to the command that caused it, acknowledging the command once
+    all of its lines are in. Lines from the manual button, or that no command asked for, are left alone.
+    """
+    with ACK_LOCK:
+        if line == MANUAL_LINE:
+            manual_lines.extend(MANUAL_LINES)
+            return
+        if manual_lines and manual_lines[0] == line:
+            manual_lines.popleft()
+            return
+        if not in_flight or in_flight[0][1][0] != line:
+            return
+        done = in_flight[0]
+        done[1].popleft()
+        if done[1]:
+            return
+        in_flight.popleft()
+    if done[2]:
+        done[2](f"ack {done[3]}")
+
+def expire_acks():
+    """Answer commands the Arduino never confirmed with an error."""
+    now = time.time()
+    with ACK_LOCK:
+        expired = [c for c in in_flight if c[0] <= now]
+        for command in expired:
+            in_flight.remove(command)
+    for _, _, reply, _ in expired:
+        if reply:
+            reply("err door did not report moving")
+
+def handle_command_connection(conn):
+    """
+    Serve one app connection. Each line is "ID COMMAND" and is answered with
+    "ID ack DETAIL" once the door has moved, or "ID err REASON".
+    """
+    write_lock = threading.Lock()
+    with conn, conn.makefile("r", encoding="utf-8") as lines:
+        for line in lines:
+            parts = line.split()
+            if len(parts) != 2:
+                continue
+            cmd_id, name = parts
+
+            def reply(answer, cmd_id=cmd_id):
+                try:
+                    with write_lock:
+                        conn.sendall(f"{cmd_id} {answer}\n".encode("utf-8"))
+                except OSError:
+                    pass  # App has gone, nothing to tell
+
+            if name not in DOOR_COMMANDS:
+                reply("err unknown command")
+                continue
+            code, detail = DOOR_COMMANDS[name]
+            send_command(code, reply, detail)
+
+def command_server():
+    """Accept door command connections from the app, each on its own thread."""
+    server = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+    server.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+    server.bind((COMMAND_HOST, COMMAND_PORT))
+    server.listen()
+    log(f"[INFO] Command server started on {COMMAND_HOST}:{COMMAND_PORT}.")
+    while True:
+        conn, _ = server.accept()
+        conn.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        threading.Thread(target=handle_command_connection, args=(conn,), daemon=True).start()
 
 # ------------------------- dlib-safe wrappers -------------------------
 
@@ -420,6 +547,7 @@ def main():
     threading.Thread(target=start_ftp_server,    daemon=True).start()
     threading.Thread(target=auto_process_loop,   daemon=True).start()
     threading.Thread(target=python_loop,         daemon=True).start()
+    threading.Thread(target=command_server,      daemon=True).start()
     try:
         run_live_recognition()
     except KeyboardInterrupt:
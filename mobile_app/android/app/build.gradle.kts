@@ -30,6 +30,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // Lets JVM unit tests call code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+        // Benchmarks are skipped unless asked for, e.g. ./gradlew testDebugUnitTest -Pjmh.full --tests "*BenchmarkTest"
+        unitTests.all { it.systemProperty("knockly.jmh.full", project.hasProperty("jmh.full")) }
+    }
 }
 
 dependencies {
@@ -51,11 +57,15 @@ dependencies {
 
     /* ───── tests ───── */
     testImplementation(libs.junit)
+    testImplementation(libs.sshd.core)      // embedded SSH server for the discovery benchmarks
+    testImplementation(libs.jmh.core)       // microbenchmarks of the SSH layer
+    testAnnotationProcessor(libs.jmh.annprocess)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 
     /* ───── SSH ───── */
     implementation(libs.jsch)
+    implementation(libs.bcprov)             // curve25519, ed25519 and chacha20 for JSch, Android's own provider lacks them
 
     /* ───── RTSP ───── */
     implementation(libs.androidx.media3.exoplayer)
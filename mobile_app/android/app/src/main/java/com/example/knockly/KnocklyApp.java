@@ -4,9 +4,15 @@ import android.app.Application;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 
+import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.media3.common.util.UnstableApi;
 
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.discovery.DoorbellLocator;
+import com.example.knockly.feed.FeedPlayerPool;
 import com.example.knockly.network.repository.AuthRepository;
+import com.example.knockly.ssh.SshConnector;
 import com.example.knockly.utils.LoginManager;
 
 // Custom application file to set up app wide components
@@ -19,6 +25,12 @@ public class KnocklyApp extends Application {
         LoginManager lm = LoginManager.getInstance(this);
         AuthRepository.getInstance(lm);
 
+        // Load the Pis' saved host keys and the app's SSH key before anything logs in
+        SshConnector.getInstance().init(this);
+
+        // Start locating the doorbells on the network before the home page needs them
+        DoorbellLocator.getInstance(this).start();
+
         // Create notification channel to send push notifications
         NotificationChannel channel = new NotificationChannel(
                 "default_channel",
@@ -32,4 +44,17 @@ public class KnocklyApp extends Application {
         // Delete line to allow dark mode
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_NO);
     }
+
+    // Log how busy the background pools got each time the app leaves the screen,
+    // and stop keeping feed players warm for pages that can't be seen
+    @OptIn(markerClass = UnstableApi.class)
+    @Override
+    public void onTrimMemory(int level){
+        super.onTrimMemory(level);
+        if (level == TRIM_MEMORY_UI_HIDDEN) {
+            AppExecutors.getInstance().logMetrics();
+            FeedPlayerPool.getInstance(this).logMetrics();
+            FeedPlayerPool.getInstance(this).releaseIdle();
+        }
+    }
 }
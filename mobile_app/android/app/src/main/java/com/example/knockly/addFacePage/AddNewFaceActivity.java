@@ -31,6 +31,9 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.example.knockly.R;
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.concurrent.LifecycleTaskScope;
 import com.example.knockly.shared.PageHeaderFragment;
 import com.example.knockly.utils.PermissionUtils;
 
@@ -51,6 +54,8 @@ public class AddNewFaceActivity extends AppCompatActivity {
     private Button btnUpload;
     private Button reRecordBtn;
     private TextView successMsg;
+    // Background work for this page, cancelled when it closes
+    private final LifecycleTaskScope tasks = new LifecycleTaskScope(this);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -160,8 +165,9 @@ public class AddNewFaceActivity extends AppCompatActivity {
             Toast.makeText(this, "A mame must be given before face can be added.", Toast.LENGTH_SHORT).show();
         }
 
-        // use a separate thread for FTP because we don’t wanna block the UI
-        new Thread(() -> {
+        // use the network pool for FTP because we don’t wanna block the UI
+        // not cancelled with the page, the face should still be added if the user leaves
+        AppExecutors.getInstance().network().execute(AppExecutor.Priority.HIGH, () -> {
             try {
                 FTPClient ftp = new FTPClient();
 
@@ -202,7 +208,7 @@ public class AddNewFaceActivity extends AppCompatActivity {
                         Toast.makeText(AddNewFaceActivity.this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show()
                 );
             }
-        }).start();
+        });
     }
 
     private boolean validateVideo(File videoFile) {
@@ -284,12 +290,16 @@ public class AddNewFaceActivity extends AppCompatActivity {
 
         if (requestCode == VIDEO_REQUEST) {
             if (resultCode == RESULT_OK) {
-                if (validateVideo(savedVideoFile)) {
-                    videoExists = true;
-                    Toast.makeText(this, "Video saved successfully.", Toast.LENGTH_SHORT).show();
-                    switchToReRecordBtn();
-                    enableSubmitVidBtn();
-                }
+                // Checking the video means decoding it, so do it off the main thread
+                final File recordedFile = savedVideoFile;
+                tasks.supply(AppExecutors.getInstance().media(), AppExecutor.Priority.HIGH, () -> validateVideo(recordedFile))
+                        .thenAccept(valid -> runOnUiThread(() -> {
+                            if (!valid || tasks.isCancelled()) return;
+                            videoExists = true;
+                            Toast.makeText(this, "Video saved successfully.", Toast.LENGTH_SHORT).show();
+                            switchToReRecordBtn();
+                            enableSubmitVidBtn();
+                        }));
             } else if (resultCode == RESULT_CANCELED) {
                 Toast.makeText(this, "Video recording cancelled.", Toast.LENGTH_SHORT).show();
                 if (!videoExists) {
@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
+import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
@@ -15,8 +16,13 @@ import androidx.core.view.WindowInsetsCompat;
 import com.example.knockly.R;
 import com.example.knockly.loginPage.LoginActivity;
 import com.example.knockly.shared.PageHeaderFragment;
+import com.example.knockly.ssh.DoorLatencyMetrics;
+import com.example.knockly.ssh.SshConnector;
 import com.example.knockly.utils.LoginManager;
 
+import java.io.File;
+import java.io.IOException;
+
 public class AppSettingsActivity extends AppCompatActivity {
     private LoginManager lm = LoginManager.getInstance(this);
 
@@ -47,5 +53,29 @@ public class AppSettingsActivity extends AppCompatActivity {
             }
         });
 
+        // Saves the door open/close timings so they can be pulled off the phone and compared
+        Button exportLatencyButton = findViewById(R.id.exportLatencyButton);
+        exportLatencyButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                File file = new File(getExternalFilesDir(null), DoorLatencyMetrics.EXPORT_FILE_NAME);
+                try {
+                    DoorLatencyMetrics.export(file);
+                    Toast.makeText(AppSettingsActivity.this, "Door latency saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    Toast.makeText(AppSettingsActivity.this, "Error saving door latency: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+
+        // A reinstalled Pi has a new host key, which is refused until the old one is forgotten
+        Button forgetKeysButton = findViewById(R.id.forgetHostKeysButton);
+        forgetKeysButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                SshConnector.getInstance().forgetHostKeys();
+                Toast.makeText(AppSettingsActivity.this, "Doorbell keys on this network forgotten, they'll be trusted on next connect", Toast.LENGTH_LONG).show();
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.example.knockly.concurrent;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named pool with a fixed number of threads, which only exist while there is work for them.
+ * Waiting tasks run highest {@link Priority} first, then in the order they were submitted.
+ * Keeps track of how far its queue has backed up, see {@link AppExecutors#logMetrics()}.
+ */
+public class AppExecutor extends ThreadPoolExecutor {
+    private static final String TAG = "AppExecutor";
+
+    // Idle threads are stopped after this
+    private static final long KEEP_ALIVE_MS = 30000;
+
+    public enum Priority {
+        // Someone is waiting on it, e.g. a door tap
+        HIGH,
+        NORMAL,
+        // Nobody is waiting yet, e.g. warming a session
+        LOW
+    }
+
+    private final String name;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    // Queued tasks are wrapped so the queue can order them
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        final Priority priority;
+        final long sequence;
+        final Runnable task;
+
+        PrioritizedTask(Priority priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public AppExecutor(String name, int threads) {
+        super(threads, threads, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+        this.name = name;
+        allowCoreThreadTimeOut(true);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        setThreadFactory(runnable -> {
+            Thread thread = new Thread(runnable, "knockly-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(Priority.NORMAL, task);
+    }
+
+    public void execute(Priority priority, Runnable task) {
+        PrioritizedTask prioritized = task instanceof PrioritizedTask
+                ? (PrioritizedTask) task
+                : new PrioritizedTask(priority, nextSequence.incrementAndGet(), task);
+        super.execute(prioritized);
+
+        int depth = getQueue().size();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+        // Only says so when a pool is clearly backing up, not for every task
+        if (depth > peak && depth >= 8 && Integer.bitCount(depth) == 1) {
+            Log.d(TAG, "execute() :: " + name + " pool has " + depth + " tasks waiting");
+        }
+    }
+
+    /**
+     * Runs the task on this pool.
+     * @return future holding the task's result, cancelling it interrupts the task if it has started
+     */
+    public <T> CompletableFuture<T> supply(Priority priority, Callable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final FutureTask<Void> run = new FutureTask<>(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) run.cancel(true);
+        });
+        execute(priority, run);
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Priority priority, Runnable task) {
+        return supply(priority, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Most tasks that have been waiting at once
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    // One line summary for the logs
+    public String describe() {
+        return name + ": " + getActiveCount() + "/" + getMaximumPoolSize() + " busy, "
+                + getPoolSize() + " threads (peak " + getLargestPoolSize() + "), "
+                + getQueue().size() + " waiting (peak " + peakQueueDepth.get() + "), "
+                + getCompletedTaskCount() + " done";
+    }
+}
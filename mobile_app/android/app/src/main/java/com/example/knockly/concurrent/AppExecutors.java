@@ -0,0 +1,91 @@
+package com.example.knockly.concurrent;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's background threads, shared by every screen so the total stays bounded.
+ * - network: HTTP, FTP and scanning the Wi-Fi network
+ * - ssh: logins and commands on the Pis, including reads that last as long as a channel is open
+ * - media: decoding and checking video
+ * - cpu: work that only needs the processor, one thread per core
+ * The scheduler only times things, anything slow it triggers should be handed to a pool with
+ * {@link #schedule(Executor, Runnable, long)}, and work that needs its own limit or order goes
+ * through a {@link BoundedExecutor} on one of the pools.
+ * To use call "AppExecutors.getInstance()", then e.g. "ssh().supply(Priority.HIGH, ...)"
+ */
+public class AppExecutors {
+    private static final String TAG = "AppExecutors";
+
+    static final int NETWORK_THREADS = 16;
+    static final int SSH_THREADS = 16;
+    static final int MEDIA_THREADS = 4;
+
+    private static AppExecutors instance;
+
+    private final AppExecutor network = new AppExecutor("network", NETWORK_THREADS);
+    private final AppExecutor ssh = new AppExecutor("ssh", SSH_THREADS);
+    private final AppExecutor media = new AppExecutor("media", MEDIA_THREADS);
+    private final AppExecutor cpu = new AppExecutor("cpu", Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "knockly-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AppExecutors() {}
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    public AppExecutor network() {
+        return network;
+    }
+
+    public AppExecutor ssh() {
+        return ssh;
+    }
+
+    public AppExecutor media() {
+        return media;
+    }
+
+    public AppExecutor cpu() {
+        return cpu;
+    }
+
+    // Only for quick tasks such as failing a future that timed out
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    // Runs the task on the executor after the delay, without holding up the scheduler
+    public ScheduledFuture<?> schedule(Executor executor, Runnable task, long delayMs) {
+        return scheduler.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs the task on the executor every intervalMs, each run starting intervalMs after the last was handed over
+    public ScheduledFuture<?> scheduleWithFixedDelay(Executor executor, Runnable task, long intervalMs) {
+        return scheduler.scheduleWithFixedDelay(() -> executor.execute(task), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public AppExecutor[] pools() {
+        return new AppExecutor[]{network, ssh, media, cpu};
+    }
+
+    // Logs how busy each pool is and how far its queue has backed up
+    public void logMetrics() {
+        for (AppExecutor pool : pools()) {
+            Log.d(TAG, "logMetrics() :: " + pool.describe());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.knockly.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs at most maxConcurrent of its tasks at once on a shared {@link AppExecutor}, the rest wait in
+ * the order they were given. Threads are only borrowed from the pool while there are tasks, so
+ * work that needs its own limit (or its own order, see {@link #serial}) doesn't need its own threads.
+ */
+public class BoundedExecutor implements Executor {
+    private final AppExecutor pool;
+    private final AppExecutor.Priority priority;
+    private final int maxConcurrent;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    // Pool threads currently running this executor's tasks
+    private final Set<Thread> running = new HashSet<>();
+    private int drainers = 0;
+    private boolean shutdown = false;
+
+    public BoundedExecutor(AppExecutor pool, AppExecutor.Priority priority, int maxConcurrent) {
+        this.pool = pool;
+        this.priority = priority;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    // Runs tasks one at a time, in order
+    public static BoundedExecutor serial(AppExecutor pool, AppExecutor.Priority priority) {
+        return new BoundedExecutor(pool, priority, 1);
+    }
+
+    /**
+     * @throws RejectedExecutionException once {@link #shutdown()} or {@link #shutdownNow()} has been called
+     */
+    @Override
+    public synchronized void execute(Runnable task) {
+        if (shutdown) throw new RejectedExecutionException("Executor has been shut down");
+        tasks.add(task);
+        if (drainers < maxConcurrent) {
+            drainers++;
+            pool.execute(priority, this::drain);
+        }
+    }
+
+    // Tasks already given still run, new ones are rejected
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    // Drops the waiting tasks and interrupts the running ones
+    public synchronized void shutdownNow() {
+        shutdown = true;
+        tasks.clear();
+        for (Thread thread : running) {
+            thread.interrupt();
+        }
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void drain() {
+        Thread thread = Thread.currentThread();
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    drainers--;
+                    running.remove(thread);
+                    return;
+                }
+                running.add(thread);
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // One failing task shouldn't stop the ones behind it
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.knockly.concurrent;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * {@link TaskScope} tied to an activity or fragment, cancelled when it is destroyed.
+ * For a fragment's views pass getViewLifecycleOwner(), so work stops when the views do.
+ */
+public class LifecycleTaskScope extends TaskScope implements DefaultLifecycleObserver {
+
+    public LifecycleTaskScope(LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(this);
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+        cancel();
+    }
+}
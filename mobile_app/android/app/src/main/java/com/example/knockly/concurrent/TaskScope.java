@@ -0,0 +1,57 @@
+package com.example.knockly.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Background work belonging to one screen, cancelled all at once when the screen goes away.
+ * Tasks not yet started are dropped and running ones are interrupted, and anything started
+ * after cancelling is cancelled straight away.
+ * Activities and fragments use {@link LifecycleTaskScope}, which cancels itself when destroyed.
+ */
+public class TaskScope {
+    private final Set<CompletableFuture<?>> tasks = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+    public <T> CompletableFuture<T> supply(AppExecutor pool, AppExecutor.Priority priority, Callable<T> task) {
+        if (cancelled) return cancelledFuture();
+        return track(pool.supply(priority, task));
+    }
+
+    public CompletableFuture<Void> run(AppExecutor pool, AppExecutor.Priority priority, Runnable task) {
+        if (cancelled) return cancelledFuture();
+        return track(pool.run(priority, task));
+    }
+
+    // Cancels the future along with the scope, for work started elsewhere (e.g. SshExec)
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        tasks.add(future);
+        future.whenComplete((value, e) -> tasks.remove(future));
+        if (cancelled) future.cancel(true);
+        return future;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Tasks started and not yet finished
+    public int getActiveCount() {
+        return tasks.size();
+    }
+
+    private static <T> CompletableFuture<T> cancelledFuture() {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.cancel(true);
+        return future;
+    }
+}
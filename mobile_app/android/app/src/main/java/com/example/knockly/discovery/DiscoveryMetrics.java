@@ -0,0 +1,42 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters for how Pis end up being found, for the lifetime of the app process.
+ * Currently tracks how often the neighbour table fast path already knew the Pi's address.
+ */
+public class DiscoveryMetrics {
+    private static final String TAG = "DiscoveryMetrics";
+
+    private static final AtomicInteger piLookups = new AtomicInteger();
+    private static final AtomicInteger fastPathHits = new AtomicInteger();
+
+    // Call once for every Pi that was found, hit is true if it came from the neighbour table
+    public static void recordPiFound(boolean fastPathHit) {
+        int lookups = piLookups.incrementAndGet();
+        int hits = fastPathHit ? fastPathHits.incrementAndGet() : fastPathHits.get();
+        Log.d(TAG, "Neighbour table fast path hits: " + hits + "/" + lookups);
+    }
+
+    public static int getPiLookups() {
+        return piLookups.get();
+    }
+
+    public static int getFastPathHits() {
+        return fastPathHits.get();
+    }
+
+    // Fraction of found Pis that were already in the neighbour table, 0 if none found yet
+    public static double getFastPathHitRate() {
+        int lookups = piLookups.get();
+        return lookups == 0 ? 0 : (double) fastPathHits.get() / lookups;
+    }
+
+    public static void reset() {
+        piLookups.set(0);
+        fastPathHits.set(0);
+    }
+}
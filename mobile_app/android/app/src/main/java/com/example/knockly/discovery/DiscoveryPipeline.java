@@ -0,0 +1,124 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.concurrent.BoundedExecutor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams hosts from a {@link HostSource} straight into an identification stage.
+ * Each host is checked as soon as it answers, and the first one identified as a Pi completes the
+ * returned future. Any scanning or identification still running at that point is cancelled.
+ */
+public class DiscoveryPipeline {
+    private static final String TAG = "DiscoveryPipeline";
+
+    public static final int DEFAULT_MAX_IDENTIFICATIONS = 8;
+
+    // Decides whether a host is the Pi being looked for
+    public interface Identifier {
+        boolean identify(String ip) throws Exception;
+    }
+
+    private final HostSource source;
+    private final Identifier identifier;
+    private final int maxConcurrentIdentifications;
+
+    public DiscoveryPipeline(HostSource source, Identifier identifier) {
+        this(source, identifier, DEFAULT_MAX_IDENTIFICATIONS);
+    }
+
+    public DiscoveryPipeline(HostSource source, Identifier identifier, int maxConcurrentIdentifications) {
+        this.source = source;
+        this.identifier = identifier;
+        this.maxConcurrentIdentifications = maxConcurrentIdentifications;
+    }
+
+    /**
+     * Starts discovery in the background.
+     * @param knownHosts hosts from earlier scans, identified straight away alongside the live scan
+     * @param timeoutMs time the source is given to find hosts
+     * @return future holding the first identified IP, or null once every host has been ruled out
+     */
+    public CompletableFuture<String> find(List<String> knownHosts, long timeoutMs) {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final AppExecutor network = AppExecutors.getInstance().network();
+        final BoundedExecutor identifyPool = new BoundedExecutor(network, AppExecutor.Priority.NORMAL, maxConcurrentIdentifications);
+        final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+        // The source plus every identification still running, result is null when this reaches 0
+        final AtomicInteger outstanding = new AtomicInteger(1);
+
+        final HostSource.Listener identifyStage = new HostSource.Listener() {
+            @Override
+            public void onHostFound(String ip) {
+                if (result.isDone() || !seen.add(ip)) return;
+
+                outstanding.incrementAndGet();
+                try {
+                    identifyPool.execute(() -> {
+                        try {
+                            if (!result.isDone() && identifier.identify(ip)) {
+                                Log.d(TAG, "find() :: identified " + ip);
+                                result.complete(ip);
+                            }
+                        } catch (Exception e) {
+                            Log.d(TAG, "find() :: could not identify " + ip + ": " + e.getMessage());
+                        } finally {
+                            if (outstanding.decrementAndGet() == 0) result.complete(null);
+                            synchronized (outstanding) {
+                                outstanding.notifyAll();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Identification was shut down because a Pi has already been found
+                    outstanding.decrementAndGet();
+                }
+            }
+
+            // Only the source itself is left outstanding once every host it reported has been checked
+            @Override
+            public boolean wantsMore() throws InterruptedException {
+                synchronized (outstanding) {
+                    while (!result.isDone() && outstanding.get() > 1) {
+                        outstanding.wait();
+                    }
+                }
+                return !result.isDone();
+            }
+        };
+
+        final CompletableFuture<Void> sourceTask = network.run(AppExecutor.Priority.NORMAL, () -> {
+            try {
+                if (knownHosts != null) {
+                    for (String ip : knownHosts) {
+                        identifyStage.onHostFound(ip);
+                    }
+                }
+                source.discover(timeoutMs, identifyStage);
+            } finally {
+                if (outstanding.decrementAndGet() == 0) result.complete(null);
+            }
+        });
+
+        // Cancel everything left over once there is an answer, or the caller gives up
+        result.whenComplete((ip, error) -> {
+            sourceTask.cancel(true);
+            identifyPool.shutdownNow();
+            synchronized (outstanding) {
+                outstanding.notifyAll();
+            }
+        });
+
+        return result;
+    }
+}
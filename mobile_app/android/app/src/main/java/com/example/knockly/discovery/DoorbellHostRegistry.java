@@ -0,0 +1,47 @@
+package com.example.knockly.discovery;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers the address of each doorbell Pi per Wi-Fi network, so the home page can use them
+ * straight away next time instead of waiting for a scan.
+ * Entries are keyed by {@link NetworkIdentity#currentKey(Context)} and the Pi's role ("main" / "feed").
+ * To use call "DoorbellHostRegistry.getInstance(context)"
+ */
+public class DoorbellHostRegistry {
+
+    private static final String PREFS_NAME = "doorbellHosts";
+
+    private static DoorbellHostRegistry instance;
+
+    private final SharedPreferences prefs;
+
+    private DoorbellHostRegistry(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized DoorbellHostRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new DoorbellHostRegistry(context);
+        }
+        return instance;
+    }
+
+    // Returns the last known address, or an empty string if this Pi hasn't been found on the network
+    public String getHost(String networkKey, String role) {
+        return prefs.getString(key(networkKey, role), "");
+    }
+
+    public void putHost(String networkKey, String role, String ip) {
+        prefs.edit().putString(key(networkKey, role), ip).apply();
+    }
+
+    public void removeHost(String networkKey, String role) {
+        prefs.edit().remove(key(networkKey, role)).apply();
+    }
+
+    private static String key(String networkKey, String role) {
+        return networkKey + "|" + role;
+    }
+}
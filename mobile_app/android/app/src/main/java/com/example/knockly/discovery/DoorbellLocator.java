@@ -0,0 +1,231 @@
+package com.example.knockly.discovery;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.utils.SSHUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * App wide holder for where each doorbell Pi is on the current network.
+ * Started from KnocklyApp, it locates the Pis in the background whenever Wi-Fi connects,
+ * so by the time the home page opens the addresses are usually already known.
+ * Screens read the current addresses and register a {@link Listener} to hear about changes.
+ * To use call "DoorbellLocator.getInstance(context)"
+ */
+public class DoorbellLocator {
+    private static final String TAG = "DoorbellLocator";
+
+    public static final String ROLE_MAIN = "main";
+    public static final String ROLE_FEED = "feed";
+
+    // Login details for each of the doorbell's Pis, markers match edge_device/Discovery
+    private static final List<PiProfile> PROFILES = Arrays.asList(
+            new PiProfile(ROLE_MAIN, "admin", "admin", "knockly-main"),
+            new PiProfile(ROLE_FEED, "pi", "raspberry", "knockly-feed")
+    );
+
+    // Don't locate again on the same network more often than this unless asked to
+    private static final long MIN_INTERVAL_MS = 30000;
+
+    public enum State { LOCATING, FOUND, NOT_FOUND }
+
+    // Always called on the main thread
+    public interface Listener {
+        void onDoorbellHostsChanged(DoorbellLocator locator);
+    }
+
+    private static DoorbellLocator instance;
+
+    private final Context context;
+    private final DoorbellHostRegistry registry;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, String> hosts = new ConcurrentHashMap<>();
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean running = false;
+    private long lastRunMs = 0;
+    private String lastNetworkKey = null;
+
+    private DoorbellLocator(Context context) {
+        this.context = context.getApplicationContext();
+        registry = DoorbellHostRegistry.getInstance(this.context);
+
+        // Start with whatever was found last time on this network
+        String networkKey = NetworkIdentity.currentKey(this.context);
+        for (PiProfile profile : PROFILES) {
+            hosts.put(profile.role, registry.getHost(networkKey, profile.role));
+            states.put(profile.role, State.LOCATING);
+        }
+    }
+
+    public static synchronized DoorbellLocator getInstance(Context context) {
+        if (instance == null) {
+            instance = new DoorbellLocator(context);
+        }
+        return instance;
+    }
+
+    // Locate the Pis every time a Wi-Fi network becomes available, called once when the app starts
+    public void start() {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return;
+
+        NetworkRequest wifi = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                .build();
+        cm.registerNetworkCallback(wifi, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                Log.d(TAG, "onAvailable() :: Wi-Fi connected");
+                refresh(false);
+            }
+
+            @Override
+            public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+                // Address changes (e.g. a new DHCP lease) can move the phone to a different subnet
+                refresh(false);
+            }
+
+            @Override
+            public void onLost(@NonNull Network network) {
+                Log.d(TAG, "onLost() :: Wi-Fi lost");
+                // So reconnecting soon after, even to the same network, locates again and the badges recover
+                synchronized (DoorbellLocator.this) {
+                    lastRunMs = 0;
+                    lastNetworkKey = null;
+                }
+                for (PiProfile profile : PROFILES) {
+                    states.put(profile.role, State.NOT_FOUND);
+                }
+                publish();
+            }
+        });
+    }
+
+    /**
+     * Locates the Pis in the background.
+     * @param force run even if the Pis were located on this network recently
+     */
+    public void refresh(boolean force) {
+        synchronized (this) {
+            if (running) return;
+            boolean recent = SystemClock.elapsedRealtime() - lastRunMs < MIN_INTERVAL_MS;
+            if (!force && recent && NetworkIdentity.currentKey(context).equals(lastNetworkKey)) return;
+            running = true;
+        }
+
+        // Only one run at a time thanks to running, nobody is waiting on it yet so it goes behind other network work
+        AppExecutors.getInstance().network().execute(AppExecutor.Priority.LOW, () -> {
+            try {
+                locate();
+            } finally {
+                synchronized (this) {
+                    running = false;
+                    lastRunMs = SystemClock.elapsedRealtime();
+                }
+            }
+        });
+    }
+
+    // Address of the Pi with the given role, blank if not known
+    public String getHost(String role) {
+        String host = hosts.get(role);
+        return host == null ? "" : host;
+    }
+
+    public State getState(String role) {
+        State state = states.get(role);
+        return state == null ? State.NOT_FOUND : state;
+    }
+
+    public PiProfile getProfile(String role) {
+        for (PiProfile profile : PROFILES) {
+            if (profile.role.equals(role)) return profile;
+        }
+        return null;
+    }
+
+    // True while any of the Pis is still being looked for
+    public boolean isLocating() {
+        return states.containsValue(State.LOCATING);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void locate() {
+        String networkKey = NetworkIdentity.currentKey(context);
+        synchronized (this) {
+            lastNetworkKey = networkKey;
+        }
+
+        // Show the remembered addresses straight away while they're checked
+        for (PiProfile profile : PROFILES) {
+            hosts.put(profile.role, registry.getHost(networkKey, profile.role));
+            states.put(profile.role, State.LOCATING);
+        }
+        publish();
+
+        // Only scan for Pis whose remembered address has stopped answering
+        List<PiProfile> missing = new ArrayList<>();
+        for (PiProfile profile : PROFILES) {
+            if (SSHUtils.hostIsReachable(getHost(profile.role))) {
+                states.put(profile.role, State.FOUND);
+            } else {
+                missing.add(profile);
+            }
+        }
+        publish();
+        if (missing.isEmpty()) return;
+
+        // All missing Pis are found in one scan
+        Map<String, String> found = SSHUtils.getPiIPs(context, missing);
+        for (PiProfile profile : missing) {
+            String piHost = found.get(profile.role);
+            Log.d(TAG, "locate() :: Found piHost for " + profile.role + ": " + piHost);
+            hosts.put(profile.role, piHost);
+
+            if (piHost.isBlank()) {
+                states.put(profile.role, State.NOT_FOUND);
+                registry.removeHost(networkKey, profile.role);
+            } else {
+                states.put(profile.role, State.FOUND);
+                registry.putHost(networkKey, profile.role, piHost);
+            }
+        }
+        publish();
+    }
+
+    private void publish() {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onDoorbellHostsChanged(this);
+            }
+        });
+    }
+}
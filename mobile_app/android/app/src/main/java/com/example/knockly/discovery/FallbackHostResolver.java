@@ -0,0 +1,81 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Asks the primary resolver first and only falls back to the second one when nothing answered.
+ * Used to put service discovery in front of the slow subnet sweep.
+ * As a {@link HostSource} it also falls back when the listener still wants more once the primary's
+ * hosts have been checked, e.g. one Pi announced itself and the other didn't, and the fallback
+ * streams its hosts if it is able to.
+ */
+public class FallbackHostResolver implements HostResolver, HostSource {
+    private static final String TAG = "FallbackHostResolver";
+
+    private final HostResolver primary;
+    private final HostResolver fallback;
+    private final long primaryTimeoutMs;
+
+    public FallbackHostResolver(HostResolver primary, HostResolver fallback) {
+        this(primary, fallback, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param primaryTimeoutMs most of the overall timeout the primary may use,
+     *                         the fallback gets whatever is left
+     */
+    public FallbackHostResolver(HostResolver primary, HostResolver fallback, long primaryTimeoutMs) {
+        this.primary = primary;
+        this.fallback = fallback;
+        this.primaryTimeoutMs = primaryTimeoutMs;
+    }
+
+    @Override
+    public List<String> resolve(long timeoutMs) {
+        long start = System.currentTimeMillis();
+        List<String> hosts = primary.resolve(Math.min(primaryTimeoutMs, timeoutMs));
+        if (hosts != null && !hosts.isEmpty()) {
+            Log.d(TAG, "resolve() :: primary resolver found " + hosts);
+            return hosts;
+        }
+
+        Log.d(TAG, "resolve() :: primary resolver found nothing, falling back");
+        return fallback.resolve(remaining(start, timeoutMs));
+    }
+
+    @Override
+    public void discover(long timeoutMs, Listener listener) {
+        long start = System.currentTimeMillis();
+        List<String> hosts = primary.resolve(Math.min(primaryTimeoutMs, timeoutMs));
+        if (hosts != null && !hosts.isEmpty()) {
+            Log.d(TAG, "discover() :: primary resolver found " + hosts);
+            for (String ip : hosts) {
+                listener.onHostFound(ip);
+            }
+            try {
+                if (!listener.wantsMore()) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Log.d(TAG, "discover() :: primary resolver's hosts weren't enough, falling back");
+        } else {
+            Log.d(TAG, "discover() :: primary resolver found nothing, falling back");
+        }
+        if (Thread.currentThread().isInterrupted()) return;
+
+        if (fallback instanceof HostSource) {
+            ((HostSource) fallback).discover(remaining(start, timeoutMs), listener);
+        } else {
+            for (String ip : fallback.resolve(remaining(start, timeoutMs))) {
+                listener.onHostFound(ip);
+            }
+        }
+    }
+
+    private static long remaining(long start, long timeoutMs) {
+        return Math.max(0, timeoutMs - (System.currentTimeMillis() - start));
+    }
+}
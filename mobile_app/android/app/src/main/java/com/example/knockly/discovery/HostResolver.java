@@ -0,0 +1,16 @@
+package com.example.knockly.discovery;
+
+import java.util.List;
+
+/**
+ * Finds the LAN addresses of hosts that could be a doorbell Pi.
+ * Kept free of Android types so resolvers can be swapped out and tested on the JVM.
+ */
+public interface HostResolver {
+
+    /**
+     * @param timeoutMs how long the resolver may wait for answers
+     * @return IPv4 addresses of candidate hosts, empty if nothing answered
+     */
+    List<String> resolve(long timeoutMs);
+}
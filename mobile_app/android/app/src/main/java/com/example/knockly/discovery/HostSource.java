@@ -0,0 +1,27 @@
+package com.example.knockly.discovery;
+
+/**
+ * A resolver that reports hosts one at a time as they are found,
+ * so later stages can start on a host without waiting for the whole scan.
+ */
+public interface HostSource {
+
+    // Called on the discovering thread for every host found
+    interface Listener {
+        void onHostFound(String ip);
+
+        /**
+         * Waits until the hosts reported so far have been checked, then says whether more are wanted.
+         * For sources that only go on looking when the hosts they had weren't enough.
+         */
+        default boolean wantsMore() throws InterruptedException {
+            return true;
+        }
+    }
+
+    /**
+     * Streams hosts to the listener, returning once the source is exhausted,
+     * the timeout has passed or the calling thread is interrupted.
+     */
+    void discover(long timeoutMs, Listener listener);
+}
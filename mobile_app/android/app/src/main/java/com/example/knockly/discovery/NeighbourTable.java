@@ -0,0 +1,144 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the kernel's neighbour (ARP) table to get a free list of hosts the phone has recently talked to.
+ * Understands both the /proc/net/arp format and the output of "ip neigh".
+ * Newer Android versions block both for apps, in which case the table is just empty.
+ */
+public class NeighbourTable {
+    private static final String TAG = "NeighbourTable";
+
+    private static final String PROC_ARP = "/proc/net/arp";
+
+    // MAC prefixes (OUIs) registered to Raspberry Pi Ltd / Foundation
+    private static final String[] RASPBERRY_PI_OUIS = {
+            "b8:27:eb", "dc:a6:32", "e4:5f:01", "28:cd:c1", "d8:3a:dd", "2c:cf:67"
+    };
+
+    // One row of the table
+    public static class Entry {
+        public final String ip;
+        public final String mac;
+
+        public Entry(String ip, String mac) {
+            this.ip = ip;
+            this.mac = mac;
+        }
+
+        public boolean isRaspberryPi() {
+            for (String oui : RASPBERRY_PI_OUIS) {
+                if (mac.startsWith(oui)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the table from /proc, falling back to "ip neigh".
+     * @return live IPv4 neighbours, empty if the platform doesn't allow either
+     */
+    public static List<Entry> read() {
+        try (Reader reader = new FileReader(PROC_ARP)) {
+            List<Entry> entries = parse(reader);
+            if (!entries.isEmpty()) return entries;
+        } catch (IOException | SecurityException e) {
+            Log.d(TAG, "read() :: " + PROC_ARP + " not readable: " + e.getMessage());
+        }
+
+        Process proc = null;
+        try {
+            proc = new ProcessBuilder("ip", "-4", "neigh", "show").redirectErrorStream(true).start();
+            try (Reader reader = new InputStreamReader(proc.getInputStream())) {
+                return parse(reader);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.d(TAG, "read() :: ip neigh not available: " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            if (proc != null) proc.destroy();
+        }
+    }
+
+    /**
+     * Parses either table format, skipping headers, incomplete and failed entries.
+     * Raspberry Pis are put first, the rest keep the order they were listed in.
+     */
+    public static List<Entry> parse(Reader reader) throws IOException {
+        List<Entry> pis = new ArrayList<>();
+        List<Entry> others = new ArrayList<>();
+
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            Entry entry = parseLine(line.trim());
+            if (entry == null) continue;
+            if (entry.isRaspberryPi()) {
+                pis.add(entry);
+            } else {
+                others.add(entry);
+            }
+        }
+
+        pis.addAll(others);
+        return pis;
+    }
+
+    // Candidate IPs from the table, Raspberry Pis first
+    public static List<String> candidates(List<Entry> entries) {
+        List<String> ips = new ArrayList<>();
+        for (Entry entry : entries) {
+            ips.add(entry.ip);
+        }
+        return ips;
+    }
+
+    private static Entry parseLine(String line) {
+        if (line.isEmpty()) return null;
+        String[] parts = line.split("\\s+");
+        if (!isIPv4(parts[0])) return null;
+
+        // "ip neigh": 192.168.0.18 dev wlan0 lladdr b8:27:eb:12:34:56 REACHABLE
+        if (parts.length >= 2 && parts[1].equals("dev")) {
+            String mac = null;
+            for (int i = 1; i < parts.length - 1; i++) {
+                if (parts[i].equals("lladdr")) mac = parts[i + 1];
+            }
+            String state = parts[parts.length - 1];
+            if (mac == null || state.equals("FAILED") || state.equals("INCOMPLETE")) return null;
+            return new Entry(parts[0], mac.toLowerCase(Locale.ROOT));
+        }
+
+        // /proc/net/arp: 192.168.0.18  0x1  0x2  b8:27:eb:12:34:56  *  wlan0
+        if (parts.length >= 4) {
+            // Flags of 0x0 means the entry never resolved
+            if (parts[2].equals("0x0") || parts[3].equals("00:00:00:00:00:00")) return null;
+            return new Entry(parts[0], parts[3].toLowerCase(Locale.ROOT));
+        }
+        return null;
+    }
+
+    private static boolean isIPv4(String text) {
+        String[] octets = text.split("\\.");
+        if (octets.length != 4) return false;
+        for (String octet : octets) {
+            try {
+                int value = Integer.parseInt(octet);
+                if (value < 0 || value > 255) return false;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
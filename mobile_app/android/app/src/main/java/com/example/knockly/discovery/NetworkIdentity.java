@@ -0,0 +1,56 @@
+package com.example.knockly.discovery;
+
+import android.content.Context;
+import android.net.DhcpInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+
+import com.example.knockly.utils.SSHUtils;
+
+/**
+ * Works out a key for the Wi-Fi network the phone is on, so doorbell addresses found on one
+ * network aren't reused on another.
+ * The access point's BSSID is only used when nothing else is known, as it changes when the phone
+ * moves between access points or bands of the same network.
+ */
+public class NetworkIdentity {
+
+    // Android hides the real SSID and BSSID behind these values without location permission
+    private static final String HIDDEN_SSID = "<unknown ssid>";
+    private static final String HIDDEN_BSSID = "02:00:00:00:00:00";
+
+    /**
+     * @return "ssid:...|gateway:..." for the network name and router address, with the subnet
+     * in place of whichever is missing, "bssid:..." if neither address is known, otherwise "unknown"
+     */
+    @SuppressWarnings("deprecation")
+    public static String currentKey(Context context) {
+        WifiManager wm = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        if (wm == null) return "unknown";
+
+        WifiInfo info = wm.getConnectionInfo();
+        DhcpInfo dhcp = wm.getDhcpInfo();
+        String gateway = dhcp == null || dhcp.gateway == 0 ? null : SSHUtils.formatToIPV4(dhcp.gateway);
+        int localHost = info == null ? 0 : info.getIpAddress();
+        String subnet = localHost == 0 ? null : SSHUtils.getSubnetIP(localHost);
+
+        return keyFor(info == null ? null : info.getSSID(), gateway, subnet, info == null ? null : info.getBSSID());
+    }
+
+    // Any of the values may be null or hidden
+    static String keyFor(String ssid, String gateway, String subnet, String bssid) {
+        if (ssid != null) {
+            // Android wraps names it could decode in quotes
+            if (ssid.length() > 1 && ssid.startsWith("\"") && ssid.endsWith("\"")) {
+                ssid = ssid.substring(1, ssid.length() - 1);
+            }
+            if (ssid.isEmpty() || ssid.equals(HIDDEN_SSID)) ssid = null;
+        }
+
+        String address = gateway != null ? "gateway:" + gateway : subnet != null ? "subnet:" + subnet : null;
+        if (address != null) return ssid == null ? address : "ssid:" + ssid + "|" + address;
+
+        if (bssid != null && !bssid.equals(HIDDEN_BSSID)) return "bssid:" + bssid;
+        return "unknown";
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.knockly.discovery;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.net.wifi.WifiManager;
+import android.util.Log;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves doorbell Pis that advertise themselves over mDNS / DNS-SD (see edge_device/Discovery).
+ * Waits up to the timeout for the first answer, then gives the other Pis a short window to answer too.
+ */
+public class NsdHostResolver implements HostResolver {
+    private static final String TAG = "NsdHostResolver";
+
+    // Once one Pi has answered the others normally follow within a few hundred ms
+    private static final long SETTLE_MS = 300;
+
+    // Placed on the queue to stop waiting early if discovery could not start
+    private static final NsdServiceInfo DISCOVERY_FAILED = new NsdServiceInfo();
+
+    private final Context context;
+    private final String serviceType;
+
+    public NsdHostResolver(Context context, String serviceType) {
+        this.context = context.getApplicationContext();
+        this.serviceType = serviceType;
+    }
+
+    @Override
+    public List<String> resolve(long timeoutMs) {
+        List<String> hosts = new ArrayList<>();
+        NsdManager nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+        if (nsdManager == null) return hosts;
+
+        // Some devices drop incoming multicast unless a lock is held
+        WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        WifiManager.MulticastLock multicastLock = null;
+        if (wm != null) {
+            multicastLock = wm.createMulticastLock(TAG);
+            multicastLock.setReferenceCounted(false);
+            multicastLock.acquire();
+        }
+
+        final BlockingQueue<NsdServiceInfo> found = new LinkedBlockingQueue<>();
+        NsdManager.DiscoveryListener listener = new NsdManager.DiscoveryListener() {
+            @Override
+            public void onStartDiscoveryFailed(String type, int errorCode) {
+                Log.d(TAG, "onStartDiscoveryFailed() :: error " + errorCode);
+                found.offer(DISCOVERY_FAILED);
+            }
+
+            @Override
+            public void onStopDiscoveryFailed(String type, int errorCode) {
+                Log.d(TAG, "onStopDiscoveryFailed() :: error " + errorCode);
+            }
+
+            @Override
+            public void onDiscoveryStarted(String type) {
+                Log.d(TAG, "onDiscoveryStarted() :: " + type);
+            }
+
+            @Override
+            public void onDiscoveryStopped(String type) {
+                Log.d(TAG, "onDiscoveryStopped() :: " + type);
+            }
+
+            @Override
+            public void onServiceFound(NsdServiceInfo info) {
+                found.offer(info);
+            }
+
+            @Override
+            public void onServiceLost(NsdServiceInfo info) {}
+        };
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            nsdManager.discoverServices(serviceType, NsdManager.PROTOCOL_DNS_SD, listener);
+
+            // Resolve services one at a time, NsdManager rejects concurrent resolves before API 34
+            while (true) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) break;
+
+                NsdServiceInfo info = found.poll(remaining, TimeUnit.MILLISECONDS);
+                if (info == null || info == DISCOVERY_FAILED) break;
+
+                String host = resolveService(nsdManager, info, remaining);
+                if (host != null && !hosts.contains(host)) {
+                    Log.d(TAG, "resolve() :: " + info.getServiceName() + " is at " + host);
+                    hosts.add(host);
+
+                    // Shorten the wait now that something has answered
+                    long settleDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MS);
+                    deadline = Math.min(deadline, settleDeadline);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                nsdManager.stopServiceDiscovery(listener);
+            } catch (IllegalArgumentException ignored) {
+                // Listener was never registered because discovery failed to start
+            }
+            if (multicastLock != null) multicastLock.release();
+        }
+
+        return hosts;
+    }
+
+    @SuppressWarnings("deprecation")
+    private String resolveService(NsdManager nsdManager, NsdServiceInfo info, long timeoutMs)
+            throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> host = new AtomicReference<>();
+
+        nsdManager.resolveService(info, new NsdManager.ResolveListener() {
+            @Override
+            public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+                Log.d(TAG, "onResolveFailed() :: " + serviceInfo.getServiceName() + " error " + errorCode);
+                done.countDown();
+            }
+
+            @Override
+            public void onServiceResolved(NsdServiceInfo serviceInfo) {
+                InetAddress address = serviceInfo.getHost();
+                if (address instanceof Inet4Address) {
+                    host.set(address.getHostAddress());
+                }
+                done.countDown();
+            }
+        });
+
+        done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        return host.get();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.knockly.discovery;
+
+/**
+ * Login details for one of a doorbell's Pis, plus the marker it adds to its SSH banner.
+ * A doorbell currently has a "main" Pi and a "feed" Pi.
+ */
+public class PiProfile {
+    public final String role;
+    public final String username;
+    public final String password;
+    // Null if the Pi hasn't been set up with a banner marker
+    public final String marker;
+
+    public PiProfile(String role, String username, String password, String marker) {
+        this.role = role;
+        this.username = username;
+        this.password = password;
+        this.marker = marker;
+    }
+}
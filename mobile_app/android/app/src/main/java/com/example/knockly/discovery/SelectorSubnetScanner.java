@@ -0,0 +1,219 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds hosts with an open SSH port by firing non-blocking connects at every candidate
+ * and waiting on them together with a single {@link Selector}.
+ * The whole scan runs on the calling thread, instead of one pool thread per address.
+ */
+public class SelectorSubnetScanner implements HostResolver, HostSource {
+    private static final String TAG = "SelectorSubnetScanner";
+
+    public static final int DEFAULT_PORT = 22;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 300;
+    // Enough to start a whole /24 in a quarter of a second without flooding the router
+    public static final int DEFAULT_MAX_CONNECTS_PER_SECOND = 1000;
+
+    // State for one in-flight connect
+    private static class Pending {
+        final String ip;
+        final long deadline;
+
+        Pending(String ip, long deadline) {
+            this.ip = ip;
+            this.deadline = deadline;
+        }
+    }
+
+    private final List<String> candidates;
+    private final int port;
+    private final int connectTimeoutMs;
+    private final int maxConnectsPerSecond;
+    private final Listener listener;
+
+    public SelectorSubnetScanner(List<String> candidates) {
+        this(candidates, DEFAULT_PORT, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_MAX_CONNECTS_PER_SECOND, null);
+    }
+
+    /**
+     * @param candidates addresses to probe, in the order they should be tried
+     * @param port TCP port that has to be open for a host to count as found
+     * @param connectTimeoutMs how long each connect may stay pending
+     * @param maxConnectsPerSecond rate limit for starting connects, 0 or less starts them all at once
+     * @param listener optional callback, called on the scanning thread as soon as a host accepts
+     */
+    public SelectorSubnetScanner(List<String> candidates, int port, int connectTimeoutMs,
+                                 int maxConnectsPerSecond, Listener listener) {
+        this.candidates = candidates;
+        this.port = port;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.maxConnectsPerSecond = maxConnectsPerSecond;
+        this.listener = listener;
+    }
+
+    // Every host address in a /24, e.g. "192.168.0" gives 192.168.0.1 to 192.168.0.254
+    public static List<String> subnetCandidates(String subnetIP) {
+        List<String> ips = new ArrayList<>();
+        for (int i = 1; i < 255; i++) {
+            ips.add(subnetIP + "." + i);
+        }
+        return ips;
+    }
+
+    @Override
+    public List<String> resolve(long timeoutMs) {
+        return scan(timeoutMs);
+    }
+
+    @Override
+    public void discover(long timeoutMs, Listener listener) {
+        new SelectorSubnetScanner(candidates, port, connectTimeoutMs, maxConnectsPerSecond, listener)
+                .scan(timeoutMs);
+    }
+
+    /**
+     * Probes every candidate and returns the ones that accepted a connection, in the order they answered.
+     * Stops early if the calling thread is interrupted.
+     * @param timeoutMs upper bound for the whole scan
+     */
+    public List<String> scan(long timeoutMs) {
+        List<String> hosts = new ArrayList<>();
+        long start = System.nanoTime();
+        long scanDeadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMs);
+        int next = 0;
+
+        try (Selector selector = Selector.open()) {
+            try {
+                while ((next < candidates.size() || hasPending(selector))
+                        && !Thread.currentThread().isInterrupted()) {
+                    long now = System.nanoTime();
+                    if (now >= scanDeadline) break;
+
+                    // Start as many connects as the rate limit allows so far
+                    int allowed = allowedConnects(now - start);
+                    while (next < candidates.size() && next < allowed) {
+                        String ip = candidates.get(next++);
+                        if (startConnect(selector, ip, now + connectTimeoutNanos)) {
+                            found(hosts, ip);
+                        }
+                    }
+
+                    selector.select(selectTimeoutMs(selector, now, start, next, scanDeadline));
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Pending pending = (Pending) key.attachment();
+                        if (finishConnect(key)) {
+                            found(hosts, pending.ip);
+                        }
+                    }
+
+                    // Give up on connects that have been pending too long
+                    now = System.nanoTime();
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.isValid() && now >= ((Pending) key.attachment()).deadline) {
+                            close(key);
+                        }
+                    }
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "scan() :: " + e.getMessage());
+        }
+
+        return hosts;
+    }
+
+    // Cancelled keys stay in keys() until the next select so check validity instead of size
+    private boolean hasPending(Selector selector) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) return true;
+        }
+        return false;
+    }
+
+    private int allowedConnects(long elapsedNanos) {
+        if (maxConnectsPerSecond <= 0) return candidates.size();
+        long allowed = 1 + elapsedNanos * maxConnectsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.min(allowed, candidates.size());
+    }
+
+    // Sleep until the next connect is due to start or the earliest pending one times out
+    private long selectTimeoutMs(Selector selector, long now, long start, int next, long scanDeadline) {
+        long wake = scanDeadline;
+        if (next < candidates.size() && maxConnectsPerSecond > 0) {
+            long nextStart = start + (long) next * TimeUnit.SECONDS.toNanos(1) / maxConnectsPerSecond;
+            wake = Math.min(wake, nextStart);
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) wake = Math.min(wake, ((Pending) key.attachment()).deadline);
+        }
+        // select(0) blocks forever so always wait at least 1 ms
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wake - now));
+    }
+
+    // Returns true if the connect completed straight away
+    private boolean startConnect(Selector selector, String ip, long deadline) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(new InetSocketAddress(ip, port))) {
+                channel.close();
+                return true;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, new Pending(ip, deadline));
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        return false;
+    }
+
+    // Returns true if the host accepted, the key is left registered if the connect is still pending
+    private boolean finishConnect(SelectionKey key) {
+        try {
+            if (!((SocketChannel) key.channel()).finishConnect()) return false;
+            close(key);
+            return true;
+        } catch (IOException e) {
+            // Refused or unreachable
+            close(key);
+            return false;
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+
+    private void found(List<String> hosts, String ip) {
+        Log.d(TAG, "scan() :: " + ip + " has port " + port + " open");
+        hosts.add(ip);
+        if (listener != null) listener.onHostFound(ip);
+    }
+}
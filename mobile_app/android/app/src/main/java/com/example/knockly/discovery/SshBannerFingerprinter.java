@@ -0,0 +1,108 @@
+package com.example.knockly.discovery;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identifies SSH servers by reading the identification line they send on connect (RFC 4253 4.2),
+ * e.g. "SSH-2.0-OpenSSH_9.2p1 Debian-2+deb12u3 knockly-main".
+ * No key exchange or login happens, so probing a host is cheap and can't trip fail2ban.
+ * The doorbell Pis add a marker to the end of the line (see edge_device/Discovery).
+ */
+public class SshBannerFingerprinter {
+    private static final String TAG = "SshBannerFingerprinter";
+
+    public static final int DEFAULT_PORT = 22;
+    public static final int DEFAULT_TIMEOUT_MS = 800;
+
+    // Limits from RFC 4253, servers may send a few lines of text before the identification line
+    private static final int MAX_LINE_LENGTH = 255;
+    private static final int MAX_LINES = 8;
+
+    private static final byte[] CLIENT_IDENTIFICATION =
+            "SSH-2.0-Knockly_discovery\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int port;
+    private final int timeoutMs;
+
+    public SshBannerFingerprinter() {
+        this(DEFAULT_PORT, DEFAULT_TIMEOUT_MS);
+    }
+
+    public SshBannerFingerprinter(int port, int timeoutMs) {
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return the server's identification line without the line ending,
+     * or null if the host isn't an SSH 2.0 server or didn't answer in time
+     */
+    public String fingerprint(String ip) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(ip, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+
+            String banner = readIdentification(socket.getInputStream());
+
+            // Answer politely so the server logs a normal disconnect rather than a bad client
+            if (banner != null) {
+                OutputStream out = socket.getOutputStream();
+                out.write(CLIENT_IDENTIFICATION);
+                out.flush();
+            }
+            return banner;
+        } catch (IOException e) {
+            Log.d(TAG, "fingerprint() :: " + ip + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param banner identification line from {@link #fingerprint(String)}
+     * @param marker text the Pi appends to its banner, null to accept any SSH 2.0 server
+     */
+    public static boolean matches(String banner, String marker) {
+        if (banner == null || !isSsh2(banner)) return false;
+        if (marker == null || marker.isEmpty()) return true;
+
+        for (String part : banner.split(" ")) {
+            if (part.equals(marker)) return true;
+        }
+        return false;
+    }
+
+    // "1.99" is what servers supporting both 1.x and 2.0 send
+    private static boolean isSsh2(String banner) {
+        return banner.startsWith("SSH-2.0-") || banner.startsWith("SSH-1.99-");
+    }
+
+    static String readIdentification(InputStream in) throws IOException {
+        for (int lines = 0; lines < MAX_LINES; lines++) {
+            String line = readLine(in);
+            if (line == null) return null;
+            if (line.startsWith("SSH-")) {
+                return isSsh2(line) ? line : null;
+            }
+        }
+        return null;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (line.size() < MAX_LINE_LENGTH) {
+            int c = in.read();
+            if (c < 0) return line.size() > 0 ? line.toString("US-ASCII") : null;
+            if (c == '\n') break;
+            if (c != '\r') line.write(c);
+        }
+        return line.toString("US-ASCII");
+    }
+}
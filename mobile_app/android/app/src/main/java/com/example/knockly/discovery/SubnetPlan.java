@@ -0,0 +1,116 @@
+package com.example.knockly.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out which addresses to probe on a subnet of any size, most likely first:
+ * the phone's own /24 outwards from the phone's address, then the router's /24
+ * (where the DHCP pool usually is), then the remaining /24 blocks nearest first.
+ * Big subnets (e.g. /16) are too large to scan whole, so the list is capped and
+ * the scanner works through it in order until its time budget runs out.
+ */
+public class SubnetPlan {
+
+    // Anything wider than a /16 is scanned as the phone's /16
+    public static final int MIN_PREFIX_LENGTH = 16;
+    public static final int MAX_PREFIX_LENGTH = 30;
+
+    /**
+     * @param phoneIP the phone's IPv4 address on the network
+     * @param prefixLength network prefix length, e.g. 24 for 255.255.255.0
+     * @param gatewayIP the router's address, null if not known
+     * @param maxCandidates cap on the number of addresses returned
+     */
+    public static List<String> candidates(String phoneIP, int prefixLength, String gatewayIP, int maxCandidates) {
+        int prefix = Math.max(MIN_PREFIX_LENGTH, Math.min(MAX_PREFIX_LENGTH, prefixLength));
+        int phone = toInt(phoneIP);
+        int mask = (int) (0xffffffffL << (32 - prefix));
+        int network = phone & mask;
+        // Skip the network and broadcast addresses
+        int first = network + 1;
+        int last = (network | ~mask) - 1;
+
+        List<String> ips = new ArrayList<>();
+
+        // Small subnets fit in one /24, so just go outwards from the phone
+        if (prefix >= 24) {
+            addOutwards(ips, phone, first, last, phone, maxCandidates);
+            return ips;
+        }
+
+        int phoneBlock = phone & 0xffffff00;
+        addBlock(ips, phoneBlock, first, last, phone, maxCandidates);
+
+        int gatewayBlock = phoneBlock;
+        if (gatewayIP != null) {
+            int gateway = toInt(gatewayIP);
+            if ((gateway & mask) == network) gatewayBlock = gateway & 0xffffff00;
+        }
+        if (gatewayBlock != phoneBlock) {
+            addBlock(ips, gatewayBlock, first, last, phone, maxCandidates);
+        }
+
+        // Remaining /24 blocks, alternating either side of the phone's block
+        int firstBlock = first & 0xffffff00;
+        int lastBlock = last & 0xffffff00;
+        for (int distance = 1; ips.size() < maxCandidates; distance++) {
+            int below = phoneBlock - (distance << 8);
+            int above = phoneBlock + (distance << 8);
+            boolean belowInRange = Integer.compareUnsigned(below, firstBlock) >= 0
+                    && Integer.compareUnsigned(below, phoneBlock) < 0;
+            boolean aboveInRange = Integer.compareUnsigned(above, lastBlock) <= 0
+                    && Integer.compareUnsigned(above, phoneBlock) > 0;
+            if (!belowInRange && !aboveInRange) break;
+
+            if (belowInRange && below != gatewayBlock) addBlock(ips, below, first, last, phone, maxCandidates);
+            if (aboveInRange && above != gatewayBlock) addBlock(ips, above, first, last, phone, maxCandidates);
+        }
+        return ips;
+    }
+
+    // Adds the usable addresses in a /24, nearest to the phone's last octet first
+    // Inside a bigger subnet .0 and .255 are normal addresses, only the subnet's own ends are skipped
+    private static void addBlock(List<String> ips, int block, int first, int last, int phone, int max) {
+        int start = maxUnsigned(block, first);
+        int end = minUnsigned(block + 255, last);
+        addOutwards(ips, block | (phone & 0xff), start, end, phone, max);
+    }
+
+    // Adds addresses between start and end, alternating either side of the centre
+    private static void addOutwards(List<String> ips, int centre, int start, int end, int phone, int max) {
+        centre = minUnsigned(maxUnsigned(centre, start), end);
+        for (int distance = 0; ips.size() < max; distance++) {
+            int below = centre - distance;
+            int above = centre + distance;
+            boolean belowInRange = Integer.compareUnsigned(below, start) >= 0 && distance <= centre - start;
+            boolean aboveInRange = Integer.compareUnsigned(above, end) <= 0 && distance <= end - centre;
+            if (!belowInRange && !aboveInRange) break;
+
+            if (belowInRange && below != phone) ips.add(toIP(below));
+            if (distance > 0 && aboveInRange && above != phone && ips.size() < max) ips.add(toIP(above));
+        }
+    }
+
+    private static int maxUnsigned(int a, int b) {
+        return Integer.compareUnsigned(a, b) >= 0 ? a : b;
+    }
+
+    private static int minUnsigned(int a, int b) {
+        return Integer.compareUnsigned(a, b) <= 0 ? a : b;
+    }
+
+    static int toInt(String ip) {
+        String[] octets = ip.split("\\.");
+        int value = 0;
+        for (String octet : octets) {
+            value = (value << 8) | Integer.parseInt(octet);
+        }
+        return value;
+    }
+
+    static String toIP(int value) {
+        return ((value >>> 24) & 0xff) + "." + ((value >>> 16) & 0xff) + "."
+                + ((value >>> 8) & 0xff) + "." + (value & 0xff);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.knockly.feed;
+
+/**
+ * Decides how the tiles of a grid of live feeds are shown, from what the phone's video decoder can do.
+ * Tiles on screen, first tile first, get a full rate feed while decoders and decoding speed allow and
+ * video drawn stays under {@link #renderBudgetFps}, then a feed drawn at {@link #reducedFps}, then a
+ * still picture refreshed now and then. Tiles off screen get nothing, so their decoders are freed.
+ * A reduced tile still decodes every frame, the stream's frames each depend on the one before, so
+ * it saves drawing rather than decoding and costs a decoder like a full one.
+ */
+public class DecoderBudget {
+
+    public enum Tier {
+        // Live, every frame drawn
+        FULL,
+        // Live, drawn at reducedFps
+        REDUCED,
+        // A picture taken from the stream every so often, no decoder kept
+        STILL,
+        // Off screen
+        OFF
+    }
+
+    // Frames a second a reduced tile is drawn at
+    public static int reducedFps = 5;
+    // Frames a second of video drawn across the grid, about two full rate feeds' worth
+    public static int renderBudgetFps = 75;
+
+    private final int fullTiles;
+    private final int reducedTiles;
+    private final int stillDecoders;
+
+    /**
+     * @param maxDecoders   decoders the phone can run at once for the stream
+     * @param maxDecodeFps  frames a second the phone can decode at the stream's size, across all decoders
+     * @param streamFps     frames a second the stream is sent at
+     */
+    public DecoderBudget(int maxDecoders, double maxDecodeFps, int streamFps) {
+        // One decoder is kept back to take the still pictures, unless it's the only one
+        stillDecoders = maxDecoders > 1 ? 1 : 0;
+        int live = Math.max(0, Math.min(maxDecoders - stillDecoders, (int) (maxDecodeFps / streamFps)));
+        fullTiles = Math.min(live, Math.max(1, renderBudgetFps / streamFps));
+        int renderLeft = Math.max(0, renderBudgetFps - fullTiles * streamFps);
+        reducedTiles = Math.min(live - fullTiles, reducedFps > 0 ? renderLeft / reducedFps : 0);
+    }
+
+    /**
+     * @param visible whether each tile is on screen, in the order they should be given decoders
+     * @return how to show each tile
+     */
+    public Tier[] assign(boolean[] visible) {
+        Tier[] tiers = new Tier[visible.length];
+        int full = 0;
+        int reduced = 0;
+        for (int i = 0; i < visible.length; i++) {
+            if (!visible[i]) {
+                tiers[i] = Tier.OFF;
+            } else if (full < fullTiles) {
+                tiers[i] = Tier.FULL;
+                full++;
+            } else if (reduced < reducedTiles) {
+                tiers[i] = Tier.REDUCED;
+                reduced++;
+            } else {
+                tiers[i] = Tier.STILL;
+            }
+        }
+        return tiers;
+    }
+
+    public int getFullTiles() {
+        return fullTiles;
+    }
+
+    public int getReducedTiles() {
+        return reducedTiles;
+    }
+
+    // Whether a decoder is kept back to refresh still tiles, if not they keep their last picture
+    public boolean refreshesStills() {
+        return stillDecoders > 0;
+    }
+
+    // Players the grid needs at most, i.e. the feed player pool's cap while it's shown
+    public int getMaxPlayers() {
+        return fullTiles + reducedTiles + stillDecoders;
+    }
+
+    @Override
+    public String toString() {
+        return fullTiles + " full, " + reducedTiles + " at " + reducedFps + " fps, "
+                + (refreshesStills() ? "refreshed" : "fixed") + " stills";
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.knockly.feed;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.util.Log;
+import android.util.Range;
+
+/**
+ * Reads what the phone's H.264 decoder can do, for a {@link DecoderBudget}.
+ * The decoder listed first is the one the player picks, so it's the one described.
+ */
+public class DecoderProbe {
+    private static final String TAG = "DecoderProbe";
+
+    private static final String MIME = "video/avc";
+
+    // rpicam-vid's defaults, the feed Pi doesn't change them, see edge_device/Live Feed/rtspServer.sh
+    public static final int STREAM_WIDTH = 640;
+    public static final int STREAM_HEIGHT = 480;
+    public static final int STREAM_FPS = 30;
+
+    private DecoderProbe() {}
+
+    public static DecoderBudget budgetForFeed() {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder() || !supports(info)) continue;
+
+            MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(MIME);
+            MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+            if (video == null || !video.isSizeSupported(STREAM_WIDTH, STREAM_HEIGHT)) continue;
+
+            int instances = capabilities.getMaxSupportedInstances();
+            // Measured by the phone's maker, the supported rates are what the codec claims and run high
+            Range<Double> rates = video.getAchievableFrameRatesFor(STREAM_WIDTH, STREAM_HEIGHT);
+            if (rates == null) rates = video.getSupportedFrameRatesFor(STREAM_WIDTH, STREAM_HEIGHT);
+            double fps = rates.getUpper();
+
+            DecoderBudget budget = new DecoderBudget(instances, fps, STREAM_FPS);
+            Log.d(TAG, "budgetForFeed() :: " + info.getName() + ", " + instances + " instances, "
+                    + Math.round(fps) + " fps at " + STREAM_WIDTH + "x" + STREAM_HEIGHT + ", " + budget);
+            return budget;
+        }
+        Log.d(TAG, "budgetForFeed() :: no decoder for " + MIME + " found, showing stills");
+        return new DecoderBudget(0, 0, STREAM_FPS);
+    }
+
+    private static boolean supports(MediaCodecInfo info) {
+        for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(MIME)) return true;
+        }
+        return false;
+    }
+}
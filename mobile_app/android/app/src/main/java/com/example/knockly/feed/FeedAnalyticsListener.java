@@ -0,0 +1,66 @@
+package com.example.knockly.feed;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.Format;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DecoderReuseEvaluation;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+
+/**
+ * Passes a live feed player's analytics events on to its {@link FeedTelemetry}.
+ * Add it with "player.addAnalyticsListener(new FeedAnalyticsListener(telemetry))" before preparing,
+ * so the decoder and first frame are caught.
+ */
+@UnstableApi
+public class FeedAnalyticsListener implements AnalyticsListener {
+
+    private final FeedTelemetry telemetry;
+
+    public FeedAnalyticsListener(FeedTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    @Override
+    public void onPlaybackStateChanged(@NonNull EventTime eventTime, int state) {
+        if (state == Player.STATE_BUFFERING) telemetry.onBuffering(eventTime.realtimeMs);
+        else if (state == Player.STATE_READY) telemetry.onReady(eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onRenderedFirstFrame(@NonNull EventTime eventTime, @NonNull Object output, long renderTimeMs) {
+        telemetry.onFirstFrame(eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onVideoDecoderInitialized(@NonNull EventTime eventTime, @NonNull String decoderName,
+                                          long initializedTimestampMs, long initializationDurationMs) {
+        telemetry.onDecoderInitialized(initializationDurationMs);
+    }
+
+    @Override
+    public void onDroppedVideoFrames(@NonNull EventTime eventTime, int droppedFrames, long elapsedMs) {
+        telemetry.onDroppedFrames(droppedFrames);
+    }
+
+    @Override
+    public void onVideoFrameProcessingOffset(@NonNull EventTime eventTime, long totalProcessingOffsetUs, int frameCount) {
+        // Positive when the frames were ready before they were due, negative when late
+        telemetry.onFrameOffsets(totalProcessingOffsetUs, frameCount);
+    }
+
+    @Override
+    public void onBandwidthEstimate(@NonNull EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded,
+                                    long bitrateEstimate) {
+        telemetry.onBitrateMeasured(bitrateEstimate);
+    }
+
+    @Override
+    public void onVideoInputFormatChanged(@NonNull EventTime eventTime, @NonNull Format format,
+                                          @Nullable DecoderReuseEvaluation decoderReuseEvaluation) {
+        // From the stream's SDP, not set by every server
+        int bitrate = format.averageBitrate != Format.NO_VALUE ? format.averageBitrate : format.bitrate;
+        if (bitrate != Format.NO_VALUE) telemetry.onBitrateAdvertised(bitrate);
+    }
+}
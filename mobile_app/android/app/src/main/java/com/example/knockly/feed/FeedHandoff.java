@@ -0,0 +1,100 @@
+package com.example.knockly.feed;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.ExoPlayer;
+
+import java.util.Locale;
+
+/**
+ * Holds a live feed player started from the home page tap until the doorbell page's feed takes it,
+ * so the RTSP session is set up and buffering while the page's activity and fragments are still
+ * being made, rather than only starting once the feed's view exists.
+ * A player nobody takes within {@link #TIMEOUT_MS}, e.g. because the user went back, is given back
+ * to the {@link FeedPlayerPool} warm, so a late page still gets it playing.
+ * Use it on the main thread.
+ */
+@UnstableApi
+public class FeedHandoff {
+    private static final String TAG = "FeedHandoff";
+
+    // The page normally takes it well within a second, this only covers a page that never opened
+    static final long TIMEOUT_MS = 5000;
+
+    private static FeedHandoff instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Context context;
+    private String uri;
+    private Handoff pending;
+
+    /** A player already playing the stream, and the telemetry that has been recording it since the tap. */
+    public static class Handoff {
+        public final PlayerPool<ExoPlayer>.Lease lease;
+        public final FeedTelemetry telemetry;
+
+        Handoff(PlayerPool<ExoPlayer>.Lease lease, FeedTelemetry telemetry) {
+            this.lease = lease;
+            this.telemetry = telemetry;
+        }
+    }
+
+    private FeedHandoff() {}
+
+    public static synchronized FeedHandoff getInstance() {
+        if (instance == null) {
+            instance = new FeedHandoff();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a player on the stream to be taken by the feed about to open.
+     * Call it as the page is asked for, before startActivity.
+     */
+    public void start(Context context, String streamUri) {
+        if (pending != null && streamUri.equals(uri)) return;  // tapped twice
+        abandon();
+
+        this.context = context.getApplicationContext();
+        long tapMs = SystemClock.elapsedRealtime();
+        PlayerPool<ExoPlayer>.Lease lease = FeedPlayerPool.getInstance(context).acquire(streamUri, false);
+        if (lease == null) return;  // the feed will try again once its page is up
+
+        // Timed from the tap, so the first frame time is the one the user sees
+        FeedTelemetry telemetry = FeedPlayerPool.attachTelemetry(lease, tapMs,
+                "handoff " + lease.getSource().name().toLowerCase(Locale.ROOT));
+        uri = streamUri;
+        pending = new Handoff(lease, telemetry);
+        handler.postDelayed(this::abandon, TIMEOUT_MS);
+        Log.d(TAG, "start() :: " + lease.getSource() + " player started for " + streamUri);
+    }
+
+    /**
+     * @return the player started for the stream, or null if none was, in which case the feed leases its own
+     */
+    public Handoff take(String streamUri) {
+        if (pending == null || !streamUri.equals(uri)) return null;
+        Handoff handoff = pending;
+        pending = null;
+        uri = null;
+        handler.removeCallbacksAndMessages(null);
+        Log.d(TAG, "take() :: handed over player for " + streamUri);
+        return handoff;
+    }
+
+    // Gives back a player nobody took
+    private void abandon() {
+        handler.removeCallbacksAndMessages(null);
+        if (pending == null) return;
+        Log.d(TAG, "abandon() :: player for " + uri + " was not taken");
+        FeedPlayerPool.getInstance(context).close(pending.lease, true);
+        pending = null;
+        uri = null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.knockly.feed;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * CSV file of {@link FeedTelemetry} rows, one per live feed player, kept on the phone so runs with
+ * different settings or on different phones can be pulled off with adb and compared.
+ * Once the file passes {@link #MAX_BYTES}, or was written with other columns, it's moved to a ".1" file,
+ * replacing the one before, so at most two files' worth of rows are kept.
+ */
+public class FeedMetricsLog {
+    private static final String TAG = "FeedMetricsLog";
+
+    public static final String FILE_NAME = "feed_metrics.csv";
+    static final long MAX_BYTES = 256 * 1024;
+
+    // Set to false to stop writing rows, the overlay still works
+    public static boolean enabled = true;
+
+    private FeedMetricsLog() {}
+
+    /**
+     * Adds the row with the current time in front, writing the header first if the file is new.
+     * Does file IO, so call it off the main thread.
+     */
+    public static synchronized void append(File file, String row) {
+        if (!enabled) return;
+        try {
+            if (file.length() > MAX_BYTES || (file.length() > 0 && !header().equals(firstLine(file)))) {
+                File previous = new File(file.getPath() + ".1");
+                if ((previous.exists() && !previous.delete()) || !file.renameTo(previous)) {
+                    Log.d(TAG, "append() :: could not roll " + file.getName() + " over");
+                }
+            }
+            boolean created = !file.exists() || file.length() == 0;
+            try (Writer out = new FileWriter(file, true)) {
+                if (created) out.write(header() + "\n");
+                String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ROOT).format(new Date());
+                out.write(time + "," + row + "\n");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "append() :: " + e.getMessage());
+        }
+    }
+
+    private static String header() {
+        return "time," + FeedTelemetry.CSV_HEADER;
+    }
+
+    private static String firstLine(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            return in.readLine();
+        }
+    }
+}
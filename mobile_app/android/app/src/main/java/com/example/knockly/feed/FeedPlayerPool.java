@@ -0,0 +1,224 @@
+package com.example.knockly.feed;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.SeekParameters;
+import androidx.media3.exoplayer.rtsp.RtspMediaSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * App wide pool of live feed players, so opening a doorbell's page, leaving it and coming back, or
+ * rebuilding a stalled feed, reuses a built player instead of making a new player, renderers and
+ * load control each time. A page that comes back within {@link #WARM_MS} gets its player still
+ * playing, with its decoder and RTSP session, so the picture is back as soon as it has a surface.
+ * Build time and the memory allocated building each player are measured, see {@link #logMetrics()}.
+ * Use it on the main thread: call "FeedPlayerPool.getInstance(context)", then "acquire(...)" and
+ * close the lease when the page goes.
+ */
+@UnstableApi
+public class FeedPlayerPool {
+    private static final String TAG = "FeedPlayerPool";
+
+    // Player settings, each feed metrics row says which were used
+    public static final int MIN_BUFFER_MS = 250;
+    public static final int MAX_BUFFER_MS = 500;
+    public static final int BUFFER_FOR_PLAYBACK_MS = 50;
+    public static final int BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 50;
+    public static final long TARGET_OFFSET_MS = 40;
+    public static final String SETTINGS = "buffer " + MIN_BUFFER_MS + "/" + MAX_BUFFER_MS + "/"
+            + BUFFER_FOR_PLAYBACK_MS + "/" + BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS + " offset " + TARGET_OFFSET_MS;
+
+    // A feed and the player taking over from it when it's rebuilt
+    public static final int DEFAULT_MAX_PLAYERS = 2;
+    // Long enough to come back from the settings page, short enough not to decode for nobody for long
+    static final long WARM_MS = 15000;
+    static final long IDLE_MS = 60000;
+
+    private static FeedPlayerPool instance;
+
+    private final Context context;
+    private final PlayerPool<ExoPlayer> pool;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Each player's renderers, to cap the frame rate it draws at
+    private final Map<ExoPlayer, FrameRateCapRenderersFactory> renderers = new HashMap<>();
+
+    // Cost of building players, to compare with reusing them
+    private long buildMs;
+    private long buildBytes;
+
+    private FeedPlayerPool(Context context) {
+        this.context = context.getApplicationContext();
+        pool = new PlayerPool<>(new PlayerPool.Players<ExoPlayer>() {
+            @Override
+            public ExoPlayer create() {
+                return build();
+            }
+
+            @Override
+            public void load(ExoPlayer player, String uri) {
+                MediaItem mediaItem = new MediaItem.Builder()
+                        .setUri(uri)
+                        .setLiveConfiguration(new MediaItem.LiveConfiguration.Builder()
+                                .setTargetOffsetMs(TARGET_OFFSET_MS)
+                                .build())
+                        .build();
+                player.setMediaSource(new RtspMediaSource.Factory()
+                        .setForceUseRtpTcp(true)
+                        .createMediaSource(mediaItem));
+                // The last lease may have left it catching up
+                player.setPlaybackSpeed(1f);
+                player.prepare();
+                player.setPlayWhenReady(true);
+            }
+
+            @Override
+            public void stop(ExoPlayer player) {
+                player.stop();
+                player.clearMediaItems();
+            }
+
+            @Override
+            public void release(ExoPlayer player) {
+                renderers.remove(player);
+                player.release();
+            }
+        }, DEFAULT_MAX_PLAYERS, WARM_MS, IDLE_MS);
+    }
+
+    public static synchronized FeedPlayerPool getInstance(Context context) {
+        if (instance == null) {
+            instance = new FeedPlayerPool(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Leases a player playing the stream, see {@link PlayerPool#acquire}.
+     * Give it a surface, e.g. with PlayerView.setPlayer, and remove it from the view before closing the lease.
+     * @return null if every player allowed is in use
+     */
+    public PlayerPool<ExoPlayer>.Lease acquire(String uri, boolean fresh) {
+        PlayerPool<ExoPlayer>.Lease lease = pool.acquire(uri, fresh, SystemClock.elapsedRealtime());
+        if (lease == null) {
+            Log.d(TAG, "acquire() :: all " + pool.getMaxPlayers() + " players in use");
+        } else {
+            Log.d(TAG, "acquire() :: " + lease.getSource() + " player for " + uri);
+        }
+        return lease;
+    }
+
+    // Gives the player back, trimming the pool once it could be stopped or released
+    public void close(PlayerPool<ExoPlayer>.Lease lease, boolean keepWarm) {
+        // A warm player is taken as it is, so it mustn't stay capped for whoever takes it next
+        setMaxFps(lease.getPlayer(), 0);
+        lease.close(SystemClock.elapsedRealtime(), keepWarm);
+        handler.postDelayed(this::trim, WARM_MS);
+        handler.postDelayed(this::trim, IDLE_MS);
+    }
+
+    public void trim() {
+        pool.trim(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Records what the leased player does from now on, until the lease is closed.
+     * @param createdMs when the feed asked for the player, first frame time is counted from it
+     * @param player how the feed got it, written to the "player" column
+     */
+    public static FeedTelemetry attachTelemetry(PlayerPool<ExoPlayer>.Lease lease, long createdMs, String player) {
+        FeedTelemetry telemetry = new FeedTelemetry(createdMs, SETTINGS, player);
+        FeedAnalyticsListener listener = new FeedAnalyticsListener(telemetry);
+        ExoPlayer exoPlayer = lease.getPlayer();
+        exoPlayer.addAnalyticsListener(listener);
+        lease.onClose(() -> exoPlayer.removeAnalyticsListener(listener));
+        return telemetry;
+    }
+
+    // Releases the players nobody is using, e.g. when the app leaves the screen
+    public void releaseIdle() {
+        pool.releaseIdle();
+    }
+
+    /**
+     * Draws at most this many of the player's frames a second, e.g. for a small tile in the feed grid.
+     * Every frame is still decoded. Reset to every frame when the lease is closed.
+     * @param maxFps 0 to draw every frame
+     */
+    public void setMaxFps(ExoPlayer player, int maxFps) {
+        FrameRateCapRenderersFactory factory = renderers.get(player);
+        if (factory != null) factory.setMaxFps(maxFps);
+    }
+
+    // Most players alive at once, in use or idle, i.e. video decoders the feeds can hold
+    public void setMaxPlayers(int maxPlayers) {
+        pool.setMaxPlayers(maxPlayers);
+    }
+
+    public int getMaxPlayers() {
+        return pool.getMaxPlayers();
+    }
+
+    // Logs how often players were reused and what that saved
+    public void logMetrics() {
+        int created = pool.getCreated();
+        int reused = pool.getReused() + pool.getWarmReuses();
+        long avgMs = created == 0 ? 0 : buildMs / created;
+        long avgBytes = created == 0 ? 0 : buildBytes / created;
+        Log.d(TAG, "logMetrics() :: built " + created + " players (avg " + avgMs + " ms, "
+                + avgBytes / 1024 + " KB each), reused " + pool.getReused() + " and "
+                + pool.getWarmReuses() + " still playing, refused " + pool.getRefused()
+                + ", saving about " + reused * avgMs + " ms and " + reused * avgBytes / 1024 + " KB");
+    }
+
+    private ExoPlayer build() {
+        long startMs = SystemClock.elapsedRealtime();
+        long startBytes = bytesAllocated();
+
+        // Each player needs its own load control and renderers, they can't be shared
+        FrameRateCapRenderersFactory renderersFactory = new FrameRateCapRenderersFactory(context);
+        renderersFactory.setEnableDecoderFallback(true) // safer fallback
+                .setExtensionRendererMode(DefaultRenderersFactory.EXTENSION_RENDERER_MODE_PREFER);
+        ExoPlayer player = new ExoPlayer.Builder(context)
+                .setLoadControl(new DefaultLoadControl.Builder()
+                        .setBufferDurationsMs(
+                                MIN_BUFFER_MS,
+                                MAX_BUFFER_MS,
+                                BUFFER_FOR_PLAYBACK_MS,
+                                BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS
+                        )
+                        .build())
+                .setRenderersFactory(renderersFactory)
+                .build();
+        player.setSeekParameters(SeekParameters.CLOSEST_SYNC);
+        renderers.put(player, renderersFactory);
+
+        long elapsedMs = SystemClock.elapsedRealtime() - startMs;
+        long bytes = Math.max(0, bytesAllocated() - startBytes);
+        buildMs += elapsedMs;
+        buildBytes += bytes;
+        Log.d(TAG, "build() :: new player took " + elapsedMs + " ms and " + bytes / 1024 + " KB");
+        return player;
+    }
+
+    // Bytes the app has allocated so far, every thread included, so other work adds some noise
+    private static long bytesAllocated() {
+        String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        try {
+            return stat == null ? 0 : Long.parseLong(stat);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
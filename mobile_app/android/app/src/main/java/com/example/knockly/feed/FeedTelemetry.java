@@ -0,0 +1,177 @@
+package com.example.knockly.feed;
+
+import com.example.knockly.ssh.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * What one live feed player did, from being built to being released, so player settings can be
+ * compared on real phones instead of by eye. Filled in by {@link FeedAnalyticsListener} from the
+ * player's analytics events and by the latency samples the feed takes, shown on the feed's debug
+ * overlay and written to {@link FeedMetricsLog} as one row when the player goes.
+ * Times are on the elapsed realtime clock.
+ */
+public class FeedTelemetry {
+
+    // Set to true to show the numbers over the feed, long pressing "Live Feed" also toggles it
+    public static boolean showOverlay = false;
+
+    public static final String CSV_HEADER = "device,settings,player,ended,seconds,first_frame_ms,decoder_init_ms,"
+            + "live_offset_p50_ms,live_offset_p95_ms,buffered_p50_ms,dropped_frames,late_frames,"
+            + "rebuffers,rebuffer_ms,bitrate_kbps";
+
+    private final long createdMs;
+    // The player's settings, e.g. its buffer sizes, so rows can be grouped by them
+    private final String settings;
+    // How the feed got its player, e.g. "new" or "warm", so reusing players can be compared with building them
+    private final String player;
+
+    private long firstFrameMs = -1;
+    private long decoderInitMs = -1;
+    private int droppedFrames;
+    private int lateFrames;
+    private boolean ready;
+    private long bufferingSinceMs = -1;
+    private int rebuffers;
+    private long rebufferMs;
+    private long bitrateBps = -1;
+    private boolean bitrateMeasured;
+
+    private final LatencyHistogram liveOffsets = new LatencyHistogram();
+    private final LatencyHistogram buffered = new LatencyHistogram();
+    private long liveOffsetMs = -1;
+    private long bufferedMs = -1;
+    private float speed = 1f;
+
+    public FeedTelemetry(long createdMs, String settings, String player) {
+        this.createdMs = createdMs;
+        this.settings = settings;
+        this.player = player;
+    }
+
+    public synchronized void onFirstFrame(long nowMs) {
+        if (firstFrameMs < 0) firstFrameMs = nowMs;
+    }
+
+    public synchronized void onDecoderInitialized(long durationMs) {
+        decoderInitMs = durationMs;
+    }
+
+    public synchronized void onDroppedFrames(int count) {
+        droppedFrames += count;
+    }
+
+    /**
+     * Frames are reported in batches with their total offset from when they were due on screen,
+     * positive if they were ready early and negative if late. Every frame in a batch that was late
+     * on average is counted as late.
+     */
+    public synchronized void onFrameOffsets(long totalOffsetUs, int frameCount) {
+        if (frameCount > 0 && totalOffsetUs < 0) lateFrames += frameCount;
+    }
+
+    // Buffering after the first time the player was ready is a rebuffer, the picture froze
+    public synchronized void onBuffering(long nowMs) {
+        if (ready && bufferingSinceMs < 0) {
+            bufferingSinceMs = nowMs;
+            rebuffers++;
+        }
+    }
+
+    public synchronized void onReady(long nowMs) {
+        ready = true;
+        if (bufferingSinceMs >= 0) {
+            rebufferMs += nowMs - bufferingSinceMs;
+            bufferingSinceMs = -1;
+        }
+    }
+
+    // The bitrate the player measured while loading, preferred over the stream's advertised one
+    public synchronized void onBitrateMeasured(long bps) {
+        if (bps <= 0) return;
+        bitrateBps = bps;
+        bitrateMeasured = true;
+    }
+
+    // The bitrate the stream says it has, e.g. from the SDP, used until the player measures one
+    public synchronized void onBitrateAdvertised(long bps) {
+        if (bps > 0 && !bitrateMeasured) bitrateBps = bps;
+    }
+
+    public synchronized void onLatencySample(long liveOffsetMs, long bufferedMs, float speed) {
+        this.liveOffsetMs = liveOffsetMs;
+        this.bufferedMs = bufferedMs;
+        this.speed = speed;
+        if (liveOffsetMs >= 0) liveOffsets.record(liveOffsetMs);
+        if (bufferedMs >= 0) buffered.record(bufferedMs);
+    }
+
+    // -1 until a frame has been shown
+    public synchronized long getTimeToFirstFrameMs() {
+        return firstFrameMs < 0 ? -1 : firstFrameMs - createdMs;
+    }
+
+    public synchronized long getDecoderInitMs() {
+        return decoderInitMs;
+    }
+
+    public synchronized int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public synchronized int getLateFrames() {
+        return lateFrames;
+    }
+
+    public synchronized int getRebuffers() {
+        return rebuffers;
+    }
+
+    // Time spent rebuffering, including a rebuffer still going on
+    public synchronized long getRebufferMs(long nowMs) {
+        return rebufferMs + (bufferingSinceMs < 0 ? 0 : nowMs - bufferingSinceMs);
+    }
+
+    // -1 if neither measured nor advertised
+    public synchronized long getBitrateBps() {
+        return bitrateBps;
+    }
+
+    public synchronized long getLiveOffsetMs() {
+        return liveOffsetMs;
+    }
+
+    public synchronized long getBufferedMs() {
+        return bufferedMs;
+    }
+
+    // A few short lines for the overlay on the feed
+    public synchronized String overlayText(long nowMs) {
+        return String.format(Locale.ROOT, "offset %d ms  buffer %d ms  %.2fx\n"
+                        + "%s player, first frame %d ms  decoder %d ms\n"
+                        + "dropped %d  late %d  rebuffers %d (%d ms)\n"
+                        + "bitrate %s",
+                liveOffsetMs, bufferedMs, speed, player, getTimeToFirstFrameMs(), decoderInitMs,
+                droppedFrames, lateFrames, rebuffers, getRebufferMs(nowMs),
+                bitrateBps < 0 ? "unknown" : (bitrateBps / 1000) + " kbps");
+    }
+
+    /**
+     * One row matching {@link #CSV_HEADER}, unknown values are -1.
+     * @param ended why the player went, e.g. "closed" or the reason it was rebuilt
+     */
+    public synchronized String csvRow(long nowMs, String device, String ended) {
+        return String.format(Locale.ROOT, "%s,%s,%s,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d",
+                csv(device), csv(settings), csv(player), csv(ended), (nowMs - createdMs) / 1000, getTimeToFirstFrameMs(),
+                decoderInitMs, percentile(liveOffsets, 50), percentile(liveOffsets, 95), percentile(buffered, 50),
+                droppedFrames, lateFrames, rebuffers, getRebufferMs(nowMs), bitrateBps < 0 ? -1 : bitrateBps / 1000);
+    }
+
+    private static long percentile(LatencyHistogram histogram, double percentile) {
+        return histogram.getCount() == 0 ? -1 : histogram.getPercentile(percentile);
+    }
+
+    private static String csv(String value) {
+        return value.replace(',', ';').replace('\n', ' ');
+    }
+}
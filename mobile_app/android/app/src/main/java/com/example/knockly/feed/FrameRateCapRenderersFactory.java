@@ -0,0 +1,79 @@
+package com.example.knockly.feed;
+
+import android.content.Context;
+import android.os.Handler;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.Renderer;
+import androidx.media3.exoplayer.mediacodec.MediaCodecAdapter;
+import androidx.media3.exoplayer.mediacodec.MediaCodecSelector;
+import androidx.media3.exoplayer.video.MediaCodecVideoRenderer;
+import androidx.media3.exoplayer.video.VideoRendererEventListener;
+
+import java.util.ArrayList;
+
+/**
+ * Renderers for one feed player whose video can be drawn at a lower frame rate than the stream's,
+ * for the reduced tiles of the feed grid. Frames over the cap are decoded and then skipped instead of
+ * drawn. Set the cap with {@link #setMaxFps}, any thread.
+ */
+@UnstableApi
+public class FrameRateCapRenderersFactory extends DefaultRenderersFactory {
+
+    // 0 draws every frame
+    private volatile int maxFps;
+
+    public FrameRateCapRenderersFactory(Context context) {
+        super(context);
+    }
+
+    public void setMaxFps(int maxFps) {
+        this.maxFps = maxFps;
+    }
+
+    @Override
+    protected void buildVideoRenderers(Context context, int extensionRendererMode, MediaCodecSelector mediaCodecSelector,
+                                       boolean enableDecoderFallback, Handler eventHandler,
+                                       VideoRendererEventListener eventListener, long allowedVideoJoiningTimeMs,
+                                       ArrayList<Renderer> out) {
+        int first = out.size();
+        super.buildVideoRenderers(context, extensionRendererMode, mediaCodecSelector, enableDecoderFallback,
+                eventHandler, eventListener, allowedVideoJoiningTimeMs, out);
+        // Swap in the capped renderer for the platform one, leaving any extension renderers as they are
+        for (int i = first; i < out.size(); i++) {
+            if (out.get(i) instanceof MediaCodecVideoRenderer) {
+                out.set(i, new CappedVideoRenderer(context, getCodecAdapterFactory(), mediaCodecSelector,
+                        allowedVideoJoiningTimeMs, enableDecoderFallback, eventHandler, eventListener));
+            }
+        }
+    }
+
+    private class CappedVideoRenderer extends MediaCodecVideoRenderer {
+        private long lastDrawnUs = C.TIME_UNSET;
+
+        CappedVideoRenderer(Context context, MediaCodecAdapter.Factory codecAdapterFactory,
+                            MediaCodecSelector mediaCodecSelector, long allowedJoiningTimeMs,
+                            boolean enableDecoderFallback, Handler eventHandler,
+                            VideoRendererEventListener eventListener) {
+            super(context, codecAdapterFactory, mediaCodecSelector, allowedJoiningTimeMs, enableDecoderFallback,
+                    eventHandler, eventListener, MAX_DROPPED_VIDEO_FRAME_COUNT_TO_NOTIFY);
+        }
+
+        @Override
+        protected void renderOutputBufferV21(MediaCodecAdapter codec, int index, long presentationTimeUs,
+                                             long releaseTimeNs) {
+            int cap = maxFps;
+            // Times going backwards means a new stream, draw its first frame
+            if (cap > 0 && lastDrawnUs != C.TIME_UNSET && presentationTimeUs >= lastDrawnUs
+                    && presentationTimeUs - lastDrawnUs < 1_000_000L / cap) {
+                // Counted as skipped, not dropped, so the feed's telemetry doesn't see it as a struggling decoder
+                skipOutputBuffer(codec, index, presentationTimeUs);
+                return;
+            }
+            lastDrawnUs = presentationTimeUs;
+            super.renderOutputBufferV21(codec, index, presentationTimeUs, releaseTimeNs);
+        }
+    }
+}
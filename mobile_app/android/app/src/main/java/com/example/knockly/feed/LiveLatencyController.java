@@ -0,0 +1,201 @@
+package com.example.knockly.feed;
+
+/**
+ * Keeps the live feed close to live without rebuilding the player.
+ * Given a sample of the player every {@link #SAMPLE_INTERVAL_MS}, it works out how far the picture has
+ * drifted behind live and answers with a playback speed: 1x near live, a little faster to play through
+ * the buffer when it has fallen behind. Only when the drift passes {@link #rebuildDriftMs}, the picture
+ * hasn't moved for {@link #stallMs}, a new stream hasn't started within {@link #startTimeoutMs} or the
+ * player has failed does it ask for the player to be rebuilt.
+ * A stream is only measured once its position first moves, so time spent connecting isn't drift.
+ * Use it from the thread the player runs on.
+ */
+public class LiveLatencyController {
+
+    public static final long SAMPLE_INTERVAL_MS = 500;
+    // Drift under this is left alone, catching up stops once it's back under half of it
+    static final long TOLERANCE_MS = 150;
+    static final float MAX_CATCH_UP_SPEED = 1.25f;
+    // Speed added per second of drift, so 400 ms behind plays at 1.1x
+    static final float CATCH_UP_GAIN = 0.25f;
+    // Playing faster with less than this buffered would only stall the picture
+    static final long MIN_CATCH_UP_BUFFER_MS = 100;
+    // A rebuild that didn't help isn't asked for again before this
+    static final long MIN_REBUILD_INTERVAL_MS = 10000;
+
+    // Live offset aimed for when the stream reports one
+    public static long targetOffsetMs = 300;
+    // Drift that speeding up can't be trusted to win back, the player is rebuilt instead
+    public static long rebuildDriftMs = 3000;
+    // Time the picture may stand still while it should be playing before the player is rebuilt
+    public static long stallMs = 3000;
+    // Time a new stream may take to connect and show its first frame before the player is rebuilt
+    public static long startTimeoutMs = 10000;
+
+    /** What to do with the player after a sample. */
+    public static final class Decision {
+        public final float speed;
+        public final boolean rebuild;
+        // Why a rebuild was asked for, null if it wasn't
+        public final String reason;
+
+        Decision(float speed, boolean rebuild, String reason) {
+            this.speed = speed;
+            this.rebuild = rebuild;
+            this.reason = reason;
+        }
+    }
+
+    private final long target;
+    private final long rebuildDrift;
+    private final long stall;
+    private final long startTimeout;
+
+    // Wall clock and position when playback was last known to be live, -1 until the position first moves
+    private long anchorNowMs = -1;
+    private long anchorPositionMs;
+    // When the current stream was first sampled and the position it had then
+    private long streamStartMs = -1;
+    private long startPositionMs;
+    private long lastPositionMs = -1;
+    private long lastAdvanceMs = -1;
+    private long lastRebuildMs = Long.MIN_VALUE / 2;
+    private boolean catchingUp;
+
+    private long driftMs;
+    private long bufferedMs;
+    private long liveOffsetMs;
+    private float speed = 1f;
+    private int rebuilds;
+
+    public LiveLatencyController() {
+        this(targetOffsetMs, rebuildDriftMs, stallMs, startTimeoutMs);
+    }
+
+    LiveLatencyController(long targetOffsetMs, long rebuildDriftMs, long stallMs, long startTimeoutMs) {
+        this.target = targetOffsetMs;
+        this.rebuildDrift = rebuildDriftMs;
+        this.stall = stallMs;
+        this.startTimeout = startTimeoutMs;
+    }
+
+    /**
+     * @param nowMs a monotonic clock, e.g. SystemClock.elapsedRealtime()
+     * @param positionMs the player's position in the stream
+     * @param bufferedMs how far ahead of the position the player has loaded
+     * @param liveOffsetMs the player's own live offset, -1 if the stream doesn't report one (RTSP doesn't)
+     * @param playing true while the player should be playing, i.e. play when ready is set
+     * @param failed true if the player has stopped with an error
+     */
+    public Decision onSample(long nowMs, long positionMs, long bufferedMs, long liveOffsetMs,
+                             boolean playing, boolean failed) {
+        this.bufferedMs = bufferedMs;
+
+        if (lastPositionMs < 0 || positionMs < lastPositionMs) {
+            // First sample, or the position went back, so this is a new stream
+            // A player starts from 0, so a first sample past it is one already playing
+            anchorNowMs = -1;
+            streamStartMs = nowMs;
+            startPositionMs = lastPositionMs < 0 ? 0 : positionMs;
+        }
+        boolean started = anchorNowMs >= 0;
+        if (!started && positionMs > startPositionMs) {
+            // Playing at last, it's as live as it gets now
+            anchorNowMs = nowMs;
+            anchorPositionMs = positionMs;
+            lastAdvanceMs = nowMs;
+        } else if (started && (positionMs > lastPositionMs || !playing)) {
+            lastAdvanceMs = nowMs;
+        }
+        lastPositionMs = positionMs;
+
+        if (liveOffsetMs >= 0) {
+            driftMs = liveOffsetMs - target;
+            this.liveOffsetMs = liveOffsetMs;
+        } else if (anchorNowMs < 0) {
+            // Still connecting, nothing shown yet to be behind
+            driftMs = 0;
+            this.liveOffsetMs = bufferedMs;
+        } else {
+            // Without a live clock, anything the picture falls behind the wall clock since it started is drift
+            long lagMs = (nowMs - anchorNowMs) - (positionMs - anchorPositionMs);
+            if (lagMs < 0) {
+                // Ahead of where it started, e.g. played through the startup buffer, so as live as it gets
+                anchorNowMs = nowMs;
+                anchorPositionMs = positionMs;
+                lagMs = 0;
+            }
+            driftMs = lagMs;
+            // The frames waiting to be shown plus the drift, leaving out the network and decoder
+            this.liveOffsetMs = bufferedMs + lagMs;
+        }
+
+        // A paused feed really is behind, but it's only worth doing anything about once it plays again
+        if (!playing && !failed) {
+            speed = 1f;
+            return new Decision(speed, false, null);
+        }
+
+        String reason = null;
+        if (failed) {
+            reason = "player error";
+        } else if (anchorNowMs < 0) {
+            if (nowMs - streamStartMs >= startTimeout) reason = "not started after " + (nowMs - streamStartMs) + " ms";
+        } else if (nowMs - lastAdvanceMs >= stall) {
+            reason = "stalled for " + (nowMs - lastAdvanceMs) + " ms";
+        } else if (driftMs > rebuildDrift) {
+            reason = "drifted " + driftMs + " ms";
+        }
+        if (reason != null && nowMs - lastRebuildMs >= MIN_REBUILD_INTERVAL_MS) {
+            lastRebuildMs = nowMs;
+            rebuilds++;
+            return new Decision(speed, true, reason);
+        }
+
+        speed = catchUpSpeed();
+        return new Decision(speed, false, null);
+    }
+
+    // Call once the rebuilt player has taken over, so it's measured from its own start
+    public void reset() {
+        anchorNowMs = -1;
+        streamStartMs = -1;
+        lastPositionMs = -1;
+        lastAdvanceMs = -1;
+        catchingUp = false;
+        driftMs = 0;
+        liveOffsetMs = 0;
+        speed = 1f;
+    }
+
+    private float catchUpSpeed() {
+        if (driftMs > TOLERANCE_MS) catchingUp = true;
+        else if (driftMs < TOLERANCE_MS / 2) catchingUp = false;
+        if (!catchingUp || bufferedMs < MIN_CATCH_UP_BUFFER_MS) return 1f;
+
+        float wanted = Math.min(MAX_CATCH_UP_SPEED, 1f + CATCH_UP_GAIN * driftMs / 1000f);
+        // In steps of 0.05x, so the player isn't given a new speed every sample
+        return Math.max(1f, Math.round(wanted * 20) / 20f);
+    }
+
+    public long getDriftMs() {
+        return driftMs;
+    }
+
+    // The player's live offset, or when the stream doesn't report one an estimate that's at least this far behind
+    public long getLiveOffsetMs() {
+        return liveOffsetMs;
+    }
+
+    public long getBufferedMs() {
+        return bufferedMs;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public int getRebuilds() {
+        return rebuilds;
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.knockly.feed;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pool of video players, so a feed can take over a player that's already built instead of building
+ * a new one, and a feed that comes back soon after it went gets its player still playing.
+ * A player given back warm keeps playing its stream (and holding its decoder) for the warm time,
+ * then is stopped, and is released once it has been idle for the idle time.
+ * At most maxPlayers exist at once, counting those in use.
+ * Not thread safe, use it from the thread the players run on.
+ * @param <P> the player type
+ */
+public class PlayerPool<P> {
+
+    // What the pool does to its players, so it can be tested without real ones
+    public interface Players<P> {
+        P create();
+        // Starts the player on the stream from scratch
+        void load(P player, String uri);
+        // Stops playback and frees the decoder, keeping the player to be loaded again
+        void stop(P player);
+        void release(P player);
+    }
+
+    /** How the player in a lease was come by, slowest first. */
+    public enum Source {
+        // Built for this lease
+        NEW,
+        // Built before, loaded with the stream for this lease
+        REUSED,
+        // Was still playing the stream, nothing had to be loaded
+        WARM
+    }
+
+    private final Players<P> players;
+    private final long warmMs;
+    private final long idleMs;
+    private int maxPlayers;
+
+    private final List<Entry<P>> idle = new ArrayList<>();
+    private int leased;
+
+    private int created;
+    private int reused;
+    private int warmReuses;
+    private int refused;
+
+    private static class Entry<P> {
+        final P player;
+        // Stream it's still playing, null once stopped
+        String uri;
+        long returnedMs;
+
+        Entry(P player) {
+            this.player = player;
+        }
+    }
+
+    /** A player on loan from the pool, close it to give the player back rather than releasing it. */
+    public class Lease {
+        private final Entry<P> entry;
+        private final Source source;
+        private final List<Runnable> onClose = new ArrayList<>();
+        private boolean closed;
+
+        private Lease(Entry<P> entry, Source source) {
+            this.entry = entry;
+            this.source = source;
+        }
+
+        public P getPlayer() {
+            return entry.player;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        // Runs when the lease is closed, e.g. to remove listeners added to the player
+        public void onClose(Runnable cleanup) {
+            onClose.add(cleanup);
+        }
+
+        /**
+         * @param nowMs the same clock passed to {@link #acquire} and {@link #trim}
+         * @param keepWarm true to leave it playing for a while in case the same stream is wanted again,
+         *                 false e.g. when the stream had stalled
+         */
+        public void close(long nowMs, boolean keepWarm) {
+            if (closed) return;
+            closed = true;
+            for (Runnable cleanup : onClose) cleanup.run();
+            leased--;
+            giveBack(entry, nowMs, keepWarm);
+        }
+    }
+
+    public PlayerPool(Players<P> players, int maxPlayers, long warmMs, long idleMs) {
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.warmMs = warmMs;
+        this.idleMs = idleMs;
+    }
+
+    /**
+     * Leases a player for the stream, preferring one still playing it, then any built player,
+     * and only then building a new one.
+     * @param fresh true to start the stream again even if a player is still playing it, e.g. to recover
+     *              from a stall
+     * @return null if maxPlayers are already in use
+     */
+    public Lease acquire(String uri, boolean fresh, long nowMs) {
+        trim(nowMs);
+
+        Entry<P> entry = null;
+        if (!fresh) {
+            for (Entry<P> candidate : idle) {
+                if (uri.equals(candidate.uri)) {
+                    entry = candidate;
+                    break;
+                }
+            }
+            if (entry != null) {
+                idle.remove(entry);
+                leased++;
+                warmReuses++;
+                return new Lease(entry, Source.WARM);
+            }
+        }
+
+        // Most recently given back last, so the longest idle is taken and the warmest kept
+        if (!idle.isEmpty()) {
+            entry = idle.remove(0);
+            if (entry.uri != null) stop(entry);
+            load(entry, uri);
+            leased++;
+            reused++;
+            return new Lease(entry, Source.REUSED);
+        }
+
+        if (leased >= maxPlayers) {
+            refused++;
+            return null;
+        }
+        entry = new Entry<>(players.create());
+        created++;
+        load(entry, uri);
+        leased++;
+        return new Lease(entry, Source.NEW);
+    }
+
+    /**
+     * Stops players that have been warm for the warm time and releases those idle for the idle time.
+     * Call it now and then, acquiring also trims.
+     */
+    public void trim(long nowMs) {
+        Iterator<Entry<P>> it = idle.iterator();
+        while (it.hasNext()) {
+            Entry<P> entry = it.next();
+            if (entry.uri != null && nowMs - entry.returnedMs >= warmMs) {
+                stop(entry);
+            }
+            if (entry.uri == null && nowMs - entry.returnedMs >= idleMs) {
+                it.remove();
+                players.release(entry.player);
+            }
+        }
+    }
+
+    // Releases every player not in use, e.g. when the app is short of memory
+    public void releaseIdle() {
+        for (Entry<P> entry : idle) {
+            players.release(entry.player);
+        }
+        idle.clear();
+    }
+
+    // Players over a lower cap are released as they come back
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+        while (!idle.isEmpty() && idle.size() + leased > maxPlayers) {
+            players.release(idle.remove(0).player);
+        }
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public int getLeased() {
+        return leased;
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getReused() {
+        return reused;
+    }
+
+    public int getWarmReuses() {
+        return warmReuses;
+    }
+
+    // Leases that couldn't be given a player because maxPlayers were in use
+    public int getRefused() {
+        return refused;
+    }
+
+    private void giveBack(Entry<P> entry, long nowMs, boolean keepWarm) {
+        if (idle.size() + leased >= maxPlayers) {
+            // The cap was lowered while it was out
+            players.release(entry.player);
+            return;
+        }
+        if (!keepWarm && entry.uri != null) stop(entry);
+        entry.returnedMs = nowMs;
+        idle.add(entry);
+    }
+
+    private void load(Entry<P> entry, String uri) {
+        players.load(entry.player, uri);
+        entry.uri = uri;
+    }
+
+    private void stop(Entry<P> entry) {
+        players.stop(entry.player);
+        entry.uri = null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.knockly.feed;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a single RTSP DESCRIBE to the feed Pi, the same first request the player makes.
+ * Used to check the stream is being served, and to get the server ready before the player asks.
+ */
+public class RtspProbe {
+    private static final String TAG = "RtspProbe";
+
+    // Must match the stream in edge_device/Live Feed/rtspServer.sh
+    public static final int RTSP_PORT = 8554;
+    public static final String STREAM_PATH = "/doorbell";
+
+    private RtspProbe() {}
+
+    public static String uriFor(String host) {
+        return uriFor(host, RTSP_PORT);
+    }
+
+    public static String uriFor(String host, int port) {
+        return "rtsp://" + host + ":" + port + STREAM_PATH;
+    }
+
+    /**
+     * @return true if the server described the stream, false if it refused or couldn't be reached in time
+     */
+    public static boolean describe(String host, int port, int timeoutMs) {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+
+            OutputStream out = socket.getOutputStream();
+            out.write(("DESCRIBE " + uriFor(host, port) + " RTSP/1.0\r\n"
+                    + "CSeq: 1\r\n"
+                    + "Accept: application/sdp\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String status = in.readLine();
+            boolean described = status != null && status.startsWith("RTSP/1.0 200");
+            Log.d(TAG, "describe() :: " + host + " answered \"" + status + "\" after "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return described;
+        } catch (IOException e) {
+            Log.d(TAG, "describe() :: " + host + " not serving the feed: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.knockly.feedGridPage;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.PixelCopy;
+import android.view.SurfaceView;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import androidx.activity.EdgeToEdge;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.gridlayout.widget.GridLayout;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.ui.PlayerView;
+
+import com.example.knockly.R;
+import com.example.knockly.feed.DecoderBudget;
+import com.example.knockly.feed.DecoderBudget.Tier;
+import com.example.knockly.feed.DecoderProbe;
+import com.example.knockly.feed.FeedHandoff;
+import com.example.knockly.feed.FeedPlayerPool;
+import com.example.knockly.feed.PlayerPool;
+import com.example.knockly.feed.RtspProbe;
+import com.example.knockly.indvDoorbellPage.IndvDoorbellActivity;
+import com.example.knockly.network.dto.DoorbellOut;
+import com.example.knockly.shared.PageHeaderFragment;
+import com.example.knockly.utils.ViewUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows every doorbell's live feed at once, in a grid of tiles.
+ * A {@link DecoderBudget} worked out from the phone's decoder decides how each tile on screen is shown:
+ * the first ones live, the next ones drawn at a lower frame rate and the rest as still pictures, which
+ * one spare player takes in turn. Tiles scrolled off screen give their player back straight away,
+ * freeing its decoder. Tapping a tile opens that doorbell's page.
+ */
+@UnstableApi
+public class FeedGridActivity extends AppCompatActivity {
+    private static final String TAG = "FeedGridActivity";
+
+    // How often each still tile gets a new picture, they're taken one at a time so it's shared between them
+    public static long stillRefreshMs = 10000;
+    // Gives up on a picture if the player hasn't drawn a frame by then
+    private static final long STILL_TIMEOUT_MS = 5000;
+
+    private DoorbellOut[] doorbells;
+    private String hostPiMain;
+    private String hostPiFeed;
+    // Every doorbell is served by the same located Pis, so every tile plays the same stream for now
+    private String feedUri;
+
+    private FeedPlayerPool pool;
+    private DecoderBudget budget;
+    private ScrollView scrollView;
+    private final List<Tile> tiles = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Rect visibleRect = new Rect();
+    private boolean started;
+
+    // Still tile whose picture is being taken, and the next one to take
+    private Tile refreshing;
+    private int nextStill;
+
+    private static class Tile {
+        final DoorbellOut doorbell;
+        final View root;
+        final PlayerView playerView;
+        final ImageView still;
+        final TextView tierText;
+        PlayerPool<ExoPlayer>.Lease lease;
+        Tier tier = Tier.OFF;
+
+        Tile(DoorbellOut doorbell, View root) {
+            this.doorbell = doorbell;
+            this.root = root;
+            playerView = root.findViewById(R.id.feedTilePlayerView);
+            still = root.findViewById(R.id.feedTileStill);
+            tierText = root.findViewById(R.id.feedTileTier);
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        setContentView(R.layout.activity_feed_grid);
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        Intent intent = getIntent();
+        doorbells = (DoorbellOut[]) intent.getSerializableExtra("doorbells");
+        hostPiMain = intent.getStringExtra("piHost_main");
+        hostPiFeed = intent.getStringExtra("piHost_feed");
+        feedUri = hostPiFeed == null || hostPiFeed.isBlank() ? null : RtspProbe.uriFor(hostPiFeed);
+
+        // Add header fragment
+        PageHeaderFragment pageHeader = PageHeaderFragment.newInstance(getString(R.string.feedGridPageTitle), true, true);
+        getSupportFragmentManager().beginTransaction().replace(R.id.FeedGridHeaderFragment, pageHeader).commit();
+
+        pool = FeedPlayerPool.getInstance(this);
+        budget = DecoderProbe.budgetForFeed();
+        scrollView = findViewById(R.id.FeedGridScrollView);
+        setupTiles(findViewById(R.id.FeedGridLayout));
+    }
+
+    private void setupTiles(GridLayout layout) {
+        if (doorbells == null) return;
+
+        // Two across, the shape of the camera's picture
+        int screenWidth = getResources().getDisplayMetrics().widthPixels;
+        int marginSize = (int) (ViewUtils.dpToPx(4, this));
+        int tileWidth = (screenWidth / 2) - (4 * marginSize);
+        int tileHeight = tileWidth * DecoderProbe.STREAM_HEIGHT / DecoderProbe.STREAM_WIDTH;
+
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (DoorbellOut doorbell : doorbells) {
+            if (doorbell == null) continue;
+
+            View root = inflater.inflate(R.layout.feed_grid_tile, layout, false);
+            GridLayout.LayoutParams params = new GridLayout.LayoutParams();
+            params.width = tileWidth;
+            params.height = tileHeight;
+            params.setMargins(marginSize, marginSize, marginSize, marginSize);
+            root.setLayoutParams(params);
+
+            Tile tile = new Tile(doorbell, root);
+            ((TextView) root.findViewById(R.id.feedTileName)).setText(doorbell.doorbell_name);
+            if (feedUri == null) tile.tierText.setText(R.string.feedTileNoFeedLabel);
+            root.setOnClickListener(v -> openDoorbell(tile));
+
+            tiles.add(tile);
+            layout.addView(root);
+        }
+    }
+
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener = this::updateTiers;
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        // Room for every tile the budget allows to be live, put back when the grid goes
+        pool.setMaxPlayers(Math.max(FeedPlayerPool.DEFAULT_MAX_PLAYERS, budget.getMaxPlayers()));
+        scrollView.getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        // Once laid out, so it's known which tiles are on screen
+        scrollView.post(this::updateTiers);
+        handler.postDelayed(refreshNextStill, stillRefreshMs / Math.max(1, tiles.size()));
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        scrollView.getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+        handler.removeCallbacksAndMessages(null);
+        for (Tile tile : tiles) {
+            releasePlayer(tile, false);
+            tile.tier = Tier.OFF;
+        }
+        pool.setMaxPlayers(FeedPlayerPool.DEFAULT_MAX_PLAYERS);
+    }
+
+    // Works out which tiles are on screen and shows each one as the budget says
+    private void updateTiers() {
+        if (!started || feedUri == null) return;
+
+        boolean[] visible = new boolean[tiles.size()];
+        for (int i = 0; i < tiles.size(); i++) {
+            visible[i] = tiles.get(i).root.getLocalVisibleRect(visibleRect);
+        }
+        Tier[] tiers = budget.assign(visible);
+
+        // Players are given back first, so the tiles taking them over aren't refused
+        for (int i = 0; i < tiles.size(); i++) {
+            if (tiers[i] == Tier.STILL || tiers[i] == Tier.OFF) show(tiles.get(i), tiers[i]);
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            if (tiers[i] == Tier.FULL || tiers[i] == Tier.REDUCED) show(tiles.get(i), tiers[i]);
+        }
+    }
+
+    private void show(Tile tile, Tier tier) {
+        if (tile.tier == tier) return;
+        Log.d(TAG, "show() :: " + tile.doorbell.doorbell_name + " " + tile.tier + " -> " + tier);
+        tile.tier = tier;
+
+        switch (tier) {
+            case FULL:
+            case REDUCED:
+                if (tile == refreshing) stopRefreshing();  // its player is kept, it's live now
+                if (tile.lease == null) {
+                    tile.lease = pool.acquire(feedUri, false);
+                    if (tile.lease == null) {
+                        // Players the budget allowed are still in use, it gets pictures until the next update
+                        tile.tier = Tier.STILL;
+                        showStill(tile);
+                        return;
+                    }
+                    tile.playerView.setPlayer(tile.lease.getPlayer());
+                }
+                pool.setMaxFps(tile.lease.getPlayer(), tier == Tier.FULL ? 0 : DecoderBudget.reducedFps);
+                tile.still.setVisibility(View.GONE);
+                tile.tierText.setText(tier == Tier.FULL ? getString(R.string.feedTileLiveLabel)
+                        : getString(R.string.feedTileReducedLabel, DecoderBudget.reducedFps));
+                break;
+            case STILL:
+                // Keeps the last frame it showed live, then gives its player back
+                takeStill(tile, () -> {
+                    if (tile.tier == Tier.STILL && tile != refreshing) releasePlayer(tile, false);
+                });
+                showStill(tile);
+                break;
+            case OFF:
+                // Off screen, its decoder is freed now rather than when the grid goes
+                releasePlayer(tile, false);
+                break;
+        }
+    }
+
+    private void showStill(Tile tile) {
+        tile.still.setVisibility(tile.still.getDrawable() != null ? View.VISIBLE : View.GONE);
+        tile.tierText.setText(R.string.feedTileStillLabel);
+    }
+
+    // Takes a picture for the still tiles one at a time, with the decoder the budget kept back for it
+    private final Runnable refreshNextStill = new Runnable() {
+        @Override
+        public void run() {
+            List<Tile> stills = new ArrayList<>();
+            for (Tile tile : tiles) {
+                if (tile.tier == Tier.STILL) stills.add(tile);
+            }
+            if (!stills.isEmpty() && refreshing == null && budget.refreshesStills()) {
+                refreshStill(stills.get(nextStill++ % stills.size()));
+            }
+            handler.postDelayed(this, stillRefreshMs / Math.max(1, stills.size()));
+        }
+    };
+
+    private void refreshStill(Tile tile) {
+        if (tile.lease == null) {
+            tile.lease = pool.acquire(feedUri, false);
+            if (tile.lease == null) return;
+        }
+        refreshing = tile;
+        ExoPlayer player = tile.lease.getPlayer();
+        Player.Listener listener = new Player.Listener() {
+            @Override
+            public void onRenderedFirstFrame() {
+                if (refreshing != tile) return;
+                handler.removeCallbacks(refreshTimeout);
+                takeStill(tile, () -> {
+                    if (refreshing == tile) stopRefreshing();
+                    if (tile.tier == Tier.STILL) releasePlayer(tile, false);
+                });
+            }
+        };
+        player.addListener(listener);
+        tile.lease.onClose(() -> player.removeListener(listener));
+        // Drawn under the last picture, which is swapped for the new one once it's taken
+        tile.playerView.setPlayer(player);
+        handler.postDelayed(refreshTimeout, STILL_TIMEOUT_MS);
+    }
+
+    private final Runnable refreshTimeout = () -> {
+        Tile tile = refreshing;
+        if (tile == null) return;
+        Log.d(TAG, "refreshTimeout() :: no frame for " + tile.doorbell.doorbell_name + " in time");
+        stopRefreshing();
+        if (tile.tier == Tier.STILL) releasePlayer(tile, false);
+    };
+
+    private void stopRefreshing() {
+        handler.removeCallbacks(refreshTimeout);
+        refreshing = null;
+    }
+
+    // Copies the frame on the tile's surface into its still picture, then runs next either way
+    private void takeStill(Tile tile, Runnable next) {
+        View videoView = tile.playerView.getVideoSurfaceView();
+        if (tile.lease == null || !(videoView instanceof SurfaceView)
+                || !((SurfaceView) videoView).getHolder().getSurface().isValid()
+                || videoView.getWidth() == 0 || videoView.getHeight() == 0) {
+            next.run();
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(videoView.getWidth(), videoView.getHeight(), Bitmap.Config.ARGB_8888);
+        PixelCopy.request((SurfaceView) videoView, bitmap, result -> {
+            if (result == PixelCopy.SUCCESS) {
+                tile.still.setImageBitmap(bitmap);
+                if (tile.tier == Tier.STILL) tile.still.setVisibility(View.VISIBLE);
+            }
+            next.run();
+        }, handler);
+    }
+
+    /**
+     * Gives the tile's player back to the pool.
+     * @param keepWarm true if it's about to be wanted again, otherwise it's stopped, freeing its decoder
+     */
+    private void releasePlayer(Tile tile, boolean keepWarm) {
+        if (tile == refreshing) stopRefreshing();
+        if (tile.lease == null) return;
+        tile.playerView.setPlayer(null);
+        pool.close(tile.lease, keepWarm);
+        tile.lease = null;
+    }
+
+    private void openDoorbell(Tile tile) {
+        Intent intent = new Intent(this, IndvDoorbellActivity.class);
+        intent.putExtra("doorbell_ID", tile.doorbell.doorbell_id);
+        intent.putExtra("doorbell_name", tile.doorbell.doorbell_name);
+        intent.putExtra("owner_id", tile.doorbell.owner_user_id);
+        intent.putExtra("linked_users", tile.doorbell.linked_users);
+        intent.putExtra("piHost_main", hostPiMain);
+        intent.putExtra("piHost_feed", hostPiFeed);
+
+        if (feedUri != null) {
+            // The tile's player is already playing the stream, so the page can take it over warm
+            releasePlayer(tile, true);
+            tile.tier = Tier.OFF;
+            FeedHandoff.getInstance().start(this, feedUri);
+        }
+        startActivity(intent);
+    }
+}
@@ -3,11 +3,11 @@ package com.example.knockly.homePage;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.SpannableString;
+import android.text.style.RelativeSizeSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ProgressBar;
-import android.widget.TextView;
 
 import androidx.annotation.OptIn;
 import androidx.core.content.ContextCompat;
@@ -17,15 +17,22 @@ import androidx.media3.common.util.UnstableApi;
 
 import com.example.knockly.R;
 import com.example.knockly.addDoorbellPage.AddDoorbellActivity;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.discovery.DoorbellLocator;
+import com.example.knockly.discovery.PiProfile;
+import com.example.knockly.feed.FeedHandoff;
+import com.example.knockly.feed.RtspProbe;
+import com.example.knockly.feedGridPage.FeedGridActivity;
 import com.example.knockly.indvDoorbellPage.IndvDoorbellActivity;
 import com.example.knockly.network.dto.DoorbellOut;
 import com.example.knockly.network.dto.LinkedUser;
+import com.example.knockly.ssh.DoorbellPrewarmer;
+import com.example.knockly.ssh.SshExec;
+import com.example.knockly.ssh.SshSessionPool;
 import com.example.knockly.utils.ButtonUtils;
-import com.example.knockly.utils.SSHUtils;
 import com.example.knockly.utils.ViewUtils;
 import com.google.android.material.button.MaterialButton;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 
 import org.json.JSONArray;
 
@@ -33,6 +40,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A {@link Fragment} subclass that takes an array of json objects representing
@@ -48,10 +58,15 @@ public class HomePageButtonsFragment extends Fragment {
 
     private DoorbellOut[] mDoorbells;
     private Context context;
-    private HashMap<String, HashMap<String, String>> doorbells = new HashMap<>();
-    private Session feedSession;
+    private DoorbellLocator locator;
+    // Each doorbell button and the doorbell name shown on it
+    private final HashMap<MaterialButton, String> doorbellButtons = new HashMap<>();
+    // Feed hosts the server has been started on, shared so a recreated page doesn't start it again
+    private static final Set<String> feedServersStarted = ConcurrentHashMap.newKeySet();
     public String commandDir = "cm2211-project-group-8/edge_device/Live Feed";
-    private final String serverCmd = "\nchmod +x startServer.sh\n./startServer.sh";
+    // Left running in the background once the command returns, unless the Pi is already streaming
+    private final String serverCmd = "\nchmod +x startServer.sh"
+            + "\npgrep -x rpicam-vid > /dev/null || { nohup ./startServer.sh > /dev/null 2>&1 & }";
     private int returnStatus;
 
     public HomePageButtonsFragment() {
@@ -85,17 +100,6 @@ public class HomePageButtonsFragment extends Fragment {
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-        HashMap<String, String> main = new HashMap<>();
-        main.put("username", "admin");
-        main.put("password", "admin");
-        main.put("piHost", "");
-        HashMap<String, String> feed = new HashMap<>();
-        feed.put("username", "pi");
-        feed.put("password", "raspberry");
-        feed.put("piHost", "");
-        doorbells.put("main", main);
-        doorbells.put("feed", feed);
-
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_home_page_buttons, container, false);
 
@@ -103,49 +107,79 @@ public class HomePageButtonsFragment extends Fragment {
         GridLayout layout = view.findViewById(R.id.HomePageScrollLayout);
         layout.setAlignmentMode(GridLayout.ALIGN_BOUNDS);
 
-        View loadingOverlay = view.findViewById(R.id.loading_overlay);
-        ProgressBar loadingBar = view.findViewById(R.id.loading_spinner);
-        TextView loadingText = view.findViewById(R.id.loading_text);
-
         context = getContext();
 
-        final Thread networkThread = new Thread(() -> {
-            // Populate piHost fields
-            for (String key : doorbells.keySet()) {
-                HashMap<String, String> creds = doorbells.get(key);
-                String username = creds.get("username");
-                String password = creds.get("password");
-                String piHost = SSHUtils.getPiIP(context, username, password);
-                creds.put("piHost", piHost);  // Store result back in map
-                System.out.println("Found piHost for " + key + ": " + piHost);
-            }
-
+        // Pis are located in the background from app start, buttons show a badge until they're found
+        locator = DoorbellLocator.getInstance(context);
+        setupButtons(layout);
+        locator.addListener(locatorListener);
+        locatorListener.onDoorbellHostsChanged(locator);
+        locator.refresh(false);
 
-            // After data fetched, update UI
-            requireActivity().runOnUiThread(() -> {
-                // Hide loading overlay after buttons are set up
-                loadingBar.setVisibility(View.GONE);
-                loadingText.setVisibility(View.GONE);
-                loadingOverlay.setVisibility(View.GONE);
-                setupButtons(layout);
-            });
+        return view;
+    }
 
-            // Start session for feed
-            String feedHost = doorbells.get("feed").get("piHost");
-            String feedUser = doorbells.get("feed").get("username");
-            String feedPass = doorbells.get("feed").get("password");
+    // Updates the badges, starts the feed server once the feed Pi is known and warms up the Pis that have been found
+    private final DoorbellLocator.Listener locatorListener = new DoorbellLocator.Listener() {
+        @Override
+        public void onDoorbellHostsChanged(DoorbellLocator locator) {
+            updateBadges();
+
+            String feedHost = locator.getHost(DoorbellLocator.ROLE_FEED);
+            if (locator.getState(DoorbellLocator.ROLE_FEED) == DoorbellLocator.State.FOUND
+                    && feedServersStarted.add(feedHost)) {
+                PiProfile feed = locator.getProfile(DoorbellLocator.ROLE_FEED);
+
+                // Not tied to this page, the server has to keep running after it goes
+                AppExecutors.getInstance().ssh().execute(() -> {
+                    SshSessionPool.Lease lease;
+                    try {
+                        lease = SshSessionPool.getInstance().lease(feedHost, feed.username, feed.password);
+                    } catch (JSchException e) {
+                        System.out.println("Could not start feed server: " + e.getMessage());
+                        feedServersStarted.remove(feedHost);
+                        return;
+                    }
+                    // The server is detached on the Pi, so this returns as soon as it's launched
+                    // and neither an ssh thread nor the lease is held while it runs
+                    String command = "\ncd \""+commandDir+"\"\n"+serverCmd;
+                    SshExec.exec(lease.getSession(), command, SshExec.DEFAULT_TIMEOUT_MS, (chunk, stderr) -> System.out.print(chunk))
+                            .whenComplete((result, e) -> {
+                                returnStatus = result == null ? -1 : result.exitStatus;
+                                lease.close();
+                                // Let the next change try again
+                                if (returnStatus != 0) feedServersStarted.remove(feedHost);
+                            });
+                });
+            }
+            prewarmDoorbells();
+        }
+    };
+
+    // Shows "Locating..." under each doorbell's name until the Pis are found
+    private void updateBadges() {
+        String badge;
+        if (locator.isLocating()) {
+            badge = getString(R.string.doorbellLocatingBadge);
+        } else if (locator.getState(DoorbellLocator.ROLE_MAIN) == DoorbellLocator.State.NOT_FOUND) {
+            badge = getString(R.string.doorbellNotFoundBadge);
+        } else {
+            badge = null;
+        }
 
-            startSession(feedUser, feedHost, feedPass);
+        for (Map.Entry<MaterialButton, String> entry : doorbellButtons.entrySet()) {
+            entry.getKey().setText(buttonText(entry.getValue(), badge));
+        }
+    }
 
-            if (feedSession != null) {
-                String command = "\ncd "+commandDir+"\n"+serverCmd;
-                returnStatus = SSHUtils.execSSHCmd(command, feedSession);
-            }
-        });
-        networkThread.start();
+    private static CharSequence buttonText(String doorbellName, String badge) {
+        if (badge == null) return doorbellName;
 
-        return view;
+        SpannableString text = new SpannableString(doorbellName + "\n" + badge);
+        text.setSpan(new RelativeSizeSpan(0.75f), doorbellName.length(), text.length(), 0);
+        return text;
     }
+
     private MaterialButton createAddDoorbellButton(Context context, int width, int height, int margins){
         MaterialButton button = ButtonUtils.createDynamicStyledButton(context, "Add Doorbell", width, height, margins);
 
@@ -180,6 +214,7 @@ public class HomePageButtonsFragment extends Fragment {
 
                     // Create button for doorbell
                     MaterialButton doorbellButton = ButtonUtils.createDynamicStyledButton(getContext(), doorbellName, buttonWidth, buttonHeight, marginSize);
+                    doorbellButtons.put(doorbellButton, doorbellName);
 
                     doorbellButton.setOnClickListener(new View.OnClickListener() {
                         @OptIn(markerClass = UnstableApi.class)
@@ -190,8 +225,14 @@ public class HomePageButtonsFragment extends Fragment {
                             intent.putExtra("doorbell_name", doorbellName);
                             intent.putExtra("owner_id", ownerID);
                             intent.putExtra("linked_users", linkedUsers);
-                            intent.putExtra("piHost_main", doorbells.get("main").get("piHost"));
-                            intent.putExtra("piHost_feed", doorbells.get("feed").get("piHost"));
+                            intent.putExtra("piHost_main", locator.getHost(DoorbellLocator.ROLE_MAIN));
+                            intent.putExtra("piHost_feed", locator.getHost(DoorbellLocator.ROLE_FEED));
+
+                            // Connect to the feed now, the page's live feed takes the player when it's made
+                            String feedHost = locator.getHost(DoorbellLocator.ROLE_FEED);
+                            if (feedHost != null && !feedHost.isBlank()) {
+                                FeedHandoff.getInstance().start(context, RtspProbe.uriFor(feedHost));
+                            }
                             startActivity(intent);
                         }
                     });
@@ -200,6 +241,26 @@ public class HomePageButtonsFragment extends Fragment {
                     layout.addView(doorbellButton);
                 }
 
+                // Make and add 'All Feeds' button, showing every doorbell's feed at once
+                if (mDoorbells.length > 0) {
+                    MaterialButton allFeedsButton = ButtonUtils.createDynamicStyledButton(getContext(),
+                            getString(R.string.buttonAllFeedsTitle), buttonWidth, buttonHeight, marginSize);
+
+                    allFeedsButton.setOnClickListener(new View.OnClickListener() {
+                        @OptIn(markerClass = UnstableApi.class)
+                        @Override
+                        public void onClick(View view) {
+                            Intent intent = new Intent(getActivity(), FeedGridActivity.class);
+                            intent.putExtra("doorbells", mDoorbells);
+                            intent.putExtra("piHost_main", locator.getHost(DoorbellLocator.ROLE_MAIN));
+                            intent.putExtra("piHost_feed", locator.getHost(DoorbellLocator.ROLE_FEED));
+                            startActivity(intent);
+                        }
+                    });
+
+                    layout.addView(allFeedsButton);
+                }
+
                 // Make and add 'Add Doorbell' button
                 MaterialButton addBellButton = createAddDoorbellButton(getContext(), buttonWidth, buttonHeight, marginSize);
 
@@ -220,35 +281,36 @@ public class HomePageButtonsFragment extends Fragment {
         });
     }
 
-    private void startSession(String username, String piHost, String password) {
-        if (!piHost.isBlank()) {
-            feedSession = SSHUtils.startSSH(username, piHost, password);
+    // Log in to the Pis and check the feed while the user picks a doorbell, so its page works straight away
+    // Every doorbell is served by the same located Pis, so there's only one set to warm
+    private void prewarmDoorbells() {
+        if (mDoorbells == null || mDoorbells.length == 0) return;
+
+        DoorbellPrewarmer prewarmer = DoorbellPrewarmer.getInstance();
+        // Door controls first, they should work the moment the page opens
+        for (String role : new String[]{DoorbellLocator.ROLE_MAIN, DoorbellLocator.ROLE_FEED}) {
+            if (locator.getState(role) != DoorbellLocator.State.FOUND) continue;
+            PiProfile profile = locator.getProfile(role);
+            prewarmer.warmSession(locator.getHost(role), profile.username, profile.password);
         }
-    }
-
-    private void stopSession() {
-        if (feedSession!=null) {
-            SSHUtils.execSSHCmd("\n", feedSession);
+        // Only once the feed server has been asked to start, before that there's nothing to describe
+        String feedHost = locator.getHost(DoorbellLocator.ROLE_FEED);
+        if (feedServersStarted.contains(feedHost)) {
+            prewarmer.warmFeed(feedHost);
         }
-        SSHUtils.stopSSH(feedSession);
-        feedSession = null;
     }
 
     @Override
-    public void onPause() {
-        super.onPause();
-        stopSession();
-        // Start session for feed
-        String feedHost = doorbells.get("feed").get("piHost");
-        String feedUser = doorbells.get("feed").get("username");
-        String feedPass = doorbells.get("feed").get("password");
-
-        startSession(feedUser, feedHost, feedPass);
+    public void onResume() {
+        super.onResume();
+        // Sessions may have been closed as idle while the user was elsewhere
+        prewarmDoorbells();
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        stopSession();
+        locator.removeListener(locatorListener);
+        doorbellButtons.clear();
     }
 }
\ No newline at end of file
@@ -10,6 +10,10 @@ import android.widget.Button;
 import androidx.fragment.app.Fragment;
 
 import com.example.knockly.R;
+import com.example.knockly.ssh.DoorCommandChannel;
+import com.example.knockly.ssh.LatencyTrace;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A simple {@link Fragment} subclass.
@@ -27,9 +31,11 @@ public class DoorControlFragment extends Fragment {
     private FragmentCallback callback;
 
     // Interface to get functions from main activity
+    // Each completes once the Pi has acknowledged the door moving, or fails if it didn't or a later tap replaced it
+    // The trace is started on the tap, so everything after it is timed
     public interface FragmentCallback{
-        void openDoor();
-        void closeDoor();
+        CompletableFuture<DoorCommandChannel.Ack> openDoor(LatencyTrace trace);
+        CompletableFuture<DoorCommandChannel.Ack> closeDoor(LatencyTrace trace);
     }
 
     public DoorControlFragment() {
@@ -87,19 +93,26 @@ public class DoorControlFragment extends Fragment {
         openButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                callback.openDoor();
+                awaitAck(callback.openDoor(new LatencyTrace(DoorCommandChannel.OPEN)), openButton);
             }
         });
 
         closeButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                callback.closeDoor();
+                awaitAck(callback.closeDoor(new LatencyTrace(DoorCommandChannel.CLOSE)), closeButton);
             }
         });
         return view;
     }
 
+    // The tapped button stays disabled until its command is answered or replaced by the other one,
+    // which stays enabled so the user can change their mind (the activity puts the commands in order)
+    private void awaitAck(CompletableFuture<DoorCommandChannel.Ack> command, Button button) {
+        button.setEnabled(false);
+        command.whenComplete((ack, e) -> button.post(() -> button.setEnabled(true)));
+    }
+
     // Prevent memory leaks by removing callback when fragment is destroyed
     @Override
     public void onDetach(){
@@ -19,20 +19,38 @@ import androidx.core.view.WindowInsetsControllerCompat;
 import androidx.media3.common.util.UnstableApi;
 
 import com.example.knockly.R;
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.concurrent.LifecycleTaskScope;
+import com.example.knockly.discovery.DoorbellHostRegistry;
+import com.example.knockly.discovery.NetworkIdentity;
 import com.example.knockly.network.dto.LinkedUser;
 import com.example.knockly.network.dto.PermissionResponse;
 import com.example.knockly.network.repository.AuthRepository;
 import com.example.knockly.shared.PageHeaderFragment;
+import com.example.knockly.ssh.DoorCommandChannel;
+import com.example.knockly.ssh.DoorCommandDispatcher;
+import com.example.knockly.ssh.DoorLatencyMetrics;
+import com.example.knockly.ssh.LatencyTrace;
+import com.example.knockly.ssh.SshExec;
+import com.example.knockly.ssh.SshSessionPool;
 import com.example.knockly.utils.LoginManager;
 import com.example.knockly.utils.SSHUtils;
 import com.example.knockly.utils.ViewUtils;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
 @UnstableApi
 public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedFragment.FragmentCallback, DoorControlFragment.FragmentCallback {
 
@@ -43,10 +61,16 @@ public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedF
     private Context context;
     private final String username = "admin";
     private final String password = "admin";
-    public static String hostPiFeed = "";
-    private static String hostPiMain = "";
-    private Session sshSession;
+    private String hostPiFeed = "";
+    private String hostPiMain = "";
+    // Open while the page is showing so door commands go straight out, null if the main Pi isn't known
+    private DoorCommandChannel doorChannel;
+    // Background work for this page, cancelled when it closes
+    private final LifecycleTaskScope tasks = new LifecycleTaskScope(this);
+    // Orders and coalesces taps so only one door command is at the Pi at a time
+    private final DoorCommandDispatcher doorCommands = new DoorCommandDispatcher(this::sendDoorCommand);
     private final String commandDir = "Test_facial_rec/phone_commands";
+    private final String logFile = "Test_facial_rec/log.txt";
     private String openCmd = "\nchmod +x open.sh\n./open.sh\n";
     private String closeCmd = "\nchmod +x close.sh\n./close.sh\n";
 
@@ -72,6 +96,12 @@ public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedF
         hostPiFeed = intent.getStringExtra("piHost_feed");
         hostPiMain = intent.getStringExtra("piHost_main");
 
+        // If opened without the addresses (e.g. recreated after process death) use the ones saved for this network
+        DoorbellHostRegistry hostRegistry = DoorbellHostRegistry.getInstance(this);
+        String networkKey = NetworkIdentity.currentKey(this);
+        if (hostPiFeed == null || hostPiFeed.isBlank()) hostPiFeed = hostRegistry.getHost(networkKey, "feed");
+        if (hostPiMain == null || hostPiMain.isBlank()) hostPiMain = hostRegistry.getHost(networkKey, "main");
+
         // Get information about users current permissions from API
         repo.getUserPerms(doorbellID).enqueue(new Callback<PermissionResponse[]>() {
             @Override
@@ -103,7 +133,7 @@ public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedF
         getSupportFragmentManager().beginTransaction().replace(R.id.IndvDoorbellHeaderFragment, pageHeader).commit();
 
         // Add live feed fragment
-        liveFeedFragment = LiveFeedFragment.newInstance(doorbellID);
+        liveFeedFragment = LiveFeedFragment.newInstance(doorbellID, hostPiFeed);
         getSupportFragmentManager().beginTransaction().replace(R.id.LiveFeedContainer, liveFeedFragment).commit();
 
         // Add door control fragment
@@ -112,19 +142,31 @@ public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedF
 
         context = getApplicationContext();
 
+        // Open the door line now, over the pooled session if there is one, so the first door command doesn't wait
         if (!hostPiMain.isBlank()) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    startSession();
-                }
-            }).start();
+            doorChannel = new DoorCommandChannel(hostPiMain, username, password);
+            doorChannel.connect();
         }
     }
 
-    private void startSession() {
-        if (!hostPiMain.isBlank()) {
-            sshSession = SSHUtils.startSSH(username, hostPiMain, password);
+    // Runs the commands on the main Pi in one batch with a pooled session, every exit status is -1 if they couldn't be run
+    private List<SshExec.Result> execOnMainPi(List<String> commands, LatencyTrace trace) {
+        try (SshSessionPool.Lease lease = SshSessionPool.getInstance().lease(hostPiMain, username, password)) {
+            trace.mark(LatencyTrace.SESSION);
+            try {
+                return SshExec.execBatch(lease.getSession(), commands, SshExec.DEFAULT_TIMEOUT_MS, trace).get();
+            } catch (ExecutionException e) {
+                // No channel could be opened, so the pooled session has probably dropped
+                if (e.getCause() instanceof JSchException) lease.invalidate();
+                Log.d("Indv Doorbell Activity", "Error running commands on main Pi: " + e.getCause().getMessage());
+                return SshExec.failedBatch(commands.size());
+            }
+        } catch (JSchException e) {
+            Log.d("Indv Doorbell Activity", "Could not connect to main Pi: " + e.getMessage());
+            return SshExec.failedBatch(commands.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SshExec.failedBatch(commands.size());
         }
     }
 
@@ -194,53 +236,97 @@ public class IndvDoorbellActivity extends AppCompatActivity implements LiveFeedF
         controller.show(WindowInsetsCompat.Type.statusBars());
     }
 
-    private int returnStatus = -1;
+    @Override
+    public CompletableFuture<DoorCommandChannel.Ack> openDoor(LatencyTrace trace) {
+        return doorCommands.submit(DoorCommandChannel.OPEN, trace);
+    }
 
     @Override
-    public void openDoor() {
-        if (sshSession != null) {
-            new Thread(() -> {
-                String command = "\ncd "+commandDir+"\n"+openCmd+"\n";
-                returnStatus = SSHUtils.execSSHCmd(command, sshSession);
-
-                runOnUiThread(() -> {
-                    // If door opened successfully then change door status button to open
-                    if (returnStatus == 200){
-                        liveFeedFragment.setToggleButtonOn();
-                        Toast.makeText(context, "Door opened successfully!", Toast.LENGTH_SHORT).show();
-                    }
-                    // If error occurred
-                    else{
-                        Toast.makeText(context, "Error opening door, please try again", Toast.LENGTH_SHORT).show();
-                    }
-
-                    returnStatus = -1;
+    public CompletableFuture<DoorCommandChannel.Ack> closeDoor(LatencyTrace trace) {
+        return doorCommands.submit(DoorCommandChannel.CLOSE, trace);
+    }
+
+    // Called by the dispatcher once per command it sends, so coalesced taps only show one result
+    private CompletableFuture<DoorCommandChannel.Ack> sendDoorCommand(String command, LatencyTrace trace) {
+        if (DoorCommandChannel.OPEN.equals(command)) return sendDoorCommand(command, trace, openCmd, (ack, e) -> {
+            // If the Pi confirmed the door opened then change door status button to open
+            if (ack != null){
+                liveFeedFragment.setToggleButtonOn();
+                Toast.makeText(context, "Door opened successfully!", Toast.LENGTH_SHORT).show();
+            }
+            // If error occurred
+            else{
+                Toast.makeText(context, "Error opening door, please try again", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        return sendDoorCommand(command, trace, closeCmd, (ack, e) -> {
+            // If the Pi confirmed the door closed then change door status button to closed
+            if (ack != null){
+                liveFeedFragment.setToggleButtonOff();
+                Toast.makeText(context, "Door closed successfully!", Toast.LENGTH_SHORT).show();
+            }
+            // If error occurred
+            else{
+                Toast.makeText(context, "Error closing door, please try again", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * Sends the command down the door channel, completing once the Pi says the door has moved.
+     * Pis without the command server get the old script instead, which only reports its exit status.
+     * Each stage from the tap to the UI update is timed into {@link DoorLatencyMetrics}, a command that
+     * waited behind another is timed from its tap, so the wait is counted too.
+     * @param trace started by the tap in {@link DoorControlFragment}
+     * @param onResult run on the main thread with the ack, or the error if the door didn't move
+     */
+    private CompletableFuture<DoorCommandChannel.Ack> sendDoorCommand(String command, LatencyTrace trace, String script,
+            BiConsumer<DoorCommandChannel.Ack, Throwable> onResult) {
+        CompletableFuture<DoorCommandChannel.Ack> result;
+        if (doorChannel == null) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalStateException("Main Pi has not been found"));
+        } else {
+            result = doorChannel.send(command, trace).handle((ack, e) -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                if (ack != null || !(cause instanceof JSchException)) return completed(ack, cause);
+
+                Log.d("Indv Doorbell Activity", "No command channel, running " + command + " script: " + cause.getMessage());
+                trace.setTransport(LatencyTrace.TRANSPORT_SCRIPT);
+                return tasks.supply(AppExecutors.getInstance().ssh(), AppExecutor.Priority.HIGH, () -> {
+                    // The log's last line comes back in the same round trip, as the ack's detail
+                    List<SshExec.Result> results = execOnMainPi(Arrays.asList("cd "+commandDir+"\n"+script, "tail -n 1 "+logFile), trace);
+                    int status = results.get(0).exitStatus;
+                    if (status != 0) throw new IOException(command + " script exited with " + status);
+                    String detail = results.get(1).isSuccess() ? results.get(1).stdout.trim() : "script";
+                    Log.d("Indv Doorbell Activity", command + " script ran, Pi log: " + detail);
+                    return new DoorCommandChannel.Ack(-1, command, detail, trace.elapsedMs(LatencyTrace.RESULT));
                 });
-            }).start();
+            }).thenCompose(future -> future);
         }
+
+        // Stops waiting for the Pi if the page closes, the door still gets the command
+        return tasks.track(result).whenComplete((ack, e) -> runOnUiThread(() -> {
+            if (tasks.isCancelled()) return;
+            onResult.accept(ack, e);
+            trace.mark(LatencyTrace.UI);
+            // Failed commands would skew the timings, they are only logged
+            if (ack != null) DoorLatencyMetrics.record(trace);
+            else Log.d("Indv Doorbell Activity", command + " failed after " + trace.elapsedMs(LatencyTrace.UI) + " ms");
+        }));
+    }
+
+    private static CompletableFuture<DoorCommandChannel.Ack> completed(DoorCommandChannel.Ack ack, Throwable error) {
+        CompletableFuture<DoorCommandChannel.Ack> future = new CompletableFuture<>();
+        if (error == null) future.complete(ack);
+        else future.completeExceptionally(error);
+        return future;
     }
 
     @Override
-    public void closeDoor() {
-        if (sshSession != null) {
-            new Thread(() -> {
-                String command = "\ncd "+commandDir+"\n"+closeCmd+"\n";
-                returnStatus = SSHUtils.execSSHCmd(command, sshSession);
-
-                runOnUiThread(() -> {
-                    // If door opened successfully then change door status button to open
-                    if (returnStatus == 200){
-                        liveFeedFragment.setToggleButtonOff();
-                        Toast.makeText(context, "Door closed successfully!", Toast.LENGTH_SHORT).show();
-                    }
-                    // If error occurred
-                    else{
-                        Toast.makeText(context, "Error closing door, please try again", Toast.LENGTH_SHORT).show();
-                    }
-
-                    returnStatus = -1;
-                });
-            }).start();
-        }
+    protected void onDestroy() {
+        super.onDestroy();
+        if (doorChannel != null) doorChannel.close();
     }
-}
\ No newline at end of file
+}
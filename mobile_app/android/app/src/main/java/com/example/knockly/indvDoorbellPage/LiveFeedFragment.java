@@ -1,11 +1,12 @@
 package com.example.knockly.indvDoorbellPage;
 
-import static com.example.knockly.indvDoorbellPage.IndvDoorbellActivity.hostPiFeed;
-
 import android.content.Context;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,21 +17,27 @@ import android.widget.ToggleButton;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
-import androidx.media3.common.MediaItem;
+import androidx.media3.common.C;
 import androidx.media3.common.Player;
 import androidx.media3.common.util.UnstableApi;
-import androidx.media3.exoplayer.DefaultLoadControl;
-import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.ExoPlayer;
-import androidx.media3.exoplayer.SeekParameters;
-import androidx.media3.exoplayer.rtsp.RtspMediaSource;
 import androidx.media3.ui.PlayerView;
 
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import com.example.knockly.R;
-
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.feed.FeedHandoff;
+import com.example.knockly.feed.FeedMetricsLog;
+import com.example.knockly.feed.FeedPlayerPool;
+import com.example.knockly.feed.FeedTelemetry;
+import com.example.knockly.feed.LiveLatencyController;
+import com.example.knockly.feed.PlayerPool;
+import com.example.knockly.feed.RtspProbe;
+
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -45,27 +52,29 @@ public class LiveFeedFragment extends Fragment {
 
     // the fragment initialization parameters for doorbellID
     private static final String ARG_DOORBELL_ID = "000000";
+    private static final String ARG_FEED_HOST = "feed_host";
 
     private String mDoorbellID;
+    private String hostPiFeed = "";
     private final long initialTime = System.currentTimeMillis() - 3000;
     private boolean liveFeedExpanded = false;
     private FragmentCallback callback;
-    private final DefaultLoadControl loadControl = new DefaultLoadControl.Builder()
-            .setBufferDurationsMs(
-                    250,   // minBufferMs
-                    500,   // maxBufferMs
-                    50,    // bufferForPlaybackMs
-                    50     // bufferForPlaybackAfterRebufferMs
-            )
-            .build();
-    private RtspMediaSource mediaSourceFactory;
-    private MediaItem mediaItem;
+    // Players are leased from the app's pool and given back when done, rather than built and released here
+    private PlayerPool<ExoPlayer>.Lease lease;
+    private PlayerPool<ExoPlayer>.Lease nextLease;
     private ExoPlayer exoPlayer;
     private ExoPlayer nextPlayer;
     private PlayerView playerView;
     private PlayerView playerView2;
     private boolean isPlayer1Active = true;
     private final Handler reconnectHandler = new Handler(Looper.getMainLooper());
+    // Measures how far behind live the feed is, the player is only rebuilt when it says so
+    private final LiveLatencyController latencyController = new LiveLatencyController();
+    // What each player did, written to the feed metrics file when it's released
+    private FeedTelemetry telemetry;
+    private FeedTelemetry nextTelemetry;
+    private String rebuildReason;
+    private TextView telemetryText;
 
     private EditText editTextDate;
     private final Handler timestampHandler = new Handler(Looper.getMainLooper());
@@ -92,12 +101,14 @@ public class LiveFeedFragment extends Fragment {
      * this fragment using the provided parameters.
      *
      * @param doorbellID Parameter 1.
+     * @param feedHost Address of the Pi serving the live feed, blank if it wasn't found
      * @return A new instance of fragment LiveFeedFragment.
      */
-    public static LiveFeedFragment newInstance(String doorbellID) {
+    public static LiveFeedFragment newInstance(String doorbellID, String feedHost) {
         LiveFeedFragment fragment = new LiveFeedFragment();
         Bundle args = new Bundle();
         args.putString(ARG_DOORBELL_ID, doorbellID);
+        args.putString(ARG_FEED_HOST, feedHost);
         fragment.setArguments(args);
         return fragment;
     }
@@ -122,6 +133,7 @@ public class LiveFeedFragment extends Fragment {
         super.onCreate(savedInstanceState);
         if (getArguments() != null) {
             mDoorbellID = getArguments().getString(ARG_DOORBELL_ID);
+            hostPiFeed = getArguments().getString(ARG_FEED_HOST, "");
         }
     }
 
@@ -139,6 +151,7 @@ public class LiveFeedFragment extends Fragment {
         editTextDate = view.findViewById(R.id.editTextDate);
         TextView noInputText = view.findViewById(R.id.noInputText);
         TextView liveText = view.findViewById(R.id.textView);
+        telemetryText = view.findViewById(R.id.feedTelemetryText);
 
         SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM dd HH:mm:ss z", Locale.getDefault());
         editTextDate.setText(sdf.format(new Date(initialTime)));
@@ -148,11 +161,18 @@ public class LiveFeedFragment extends Fragment {
             playerView.setVisibility(View.VISIBLE);
             playerView2.setVisibility(View.INVISIBLE);
             liveText.setVisibility(View.VISIBLE);
-            String rtspUri = "rtsp://" + hostPiFeed + ":8554/doorbell";
+            String rtspUri = RtspProbe.uriFor(hostPiFeed);
 
             initializePlayer(rtspUri);
             timestampHandler.post(updateTimestampRunnable);
-            scheduleReconnect(rtspUri);
+            monitorLatency(rtspUri);
+
+            // Debug overlay of the player's numbers
+            liveText.setOnLongClickListener(v -> {
+                FeedTelemetry.showOverlay = !FeedTelemetry.showOverlay;
+                updateTelemetryOverlay();
+                return true;
+            });
         } else {
             noInputText.setVisibility(View.VISIBLE);  // Show the message
             playerView.setVisibility(View.GONE);
@@ -175,97 +195,92 @@ public class LiveFeedFragment extends Fragment {
         return view;
     }
 
-    private void scheduleReconnect(String streamUrl) {
-        long RECONNECT_INTERVAL_MS = 45000;
-
+    // Samples the player, speeding it up to catch up small drift and rebuilding it only on a stall or large drift
+    private void monitorLatency(String streamUrl) {
         reconnectHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                if (!isDetached() && !isRemoving()) {
-                    reconnectStream(streamUrl);  // on main thread
-                    reconnectHandler.postDelayed(this, RECONNECT_INTERVAL_MS);
+                if (isDetached() || isRemoving()) return;
+                if (exoPlayer != null) {
+                    long liveOffsetMs = exoPlayer.getCurrentLiveOffset();
+                    LiveLatencyController.Decision decision = latencyController.onSample(SystemClock.elapsedRealtime(),
+                            exoPlayer.getCurrentPosition(), exoPlayer.getTotalBufferedDuration(),
+                            liveOffsetMs == C.TIME_UNSET ? -1 : liveOffsetMs,
+                            exoPlayer.getPlayWhenReady(), exoPlayer.getPlayerError() != null);
+
+                    if (telemetry != null) {
+                        telemetry.onLatencySample(latencyController.getLiveOffsetMs(),
+                                latencyController.getBufferedMs(), latencyController.getSpeed());
+                    }
+
+                    if (decision.rebuild) {
+                        Log.d("Live Feed Fragment", "Rebuilding player, " + decision.reason);
+                        rebuildReason = decision.reason;
+                        // Replaces a rebuild still under way, the controller leaves time for one to finish
+                        reconnectStream(streamUrl);  // on main thread
+                    } else if (exoPlayer.getPlaybackParameters().speed != decision.speed) {
+                        exoPlayer.setPlaybackSpeed(decision.speed);
+                    }
+                } else {
+                    // Every pooled player was in use when the page opened, try again
+                    initializePlayer(streamUrl);
                 }
+                updateTelemetryOverlay();
+                reconnectHandler.postDelayed(this, LiveLatencyController.SAMPLE_INTERVAL_MS);
             }
-        }, RECONNECT_INTERVAL_MS);
+        }, LiveLatencyController.SAMPLE_INTERVAL_MS);
     }
 
-    @OptIn(markerClass = UnstableApi.class)
     private void initializePlayer(String streamUrl) {
-
-        exoPlayer = new ExoPlayer.Builder(requireContext())
-                .setLoadControl(loadControl)
-                .setRenderersFactory(new DefaultRenderersFactory(requireContext())
-                        .setEnableDecoderFallback(true) // safer fallback
-                        .setExtensionRendererMode(DefaultRenderersFactory.EXTENSION_RENDERER_MODE_PREFER))
-                .build();
+        // Started from the home page tap, it may already be buffering
+        FeedHandoff.Handoff handoff = FeedHandoff.getInstance().take(streamUrl);
+        if (handoff != null) {
+            lease = handoff.lease;
+            telemetry = handoff.telemetry;
+        } else {
+            lease = FeedPlayerPool.getInstance(requireContext()).acquire(streamUrl, false);
+            if (lease == null) return;
+            telemetry = attachTelemetry(lease);
+        }
+        exoPlayer = lease.getPlayer();
 
         playerView.setPlayer(exoPlayer);
 
         playerView.setUseController(false);
-
-        mediaSourceFactory = new RtspMediaSource.Factory()
-                .setForceUseRtpTcp(true)
-                .createMediaSource(MediaItem.fromUri(streamUrl));
-        exoPlayer.setMediaSource(mediaSourceFactory);
-
-        mediaItem = new MediaItem.Builder()
-                .setUri(streamUrl)
-                .setLiveConfiguration(
-                        new MediaItem.LiveConfiguration.Builder()
-                                .setTargetOffsetMs(40)
-                                .build()
-                )
-                .build();
-        exoPlayer.setMediaItem(mediaItem);
-
-        exoPlayer.prepare();
-        exoPlayer.setSeekParameters(SeekParameters.CLOSEST_SYNC);
-        exoPlayer.setPlayWhenReady(true);
     }
 
-    @OptIn(markerClass = UnstableApi.class)
     private void reconnectStream(String streamUrl) {
-        if (nextPlayer != null) {
-            nextPlayer.release();
+        FeedPlayerPool pool = FeedPlayerPool.getInstance(requireContext());
+        if (nextLease != null) {
+            finishTelemetry(nextTelemetry, "replaced before ready");
+            pool.close(nextLease, false);
+            nextLease = null;
             nextPlayer = null;
         }
 
-        nextPlayer = new ExoPlayer.Builder(requireContext())
-                .setLoadControl(loadControl)
-                .setRenderersFactory(new DefaultRenderersFactory(requireContext())
-                        .setEnableDecoderFallback(true) // safer fallback
-                        .setExtensionRendererMode(DefaultRenderersFactory.EXTENSION_RENDERER_MODE_PREFER))
-                .build();
-
-        mediaSourceFactory = new RtspMediaSource.Factory()
-                .setForceUseRtpTcp(true)
-                .createMediaSource(MediaItem.fromUri(streamUrl));
-        nextPlayer.setMediaSource(mediaSourceFactory);
-
-        mediaItem = new MediaItem.Builder()
-                .setUri(streamUrl)
-                .setLiveConfiguration(
-                        new MediaItem.LiveConfiguration.Builder()
-                                .setTargetOffsetMs(55)
-                                .build()
-                )
-                .build();
-        nextPlayer.setMediaItem(mediaItem);
-
-        nextPlayer.prepare();
-        nextPlayer.setSeekParameters(SeekParameters.CLOSEST_SYNC);
-
-        nextPlayer.addListener(new Player.Listener() {
+        // A new RTSP session even if a pooled player is still playing the stream
+        nextLease = pool.acquire(streamUrl, true);
+        if (nextLease == null) return;  // every player is in use, the latency controller will ask again
+        final ExoPlayer player = nextLease.getPlayer();
+        nextPlayer = player;
+        nextTelemetry = attachTelemetry(nextLease);
+
+        Player.Listener listener = new Player.Listener() {
             @Override
             public void onPlaybackStateChanged(int state) {
                 if (state == Player.STATE_READY) {
                     swapPlayers();
                 }
             }
-        });
+        };
+        player.addListener(listener);
+        nextLease.onClose(() -> player.removeListener(listener));
     }
 
     private void swapPlayers() {
+        // The player already took over, this is it becoming ready again after buffering
+        if (nextPlayer == null) return;
+
         PlayerView activeView = isPlayer1Active ? playerView : playerView2;
         PlayerView nextView = isPlayer1Active ? playerView2 : playerView;
 
@@ -278,14 +293,45 @@ public class LiveFeedFragment extends Fragment {
             nextView.animate().alpha(1f).setDuration(50).start();
             activeView.animate().alpha(0f).setDuration(50).withEndAction(() -> {
                 activeView.setVisibility(View.GONE);
-                if (exoPlayer != null) exoPlayer.release();
+                activeView.setPlayer(null);
+                finishTelemetry(telemetry, "rebuilt, " + rebuildReason);
+                // Its stream had stalled or drifted, so it's stopped rather than kept warm
+                if (lease != null) FeedPlayerPool.getInstance(activeView.getContext()).close(lease, false);
+                lease = nextLease;
                 exoPlayer = nextPlayer;
+                telemetry = nextTelemetry;
+                nextLease = null;
                 nextPlayer = null;
+                nextTelemetry = null;
                 isPlayer1Active = !isPlayer1Active;
+                latencyController.reset();
             }).start();
         }
     }
 
+    private FeedTelemetry attachTelemetry(PlayerPool<ExoPlayer>.Lease playerLease) {
+        return FeedPlayerPool.attachTelemetry(playerLease, SystemClock.elapsedRealtime(),
+                playerLease.getSource().name().toLowerCase(Locale.ROOT));
+    }
+
+    // Writes the player's row to the feed metrics file in the background
+    private void finishTelemetry(FeedTelemetry playerTelemetry, String ended) {
+        Context context = getContext();
+        if (playerTelemetry == null || context == null) return;
+        String row = playerTelemetry.csvRow(SystemClock.elapsedRealtime(), Build.MANUFACTURER + " " + Build.MODEL, ended);
+        File dir = context.getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : context.getFilesDir(), FeedMetricsLog.FILE_NAME);
+        AppExecutors.getInstance().media().execute(AppExecutor.Priority.LOW, () -> FeedMetricsLog.append(file, row));
+    }
+
+    private void updateTelemetryOverlay() {
+        if (telemetryText == null) return;
+        telemetryText.setVisibility(FeedTelemetry.showOverlay && telemetry != null ? View.VISIBLE : View.GONE);
+        if (FeedTelemetry.showOverlay && telemetry != null) {
+            telemetryText.setText(telemetry.overlayText(SystemClock.elapsedRealtime()));
+        }
+    }
+
     private void updateEditTextDate() {
         if (exoPlayer != null && exoPlayer.isPlaying()) {
             long offset = 3000;
@@ -330,8 +376,21 @@ public class LiveFeedFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         reconnectHandler.removeCallbacksAndMessages(null);
-        if (exoPlayer != null) exoPlayer.release();
-        if (nextPlayer != null) nextPlayer.release();
+        finishTelemetry(telemetry, "closed");
+        finishTelemetry(nextTelemetry, "closed before ready");
+        telemetry = null;
+        nextTelemetry = null;
+
+        // Kept playing for a while in case the page comes back, unless it had failed
+        playerView.setPlayer(null);
+        playerView2.setPlayer(null);
+        FeedPlayerPool pool = FeedPlayerPool.getInstance(requireContext());
+        if (lease != null) pool.close(lease, exoPlayer.getPlayerError() == null);
+        if (nextLease != null) pool.close(nextLease, false);
+        lease = null;
+        nextLease = null;
+        exoPlayer = null;
+        nextPlayer = null;
         timestampHandler.removeCallbacks(updateTimestampRunnable);
     }
 }
\ No newline at end of file
@@ -0,0 +1,282 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.concurrent.BoundedExecutor;
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.JSchException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long lived line to the door on the main Pi, kept open while a doorbell page is showing.
+ * Commands go through the pooled SSH session to the command server in auto_processing.py,
+ * which only listens on the Pi's loopback (see edge_device/Python), so they are logged in and
+ * encrypted by SSH without opening another port on the Pi.
+ * Each command carries an ID and the Pi answers once the Arduino reports the door has moved.
+ *
+ * One line per message: "ID COMMAND" from the app, "ID ack DETAIL" or "ID err REASON" back.
+ */
+public class DoorCommandChannel {
+    private static final String TAG = "DoorCommandChannel";
+
+    public static final String OPEN = "open";
+    public static final String CLOSE = "close";
+
+    // Must match COMMAND_PORT in auto_processing.py
+    public static final int DEFAULT_PORT = 5050;
+    static final long DEFAULT_ACK_TIMEOUT_MS = 8000;
+    private static final int CHANNEL_CONNECT_TIMEOUT_MS = 5000;
+
+    /** The Pi's answer to a command once the door has moved. */
+    public static final class Ack {
+        public final long id;
+        public final String command;
+        public final String detail;
+        // From the command being sent (the tap) to the answer arriving
+        public final long latencyMs;
+
+        public Ack(long id, String command, String detail, long latencyMs) {
+            this.id = id;
+            this.command = command;
+            this.detail = detail;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    /** The Pi received the command but couldn't carry it out. */
+    public static class CommandFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CommandFailedException(String message) {
+            super(message);
+        }
+    }
+
+    // A command waiting for its answer
+    private static class Pending {
+        final String command;
+        final long sentNanos;
+        final LatencyTrace trace;
+        final CompletableFuture<Ack> result;
+        // Line the command went down, set once it has been written
+        volatile ChannelDirectTCPIP sentOn;
+
+        Pending(String command, long sentNanos, LatencyTrace trace, CompletableFuture<Ack> result) {
+            this.command = command;
+            this.sentNanos = sentNanos;
+            this.trace = trace;
+            this.result = result;
+        }
+    }
+
+    private final SshSessionPool pool;
+    private final String host;
+    private final String username;
+    private final String password;
+    private final int port;
+    private final long ackTimeoutMs;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // Connects and writes in order, so commands reach the Pi in the order they were tapped
+    private final BoundedExecutor writer = BoundedExecutor.serial(AppExecutors.getInstance().ssh(), AppExecutor.Priority.HIGH);
+
+    // Only touched on the writer thread
+    private SshSessionPool.Lease lease;
+    private ChannelDirectTCPIP channel;
+    private OutputStream out;
+
+    public DoorCommandChannel(String host, String username, String password) {
+        this(SshSessionPool.getInstance(), host, username, password, DEFAULT_PORT, DEFAULT_ACK_TIMEOUT_MS);
+    }
+
+    DoorCommandChannel(SshSessionPool pool, String host, String username, String password,
+                       int port, long ackTimeoutMs) {
+        this.pool = pool;
+        this.host = host;
+        this.username = username;
+        this.password = password;
+        this.port = port;
+        this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    // Opens the line in the background so the first command doesn't have to wait for it
+    public void connect() {
+        writer.execute(() -> {
+            try {
+                ensureConnected(null);
+            } catch (Exception e) {
+                Log.d(TAG, "connect() :: could not open command channel to " + host + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sends the command straight away over the open line.
+     * @return future holding the Pi's answer, fails with a {@link JSchException} if the line
+     *         couldn't be opened (e.g. the Pi isn't running the command server), a
+     *         {@link CommandFailedException} if the Pi refused it, or a {@link TimeoutException} if
+     *         there's no answer within the ack timeout of the command being written (logging in and
+     *         opening the line have their own limits)
+     */
+    public CompletableFuture<Ack> send(String command) {
+        return send(command, new LatencyTrace(command));
+    }
+
+    // As above, marking each stage the command passes on the trace
+    public CompletableFuture<Ack> send(String command, LatencyTrace trace) {
+        final long sentNanos = System.nanoTime();
+        final long id = nextId.incrementAndGet();
+        final CompletableFuture<Ack> result = new CompletableFuture<>();
+        final Pending waiting = new Pending(command, sentNanos, trace, result);
+        pending.put(id, waiting);
+        result.whenComplete((ack, e) -> pending.remove(id));
+
+        try {
+            writer.execute(() -> {
+                try {
+                    ensureConnected(trace);
+                    waiting.sentOn = channel;
+                    out.write((id + " " + command + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    trace.mark(LatencyTrace.SENT);
+
+                    // Only the actuator is timed, a cold login isn't the door failing to move
+                    ScheduledFuture<?> timeout = AppExecutors.getInstance().scheduler().schedule(() -> result.completeExceptionally(
+                            new TimeoutException("No answer to " + command + " after " + ackTimeoutMs + " ms")),
+                            ackTimeoutMs, TimeUnit.MILLISECONDS);
+                    result.whenComplete((ack, e) -> timeout.cancel(false));
+                } catch (Exception e) {
+                    disconnect();
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Command channel is closed"));
+        }
+        return result;
+    }
+
+    // Closes the line, the SSH session itself stays in the pool
+    public synchronized void close() {
+        if (writer.isShutdown()) return;
+        writer.execute(this::disconnect);
+        writer.shutdown();
+    }
+
+    // Called on the writer thread, trace may be null when opening ahead of a command
+    private void ensureConnected(LatencyTrace trace) throws JSchException, IOException {
+        if (channel != null && channel.isConnected()) {
+            // Already open, so nothing to wait for
+            if (trace != null) {
+                trace.mark(LatencyTrace.SESSION);
+                trace.mark(LatencyTrace.CHANNEL);
+            }
+            return;
+        }
+        disconnect();
+
+        SshSessionPool.Lease newLease = pool.lease(host, username, password);
+        if (trace != null) trace.mark(LatencyTrace.SESSION);
+        try {
+            ChannelDirectTCPIP newChannel = (ChannelDirectTCPIP) newLease.getSession().openChannel("direct-tcpip");
+            newChannel.setHost("127.0.0.1");
+            newChannel.setPort(port);
+            InputStream in = newChannel.getInputStream();
+            OutputStream newOut = newChannel.getOutputStream();
+            newChannel.connect(CHANNEL_CONNECT_TIMEOUT_MS);
+            if (trace != null) trace.mark(LatencyTrace.CHANNEL);
+
+            lease = newLease;
+            channel = newChannel;
+            out = newOut;
+            Log.d(TAG, "ensureConnected() :: command channel to " + host + " open");
+
+            // Blocks for as long as the line is open
+            AppExecutors.getInstance().ssh().execute(AppExecutor.Priority.HIGH, () -> readAnswers(newChannel, in));
+        } catch (JSchException | IOException e) {
+            // A dropped session can't open channels, let the pool log in again
+            if (!newLease.getSession().isConnected()) newLease.invalidate();
+            newLease.close();
+            throw e;
+        }
+    }
+
+    // Called on the writer thread
+    private void disconnect() {
+        if (channel != null) {
+            channel.disconnect();
+            channel = null;
+            out = null;
+        }
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        }
+    }
+
+    // Matches each answer to its command until the line closes
+    private void readAnswers(ChannelDirectTCPIP from, InputStream in) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                handleAnswer(line);
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "readAnswers() :: " + e.getMessage());
+        }
+
+        Log.d(TAG, "readAnswers() :: command channel to " + host + " closed");
+        try {
+            writer.execute(() -> {
+                if (channel == from) disconnect();
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Already closed
+        }
+        // Commands sent down the line that just closed won't be answered now
+        for (Pending waiting : pending.values()) {
+            if (waiting.sentOn != from) continue;
+            waiting.result.completeExceptionally(new IOException("Command channel closed before " + waiting.command + " was answered"));
+        }
+    }
+
+    private void handleAnswer(String line) {
+        String[] parts = line.trim().split(" ", 3);
+        if (parts.length < 2) return;
+
+        Pending waiting;
+        try {
+            waiting = pending.get(Long.parseLong(parts[0]));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (waiting == null) return;
+
+        long id = Long.parseLong(parts[0]);
+        String detail = parts.length > 2 ? parts[2] : "";
+        waiting.trace.mark(LatencyTrace.RESULT);
+        if ("ack".equals(parts[1])) {
+            long latencyMs = (System.nanoTime() - waiting.sentNanos) / 1_000_000;
+            Log.d(TAG, "handleAnswer() :: " + waiting.command + " acknowledged after " + latencyMs + " ms");
+            waiting.result.complete(new Ack(id, waiting.command, detail, latencyMs));
+        } else {
+            waiting.result.completeExceptionally(new CommandFailedException(detail));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * Sends one doorbell's door commands one at a time, so rapid taps can't race each other.
+ * A command tapped again while it is waiting or being carried out shares that command's result
+ * instead of going to the Pi twice. A command still waiting when the other one is tapped is dropped,
+ * as the door should end up where the last tap said. Every accepted command gets exactly one result.
+ * Each command carries the trace started by its tap, so time spent waiting behind another command is timed too.
+ */
+public class DoorCommandDispatcher {
+    private static final String TAG = "DoorCommandDispatcher";
+
+    /** The command was dropped before being sent, because a later tap asked for something else. */
+    public static class SupersededException extends CancellationException {
+        private static final long serialVersionUID = 1L;
+
+        public SupersededException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Command {
+        final String name;
+        final LatencyTrace trace;
+        final CompletableFuture<DoorCommandChannel.Ack> result = new CompletableFuture<>();
+
+        Command(String name, LatencyTrace trace) {
+            this.name = name;
+            this.trace = trace;
+        }
+    }
+
+    private final BiFunction<String, LatencyTrace, CompletableFuture<DoorCommandChannel.Ack>> sender;
+
+    // At most one command at the Pi and one waiting behind it
+    private Command inFlight;
+    private Command queued;
+
+    /**
+     * @param sender sends a command with its tap's trace and returns a future that completes once the
+     *               door has moved, it is never called again until that future has completed
+     */
+    public DoorCommandDispatcher(BiFunction<String, LatencyTrace, CompletableFuture<DoorCommandChannel.Ack>> sender) {
+        this.sender = sender;
+    }
+
+    public CompletableFuture<DoorCommandChannel.Ack> submit(String name) {
+        return submit(name, new LatencyTrace(name));
+    }
+
+    /**
+     * @param trace started when the button was tapped, a tap coalesced into an earlier one keeps the earlier trace
+     * @return future holding the command's result, the same future for taps that were coalesced,
+     *         or failing with a {@link SupersededException} if a later tap replaced the command
+     */
+    public synchronized CompletableFuture<DoorCommandChannel.Ack> submit(String name, LatencyTrace trace) {
+        if (queued != null) {
+            if (queued.name.equals(name)) return queued.result;
+
+            Log.d(TAG, "submit() :: " + queued.name + " superseded by " + name);
+            queued.result.completeExceptionally(new SupersededException(queued.name + " superseded by " + name));
+            queued = null;
+        }
+
+        if (inFlight != null) {
+            if (inFlight.name.equals(name)) return inFlight.result;
+            queued = new Command(name, trace);
+            return queued.result;
+        }
+
+        Command command = new Command(name, trace);
+        send(command);
+        return command.result;
+    }
+
+    // Called with this locked
+    private void send(Command command) {
+        inFlight = command;
+        CompletableFuture<DoorCommandChannel.Ack> sent;
+        try {
+            sent = sender.apply(command.name, command.trace);
+        } catch (RuntimeException e) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(e);
+        }
+        sent.whenComplete((ack, e) -> finished(command, ack, e));
+    }
+
+    private void finished(Command command, DoorCommandChannel.Ack ack, Throwable error) {
+        synchronized (this) {
+            if (inFlight == command) {
+                inFlight = null;
+                if (queued != null) {
+                    Command next = queued;
+                    queued = null;
+                    send(next);
+                }
+            }
+        }
+        // Completed outside the lock, so callbacks that tap again don't run inside it
+        if (error == null) command.result.complete(ack);
+        else command.result.completeExceptionally(error);
+    }
+}
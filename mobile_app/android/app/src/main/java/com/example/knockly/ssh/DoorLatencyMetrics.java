@@ -0,0 +1,66 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for door commands, for the lifetime of the app process.
+ * Each (transport, stage) pair has its own histogram of the time from the tap to that stage,
+ * so regressions can be pinned to a stage and transports can be compared.
+ * Only commands that moved the door are recorded.
+ */
+public class DoorLatencyMetrics {
+    private static final String TAG = "DoorLatencyMetrics";
+
+    public static final String EXPORT_FILE_NAME = "door_latency.csv";
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public static void record(LatencyTrace trace) {
+        StringBuilder summary = new StringBuilder(trace.getCommand() + " via " + trace.getTransport() + ":");
+        for (String stage : LatencyTrace.STAGES) {
+            if (stage.equals(LatencyTrace.TAP)) continue;
+            long elapsedMs = trace.elapsedMs(stage);
+            if (elapsedMs < 0) continue;
+            getHistogram(trace.getTransport(), stage).record(elapsedMs);
+            summary.append(' ').append(stage).append(' ').append(elapsedMs).append(" ms,");
+        }
+        Log.d(TAG, summary.substring(0, summary.length() - 1));
+    }
+
+    // Histogram of time from the tap to the stage for commands sent over the transport
+    public static LatencyHistogram getHistogram(String transport, String stage) {
+        return histograms.computeIfAbsent(transport + "/" + stage, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Writes every histogram to the file as CSV, one row per transport and stage.
+     * Columns: transport, stage, count, p50, p95, p99 and max, all in ms from the tap.
+     */
+    public static void export(File file) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write("transport,stage,count,p50_ms,p95_ms,p99_ms,max_ms\n");
+            for (String transport : new String[]{LatencyTrace.TRANSPORT_CHANNEL, LatencyTrace.TRANSPORT_SCRIPT}) {
+                for (String stage : LatencyTrace.STAGES) {
+                    LatencyHistogram histogram = histograms.get(transport + "/" + stage);
+                    if (histogram == null || histogram.getCount() == 0) continue;
+                    out.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d\n", transport, stage,
+                            histogram.getCount(), histogram.getPercentile(50), histogram.getPercentile(95),
+                            histogram.getPercentile(99), histogram.getMax()));
+                }
+            }
+        }
+        Log.d(TAG, "export() :: door latency written to " + file.getAbsolutePath());
+    }
+
+    public static void reset() {
+        histograms.clear();
+    }
+}
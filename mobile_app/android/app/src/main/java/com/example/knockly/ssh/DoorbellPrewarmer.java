@@ -0,0 +1,92 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.concurrent.BoundedExecutor;
+import com.example.knockly.feed.RtspProbe;
+import com.jcraft.jsch.JSchException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gets the Pis ready while the user is still on the home page, so a doorbell's page works the moment it opens.
+ * Sessions are logged in to the {@link SshSessionPool} ahead of time and the feed is sent a DESCRIBE.
+ * Work runs in the order asked for, at most {@link #MAX_CONCURRENT_WARMS} at once and behind anything
+ * the user is waiting on, and each target is only warmed once per {@link #MIN_REWARM_INTERVAL_MS}.
+ */
+public class DoorbellPrewarmer {
+    private static final String TAG = "DoorbellPrewarmer";
+
+    static final int MAX_CONCURRENT_WARMS = 2;
+    // Warmed sessions stay in the pool for minutes, so there's no need to warm them more often
+    static final long MIN_REWARM_INTERVAL_MS = 30000;
+    static final int RTSP_TIMEOUT_MS = 2000;
+
+    // Set to false to only warm the SSH sessions
+    public static boolean warmFeed = true;
+
+    private static DoorbellPrewarmer instance;
+
+    private final SshSessionPool pool;
+    private final int rtspPort;
+    private final BoundedExecutor warmers = new BoundedExecutor(AppExecutors.getInstance().ssh(),
+            AppExecutor.Priority.LOW, MAX_CONCURRENT_WARMS);
+    // When each target was last asked for, so repeated calls while the home page updates are ignored
+    private final Map<String, Long> lastWarmedMs = new ConcurrentHashMap<>();
+
+    DoorbellPrewarmer(SshSessionPool pool, int rtspPort) {
+        this.pool = pool;
+        this.rtspPort = rtspPort;
+    }
+
+    public static synchronized DoorbellPrewarmer getInstance() {
+        if (instance == null) {
+            instance = new DoorbellPrewarmer(SshSessionPool.getInstance(), RtspProbe.RTSP_PORT);
+        }
+        return instance;
+    }
+
+    // Logs in to the Pi in the background, the session is then left in the pool
+    public void warmSession(String host, String username, String password) {
+        if (host == null || host.isBlank() || !claim("ssh|" + host + "|" + username)) return;
+
+        warmers.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                // Hand the session straight back so it sits idle in the pool
+                pool.lease(host, username, password).close();
+                Log.d(TAG, "warmSession() :: " + username + "@" + host + " ready after "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (JSchException e) {
+                Log.d(TAG, "warmSession() :: could not log in to " + host + ": " + e.getMessage());
+                // Let the next call try again rather than waiting out the interval
+                lastWarmedMs.remove("ssh|" + host + "|" + username);
+            }
+        });
+    }
+
+    // Asks the feed Pi to describe the stream, so it's ready when the player asks for it
+    public void warmFeed(String host) {
+        if (!warmFeed || host == null || host.isBlank() || !claim("rtsp|" + host)) return;
+
+        warmers.execute(() -> {
+            // The server may still be starting, let the next call try again
+            if (!RtspProbe.describe(host, rtspPort, RTSP_TIMEOUT_MS)) lastWarmedMs.remove("rtsp|" + host);
+        });
+    }
+
+    // True if the target hasn't been warmed recently, and marks it as warmed now
+    private boolean claim(String key) {
+        final long now = System.nanoTime() / 1_000_000;
+        final boolean[] claimed = {false};
+        lastWarmedMs.compute(key, (k, last) -> {
+            if (last != null && now - last < MIN_REWARM_INTERVAL_MS) return last;
+            claimed[0] = true;
+            return now;
+        });
+        return claimed[0];
+    }
+}
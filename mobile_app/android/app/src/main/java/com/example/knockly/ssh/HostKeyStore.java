@@ -0,0 +1,231 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.HostKeyRepository;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.UserInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The Pis' host keys, saved to a file so every login checks the Pi is the same one as last time.
+ * Keys are kept per Wi-Fi network, so a Pi at another site that happens to have an address seen
+ * before isn't taken for the first one.
+ * A host's key is trusted the first time it's seen on a network, once the login to it has worked
+ * (see {@link SshConnector#connect}), so SSH servers that aren't ours aren't remembered. After that a
+ * different key is refused, unless it's a key already trusted for another address there, which is
+ * one of our Pis that moved.
+ * A Pi that was reinstalled has a new key, {@link #clearNetwork()} trusts it again.
+ * Each line of the file is "network host type base64key".
+ */
+public class HostKeyStore implements HostKeyRepository {
+    private static final String TAG = "HostKeyStore";
+
+    private final File file;
+    // Key for the network the phone is on, e.g. from NetworkIdentity
+    private final Supplier<String> network;
+    private final List<Saved> keys = new ArrayList<>();
+    // Keys seen for the first time, kept only once the login they came with gets through
+    private final List<Saved> pending = new ArrayList<>();
+
+    private static class Saved {
+        final String network;
+        final String host;
+        final String type;
+        final String key;
+
+        Saved(String network, String host, String type, String key) {
+            this.network = network;
+            this.host = host;
+            this.type = type;
+            this.key = key;
+        }
+    }
+
+    // Every key on one network, e.g. for tests
+    public HostKeyStore(File file) {
+        this(file, () -> "");
+    }
+
+    public HostKeyStore(File file, Supplier<String> network) {
+        this.file = file;
+        this.network = network;
+        load();
+    }
+
+    @Override
+    public synchronized int check(String host, byte[] key) {
+        String type = typeOf(key);
+        String encoded = Base64.getEncoder().encodeToString(key);
+        String current = network.get();
+
+        boolean hostKnown = false;
+        boolean keyKnown = false;
+        for (Saved saved : keys) {
+            if (!saved.network.equals(current)) continue;
+            boolean sameKey = saved.type.equals(type) && saved.key.equals(encoded);
+            if (saved.host.equals(host)) {
+                if (sameKey) return OK;
+                hostKnown = true;
+            }
+            keyKnown |= sameKey;
+        }
+
+        if (hostKnown && !keyKnown) {
+            Log.d(TAG, "check() :: " + host + " sent a different " + type + " key than last time on " + current
+                    + ", refusing until its keys are forgotten in the app's settings");
+            return CHANGED;
+        }
+        if (hostKnown) {
+            // The old key stays trusted too, it's likely the Pis swapped addresses
+            Log.d(TAG, "check() :: " + host + " is now a Pi that was seen at another address");
+        } else {
+            Log.d(TAG, "check() :: first login to " + host + ", trusting its " + type + " key if it works");
+        }
+        pending.add(new Saved(current, host, type, encoded));
+        return OK;
+    }
+
+    // The login the key came with worked, so it's kept
+    public synchronized void confirm(HostKey hostKey) {
+        if (takePending(hostKey) == null) return;
+        keys.add(new Saved(network.get(), hostKey.getHost(), hostKey.getType(), hostKey.getKey()));
+        save();
+    }
+
+    // The login the key came with failed, e.g. some other SSH server on the network
+    public synchronized void discard(HostKey hostKey) {
+        takePending(hostKey);
+    }
+
+    // Called with the store locked
+    private Saved takePending(HostKey hostKey) {
+        String current = network.get();
+        Iterator<Saved> it = pending.iterator();
+        while (it.hasNext()) {
+            Saved saved = it.next();
+            if (saved.network.equals(current) && saved.host.equals(hostKey.getHost())
+                    && saved.type.equals(hostKey.getType()) && saved.key.equals(hostKey.getKey())) {
+                it.remove();
+                return saved;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void add(HostKey hostkey, UserInfo ui) {
+        keys.add(new Saved(network.get(), hostkey.getHost(), hostkey.getType(), hostkey.getKey()));
+        save();
+    }
+
+    @Override
+    public synchronized void remove(String host, String type) {
+        remove(host, type, null);
+    }
+
+    @Override
+    public synchronized void remove(String host, String type, byte[] key) {
+        String encoded = key == null ? null : Base64.getEncoder().encodeToString(key);
+        String current = network.get();
+        Iterator<Saved> it = keys.iterator();
+        while (it.hasNext()) {
+            Saved saved = it.next();
+            if (saved.network.equals(current) && saved.host.equals(host) && (type == null || saved.type.equals(type))
+                    && (encoded == null || saved.key.equals(encoded))) {
+                it.remove();
+            }
+        }
+        save();
+    }
+
+    @Override
+    public String getKnownHostsRepositoryID() {
+        return file.getPath();
+    }
+
+    @Override
+    public synchronized HostKey[] getHostKey() {
+        return getHostKey(null, null);
+    }
+
+    @Override
+    public synchronized HostKey[] getHostKey(String host, String type) {
+        List<HostKey> found = new ArrayList<>();
+        String current = network.get();
+        for (Saved saved : keys) {
+            if (saved.network.equals(current) && (host == null || saved.host.equals(host)) && (type == null || saved.type.equals(type))) {
+                try {
+                    found.add(new HostKey(saved.host, Base64.getDecoder().decode(saved.key)));
+                } catch (JSchException | IllegalArgumentException e) {
+                    Log.d(TAG, "getHostKey() :: skipping unreadable key for " + saved.host);
+                }
+            }
+        }
+        return found.toArray(new HostKey[0]);
+    }
+
+    // Forgets every saved key, on every network
+    public synchronized void clear() {
+        keys.clear();
+        pending.clear();
+        save();
+    }
+
+    // Forgets the keys saved on the network the phone is on, e.g. after a Pi there has been reinstalled
+    public synchronized void clearNetwork() {
+        String current = network.get();
+        Iterator<Saved> it = keys.iterator();
+        while (it.hasNext()) {
+            if (it.next().network.equals(current)) it.remove();
+        }
+        save();
+    }
+
+    // A key blob starts with its type as an SSH string, e.g. "ssh-ed25519"
+    static String typeOf(byte[] key) {
+        if (key.length < 4) return "";
+        int length = ((key[0] & 0xff) << 24) | ((key[1] & 0xff) << 16) | ((key[2] & 0xff) << 8) | (key[3] & 0xff);
+        if (length < 0 || length > key.length - 4) return "";
+        return new String(key, 4, length, StandardCharsets.US_ASCII);
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length == 4) keys.add(new Saved(parts[0], parts[1], parts[2], parts[3]));
+                // Saved before keys were kept per network, only matched by a store without networks
+                else if (parts.length == 3) keys.add(new Saved("", parts[0], parts[1], parts[2]));
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "load() :: could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Called with the store locked
+    private void save() {
+        try (Writer writer = new FileWriter(file)) {
+            for (Saved saved : keys) {
+                writer.write(saved.network + " " + saved.host + " " + saved.type + " " + saved.key + "\n");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "save() :: could not write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.knockly.ssh;
+
+import com.jcraft.jsch.Identity;
+import com.jcraft.jsch.JSchException;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Lets JSch log in with a key pair whose private key never leaves where it's kept, e.g. the Android
+ * keystore, by signing through {@link Signature}. Ed25519 and NIST P-256 ECDSA keys are supported.
+ */
+public class KeyPairIdentity implements Identity {
+    static final String ED25519 = "ssh-ed25519";
+    static final String ECDSA_P256 = "ecdsa-sha2-nistp256";
+
+    // X.509 encoding of an Ed25519 public key, before the 32 byte key itself
+    private static final byte[] ED25519_X509_PREFIX = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00};
+
+    private final String name;
+    private final PrivateKey privateKey;
+    private final String algName;
+    private final byte[] publicKeyBlob;
+
+    /**
+     * @param name shown after the key in authorized_keys
+     * @throws IllegalArgumentException if the key isn't Ed25519 or P-256
+     */
+    public KeyPairIdentity(String name, KeyPair keyPair) {
+        this.name = name;
+        this.privateKey = keyPair.getPrivate();
+
+        PublicKey publicKey = keyPair.getPublic();
+        byte[] encoded = publicKey.getEncoded();
+        if (encoded != null && encoded.length == ED25519_X509_PREFIX.length + 32
+                && Arrays.equals(Arrays.copyOf(encoded, ED25519_X509_PREFIX.length), ED25519_X509_PREFIX)) {
+            algName = ED25519;
+            publicKeyBlob = blob(ED25519, Arrays.copyOfRange(encoded, ED25519_X509_PREFIX.length, encoded.length));
+        } else if (publicKey instanceof ECPublicKey && ((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize() == 256) {
+            ECPublicKey ec = (ECPublicKey) publicKey;
+            byte[] point = new byte[65];
+            point[0] = 0x04;
+            copyUnsigned(ec.getW().getAffineX(), point, 1, 32);
+            copyUnsigned(ec.getW().getAffineY(), point, 33, 32);
+            algName = ECDSA_P256;
+            publicKeyBlob = blob(ECDSA_P256, "nistp256".getBytes(StandardCharsets.US_ASCII), point);
+        } else {
+            throw new IllegalArgumentException("Unsupported key: " + publicKey.getAlgorithm());
+        }
+    }
+
+    // The line to add to ~/.ssh/authorized_keys on the Pi
+    public String getAuthorizedKey() {
+        return algName + " " + Base64.getEncoder().encodeToString(publicKeyBlob) + " " + name;
+    }
+
+    @Override
+    public boolean setPassphrase(byte[] passphrase) {
+        return true;
+    }
+
+    @Override
+    public byte[] getPublicKeyBlob() {
+        return publicKeyBlob;
+    }
+
+    // Returns null if signing failed, which JSch takes as this key not being usable
+    @Override
+    public byte[] getSignature(byte[] data) {
+        try {
+            if (algName.equals(ED25519)) {
+                Signature signer = Signature.getInstance("Ed25519");
+                signer.initSign(privateKey);
+                signer.update(data);
+                return blob(ED25519, signer.sign());
+            }
+
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(privateKey);
+            signer.update(data);
+            return blob(ECDSA_P256, derToSsh(signer.sign()));
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getSignature(byte[] data, String alg) {
+        return alg.equals(algName) ? getSignature(data) : null;
+    }
+
+    @Override
+    @Deprecated
+    public boolean decrypt() {
+        return true;
+    }
+
+    @Override
+    public String getAlgName() {
+        return algName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return false;
+    }
+
+    // The private key belongs to wherever it's kept, nothing to wipe here
+    @Override
+    public void clear() {}
+
+    // Java gives ECDSA signatures as DER SEQUENCE { INTEGER r, INTEGER s }, SSH wants mpint r, mpint s
+    static byte[] derToSsh(byte[] der) throws GeneralSecurityException {
+        try {
+            int offset = 2;
+            if ((der[1] & 0x80) != 0) offset += der[1] & 0x7f;
+            int rLength = der[offset + 1];
+            BigInteger r = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + rLength));
+            offset += 2 + rLength;
+            int sLength = der[offset + 1];
+            BigInteger s = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + sLength));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeString(out, r.toByteArray());
+            writeString(out, s.toByteArray());
+            return out.toByteArray();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new GeneralSecurityException("Malformed ECDSA signature", e);
+        }
+    }
+
+    // Concatenates the parts as SSH strings, e.g. key type then key
+    private static byte[] blob(String type, byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeString(out, type.getBytes(StandardCharsets.US_ASCII));
+        for (byte[] part : parts) {
+            writeString(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes.length >>> 24);
+        out.write(bytes.length >>> 16);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    // Writes the value as exactly length big-endian bytes
+    private static void copyUnsigned(BigInteger value, byte[] dest, int offset, int length) {
+        byte[] bytes = value.toByteArray();
+        int skip = Math.max(0, bytes.length - length);
+        int copied = bytes.length - skip;
+        System.arraycopy(bytes, skip, dest, offset + length - copied, copied);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.knockly.ssh;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * The app's SSH key pair, made once and kept in the Android keystore so the private key can't be copied off the phone.
+ * Ed25519 where the keystore supports it (Android 13+), NIST P-256 otherwise.
+ */
+public class KeystoreKeyPair {
+    private static final String TAG = "KeystoreKeyPair";
+
+    static final String KEYSTORE = "AndroidKeyStore";
+    static final String ALIAS = "knockly_ssh";
+
+    private KeystoreKeyPair() {}
+
+    // Blocks while a new key is generated, so don't call it on the main thread
+    public static KeyPair getOrCreate() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+
+        Certificate certificate = keyStore.getCertificate(ALIAS);
+        if (certificate != null) {
+            return new KeyPair(certificate.getPublicKey(), (PrivateKey) keyStore.getKey(ALIAS, null));
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            try {
+                return generate("ed25519", KeyProperties.DIGEST_NONE);
+            } catch (GeneralSecurityException e) {
+                // Some Android 13 keystores still can't make Ed25519 keys
+                Log.d(TAG, "getOrCreate() :: no Ed25519 in the keystore, using P-256: " + e.getMessage());
+            }
+        }
+        return generate("secp256r1", KeyProperties.DIGEST_SHA256);
+    }
+
+    private static KeyPair generate(String curve, String digest) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC, KEYSTORE);
+        generator.initialize(new KeyGenParameterSpec.Builder(ALIAS, KeyProperties.PURPOSE_SIGN)
+                .setAlgorithmParameterSpec(new ECGenParameterSpec(curve))
+                .setDigests(digest)
+                .build());
+        KeyPair keyPair = generator.generateKeyPair();
+        Log.d(TAG, "generate() :: made a new " + curve + " key");
+        return keyPair;
+    }
+}
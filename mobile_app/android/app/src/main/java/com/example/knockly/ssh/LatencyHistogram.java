@@ -0,0 +1,81 @@
+package com.example.knockly.ssh;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size histogram of latencies in milliseconds, cheap enough to record into on every tap.
+ * Values under 32 ms get a bucket each, above that every doubling is split into 16 buckets,
+ * so percentiles are within about 6% of the real value whatever the range.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    // Anything slower is counted as this, a door command that slow has failed anyway
+    static final long MAX_VALUE_MS = 10 * 60000;
+
+    private final long[] counts = new long[bucketFor(MAX_VALUE_MS) + 1];
+    private long count = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public synchronized void record(long valueMs) {
+        long value = Math.max(0, Math.min(valueMs, MAX_VALUE_MS));
+        counts[bucketFor(value)]++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    // 0 if nothing has been recorded
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile e.g. 95 for p95
+     * @return the value that percentile of recordings were at or under, 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                // Top of the bucket, but never past what was actually recorded
+                return Math.max(min, Math.min(lowestValue(bucket + 1) - 1, max));
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    static int bucketFor(long value) {
+        if (value < LINEAR_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        // Keeps the top 5 bits, 16 to 31
+        int sub = (int) (value >>> (exponent - 4)) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + sub;
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 4);
+    }
+}
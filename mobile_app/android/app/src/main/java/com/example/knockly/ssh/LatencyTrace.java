@@ -0,0 +1,61 @@
+package com.example.knockly.ssh;
+
+/**
+ * Timestamps for one door command as it passes each stage, from the tap to the UI showing the result.
+ * Uses {@link System#nanoTime()} so clock changes don't skew it, stages that weren't reached are left out.
+ * Once finished hand it to {@link DoorLatencyMetrics#record(LatencyTrace)}.
+ */
+public class LatencyTrace {
+    // Stages in the order a command passes them, each timed from the tap
+    public static final String TAP = "tap";
+    public static final String SESSION = "session";
+    public static final String CHANNEL = "channel";
+    public static final String SENT = "sent";
+    public static final String RESULT = "result";
+    public static final String UI = "ui";
+    static final String[] STAGES = {TAP, SESSION, CHANNEL, SENT, RESULT, UI};
+
+    // How the command reached the Pi
+    public static final String TRANSPORT_CHANNEL = "channel";
+    public static final String TRANSPORT_SCRIPT = "script";
+
+    private final String command;
+    private final long[] stageNanos = new long[STAGES.length];
+    private volatile String transport = TRANSPORT_CHANNEL;
+
+    // Starts the trace, call on the tap
+    public LatencyTrace(String command) {
+        this.command = command;
+        stageNanos[0] = System.nanoTime();
+    }
+
+    // Later marks of the same stage replace earlier ones, e.g. after falling back to another transport
+    public synchronized void mark(String stage) {
+        stageNanos[indexOf(stage)] = System.nanoTime();
+    }
+
+    // Time from the tap to the stage, -1 if it wasn't reached
+    public synchronized long elapsedMs(String stage) {
+        long nanos = stageNanos[indexOf(stage)];
+        return nanos == 0 ? -1 : (nanos - stageNanos[0]) / 1_000_000;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    private static int indexOf(String stage) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) return i;
+        }
+        throw new IllegalArgumentException("Unknown stage " + stage);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.knockly.ssh;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.discovery.NetworkIdentity;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes every SSH session the app opens, so they all check the Pis' saved host keys, log in with
+ * the app's key pair once it's on the Pi, and offer the chosen {@link SshCryptoProfile}.
+ * The first password login to each Pi adds the app's public key to the user's authorized_keys,
+ * after that the Pi accepts the key and skips the password check.
+ * To use call "SshConnector.getInstance()", then "newSession(...)" and "connect(...)".
+ */
+public class SshConnector {
+    private static final String TAG = "SshConnector";
+
+    static final String KNOWN_HOSTS_FILE = "known_hosts";
+
+    // Set to DEFAULT to offer what JSch offers, e.g. when a Pi refuses to log in
+    public static SshCryptoProfile cryptoProfile = SshCryptoProfile.CHACHA20;
+    // Set to false to keep logging in with the password only
+    public static boolean useKeyAuth = true;
+
+    private static SshConnector instance;
+
+    private final JSch jsch = new JSch();
+    private volatile HostKeyStore hostKeys;
+    private volatile KeyPairIdentity identity;
+    // user@host the key has been added for since the app started
+    private final Set<String> keyInstalled = ConcurrentHashMap.newKeySet();
+
+    SshConnector() {}
+
+    public static synchronized SshConnector getInstance() {
+        if (instance == null) {
+            instance = new SshConnector();
+        }
+        return instance;
+    }
+
+    // Call once when the app starts, the key pair is loaded or made in the background
+    public void init(Context context) {
+        Context appContext = context.getApplicationContext();
+        // Kept per network, Pis at different sites can have the same address
+        setHostKeyStore(new HostKeyStore(new File(context.getFilesDir(), KNOWN_HOSTS_FILE),
+                () -> NetworkIdentity.currentKey(appContext)));
+
+        if (!useKeyAuth) return;
+        AppExecutors.getInstance().ssh().execute(AppExecutor.Priority.LOW, () -> {
+            try {
+                setIdentity(new KeyPairIdentity("knockly@" + Build.MODEL.replace(' ', '_'), KeystoreKeyPair.getOrCreate()));
+            } catch (Exception e) {
+                Log.d(TAG, "init() :: no key pair, logging in with passwords only: " + e.getMessage());
+            }
+        });
+    }
+
+    public void setHostKeyStore(HostKeyStore hostKeys) {
+        this.hostKeys = hostKeys;
+        jsch.setHostKeyRepository(hostKeys);
+    }
+
+    /**
+     * Trusts the Pis on this network again as if logging in for the first time, e.g. after one was
+     * reinstalled and its new host key is being refused.
+     */
+    public void forgetHostKeys() {
+        HostKeyStore hostKeys = this.hostKeys;
+        if (hostKeys != null) hostKeys.clearNetwork();
+    }
+
+    public synchronized void setIdentity(KeyPairIdentity identity) throws JSchException {
+        jsch.removeAllIdentity();
+        if (identity != null) jsch.addIdentity(identity, null);
+        this.identity = identity;
+        keyInstalled.clear();
+    }
+
+    public KeyPairIdentity getIdentity() {
+        return identity;
+    }
+
+    /**
+     * A session ready to connect, using the saved host keys, the key pair if there is one and
+     * {@link #cryptoProfile}. The password is still set, for Pis the key hasn't been added to yet.
+     */
+    public Session newSession(String username, String host, int port, String password) throws JSchException {
+        Session session = jsch.getSession(username, host, port);
+        session.setPassword(password);
+
+        // Without a store, e.g. before init(), any host key is accepted as before
+        session.setConfig("StrictHostKeyChecking", hostKeys == null ? "no" : "yes");
+        // Ask for the key type already saved for the Pi, so a profile change doesn't look like a new key
+        session.setConfig("prefer_known_host_key_types", "yes");
+        session.setConfig("PreferredAuthentications", identity == null || !useKeyAuth ? "password" : "publickey,password");
+        cryptoProfile.applyTo(session);
+        return session;
+    }
+
+    /**
+     * Connects the session, saving the host's key if it's new only when the login gets through.
+     * @param timeoutMs limit on the connect and on each wait for the server during the handshake
+     */
+    public void connect(Session session, int timeoutMs) throws JSchException {
+        HostKeyStore hostKeys = this.hostKeys;
+        try {
+            session.connect(timeoutMs);
+        } catch (JSchException e) {
+            if (hostKeys != null && session.getHostKey() != null) hostKeys.discard(session.getHostKey());
+            throw e;
+        }
+        if (hostKeys != null) hostKeys.confirm(session.getHostKey());
+    }
+
+    /**
+     * Adds the app's public key to the user's authorized_keys on the Pi, in the background.
+     * Safe to call after every login, the key is only added once.
+     */
+    public void installKey(Session session) {
+        KeyPairIdentity identity = this.identity;
+        String target = session.getUserName() + "@" + session.getHost();
+        if (!useKeyAuth || identity == null || !keyInstalled.add(target)) return;
+
+        String line = identity.getAuthorizedKey();
+        String command = "mkdir -p ~/.ssh && chmod 700 ~/.ssh && touch ~/.ssh/authorized_keys"
+                + " && chmod 600 ~/.ssh/authorized_keys"
+                + " && (grep -qxF '" + line + "' ~/.ssh/authorized_keys"
+                + " || echo '" + line + "' >> ~/.ssh/authorized_keys)";
+        SshExec.exec(session, command).whenComplete((result, e) -> {
+            if (e == null && result.isSuccess()) {
+                Log.d(TAG, "installKey() :: key added for " + target);
+            } else {
+                Log.d(TAG, "installKey() :: could not add key for " + target);
+                keyInstalled.remove(target);
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.knockly.ssh;
+
+import com.jcraft.jsch.Session;
+
+/**
+ * Which key exchange, ciphers and MACs a session offers the Pi, fastest first.
+ * Each list ends with algorithms every OpenSSH server has, so a profile never stops a login,
+ * and JSch leaves out any the phone can't run.
+ * Pick with "SshConnector.cryptoProfile", see SshHandshakeBenchmarkTest for how they compare.
+ */
+public enum SshCryptoProfile {
+    // Whatever JSch offers by default
+    DEFAULT(null, null, null, null),
+    // Pis before the Pi 5 have no AES instructions, where chacha20 is the fastest cipher in software
+    CHACHA20(
+            "curve25519-sha256,curve25519-sha256@libssh.org,ecdh-sha2-nistp256,diffie-hellman-group14-sha256",
+            "chacha20-poly1305@openssh.com,aes128-gcm@openssh.com,aes128-ctr",
+            "hmac-sha2-256-etm@openssh.com,hmac-sha2-256",
+            "ssh-ed25519,ecdsa-sha2-nistp256,ecdsa-sha2-nistp384,ecdsa-sha2-nistp521,rsa-sha2-512,rsa-sha2-256"),
+    // For a Pi 5, which like most phones can do AES in hardware
+    AES_GCM(
+            "curve25519-sha256,curve25519-sha256@libssh.org,ecdh-sha2-nistp256,diffie-hellman-group14-sha256",
+            "aes128-gcm@openssh.com,aes256-gcm@openssh.com,chacha20-poly1305@openssh.com,aes128-ctr",
+            "hmac-sha2-256-etm@openssh.com,hmac-sha2-256",
+            "ssh-ed25519,ecdsa-sha2-nistp256,ecdsa-sha2-nistp384,ecdsa-sha2-nistp521,rsa-sha2-512,rsa-sha2-256");
+
+    private final String kex;
+    private final String ciphers;
+    // Only used by ciphers without their own authentication, e.g. aes128-ctr
+    private final String macs;
+    private final String hostKeyTypes;
+
+    SshCryptoProfile(String kex, String ciphers, String macs, String hostKeyTypes) {
+        this.kex = kex;
+        this.ciphers = ciphers;
+        this.macs = macs;
+        this.hostKeyTypes = hostKeyTypes;
+    }
+
+    // Call before connecting
+    public void applyTo(Session session) {
+        if (kex == null) return;
+        session.setConfig("kex", kex);
+        session.setConfig("cipher.c2s", ciphers);
+        session.setConfig("cipher.s2c", ciphers);
+        session.setConfig("mac.c2s", macs);
+        session.setConfig("mac.s2c", macs);
+        session.setConfig("server_host_key", hostKeyTypes);
+    }
+}
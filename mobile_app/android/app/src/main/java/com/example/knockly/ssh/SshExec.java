@@ -0,0 +1,255 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutors;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs commands on a Pi over an SSH session without tying up the caller.
+ * Output is read with blocking reads (no polling) and handed to an {@link OutputListener}
+ * as it arrives, and the returned future holds the command's real exit status, taken once the
+ * channel has closed.
+ * Cancelling the future, or the timeout running out, closes the channel on the Pi.
+ */
+public final class SshExec {
+    private static final String TAG = "SshExec";
+
+    public static final long DEFAULT_TIMEOUT_MS = 15000;
+    // Output kept in the result, anything past this only goes to the listener
+    static final int MAX_CAPTURED_CHARS = 64 * 1024;
+    private static final int CHANNEL_CONNECT_TIMEOUT_MS = 5000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Called on a background thread with each piece of output as it arrives
+    public interface OutputListener {
+        void onOutput(String chunk, boolean stderr);
+    }
+
+    public static final class Result {
+        // -1 if the Pi didn't report one, e.g. the command was killed by a signal
+        public final int exitStatus;
+        public final String stdout;
+        public final String stderr;
+
+        Result(int exitStatus, String stdout, String stderr) {
+            this.exitStatus = exitStatus;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        public boolean isSuccess() {
+            return exitStatus == 0;
+        }
+    }
+
+    private SshExec() {}
+
+    public static CompletableFuture<Result> exec(Session session, String command) {
+        return exec(session, command, DEFAULT_TIMEOUT_MS, null);
+    }
+
+    /**
+     * Starts the command and returns straight away.
+     * @param timeoutMs time the command may run for before it is closed and the future fails
+     *                  with a {@link TimeoutException}, 0 for no limit (e.g. starting a server)
+     * @param listener gets the output as it arrives, may be null
+     * @return future holding the exit status and output, fails if the channel can't be opened
+     */
+    public static CompletableFuture<Result> exec(Session session, String command, long timeoutMs,
+                                                 OutputListener listener) {
+        return exec(session, command, timeoutMs, listener, null);
+    }
+
+    // As above, marking the channel opening, the command going out and the exit status on the trace
+    public static CompletableFuture<Result> exec(Session session, String command, long timeoutMs,
+                                                 OutputListener listener, LatencyTrace trace) {
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> timeout = AppExecutors.getInstance().scheduler().schedule(() -> result.completeExceptionally(
+                    new TimeoutException("Command timed out after " + timeoutMs + " ms")),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> timeout.cancel(false));
+        }
+
+        // Reads block for as long as the command runs, on the shared SSH pool
+        AppExecutors.getInstance().ssh().execute(() -> {
+            ChannelExec channel = null;
+            try {
+                channel = (ChannelExec) session.openChannel("exec");
+                channel.setCommand(command);
+                channel.setInputStream(null);
+
+                // JSch closes the stderr stream once the channel has closed, after the exit status arrived
+                CountDownLatch closed = new CountDownLatch(1);
+                StringBuilder stderr = new StringBuilder();
+                channel.setErrStream(new ChunkStream(stderr, listener, closed::countDown), false);
+                InputStream in = channel.getInputStream();
+
+                // Cancelling or timing out closes the channel, which ends the read and the wait below
+                final ChannelExec opened = channel;
+                result.whenComplete((r, e) -> {
+                    if (e != null) {
+                        opened.disconnect();
+                        closed.countDown();
+                    }
+                });
+                if (result.isDone()) return;
+
+                // The command is sent as part of opening the channel
+                channel.connect(CHANNEL_CONNECT_TIMEOUT_MS);
+                if (trace != null) {
+                    trace.mark(LatencyTrace.CHANNEL);
+                    trace.mark(LatencyTrace.SENT);
+                }
+
+                StringBuilder stdout = new StringBuilder();
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                char[] buffer = new char[4096];
+                for (int n; (n = reader.read(buffer)) >= 0; ) {
+                    deliver(new String(buffer, 0, n), false, stdout, listener);
+                }
+
+                // The exit status comes just after the end of the output
+                closed.await();
+
+                Log.d(TAG, "exec() :: " + command.trim() + " exited with " + channel.getExitStatus());
+                if (trace != null) trace.mark(LatencyTrace.RESULT);
+                synchronized (stderr) {
+                    result.complete(new Result(channel.getExitStatus(), stdout.toString(), stderr.toString()));
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (channel != null) channel.disconnect();
+            }
+        });
+        return result;
+    }
+
+    public static CompletableFuture<List<Result>> execBatch(Session session, List<String> commands) {
+        return execBatch(session, commands, DEFAULT_TIMEOUT_MS, null);
+    }
+
+    /**
+     * Runs the commands one after another as a single script over one channel, so together they
+     * cost one round trip instead of one each, e.g. opening the door and reading the log after it.
+     * Each command runs in its own subshell, so a "cd" or "exit" in one doesn't reach the next,
+     * and every command runs whatever the ones before it exited with.
+     * The timeout covers the whole batch.
+     * @return future holding one result per command in order, a command whose end never arrived
+     *         (the script was killed, or the output ran past {@link #MAX_CAPTURED_CHARS}) has an
+     *         exit status of -1 and the output up to where it stopped
+     */
+    public static CompletableFuture<List<Result>> execBatch(Session session, List<String> commands, long timeoutMs,
+                                                            LatencyTrace trace) {
+        for (String command : commands) {
+            if (command.trim().isEmpty()) throw new IllegalArgumentException("Empty command in batch");
+        }
+        // Random, so a command's own output can't be mistaken for the end of it
+        String marker = "--knockly-batch-" + Long.toHexString(RANDOM.nextLong());
+
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            // The newline before each marker keeps it on its own line, it's taken off again below
+            script.append("(\n").append(commands.get(i)).append("\n)\n")
+                    .append("printf '\\n%s %d %d\\n' ").append(marker).append(' ').append(i).append(" $?\n")
+                    .append("printf '\\n%s %d\\n' ").append(marker).append(' ').append(i).append(" >&2\n");
+        }
+        return exec(session, script.toString(), timeoutMs, null, trace)
+                .thenApply(result -> split(result, marker, commands.size()));
+    }
+
+    // What a batch that couldn't be run gives back, a -1 exit status for every command
+    public static List<Result> failedBatch(int count) {
+        return Collections.nCopies(count, new Result(-1, "", ""));
+    }
+
+    // Cuts the batch's output back into one result per command at the markers
+    static List<Result> split(Result batch, String marker, int count) {
+        List<Result> results = new ArrayList<>(count);
+        int out = 0;
+        int err = 0;
+        for (int i = 0; i < count; i++) {
+            String end = "\n" + marker + " " + i;
+            int outEnd = batch.stdout.indexOf(end + " ", out);
+            int errEnd = batch.stderr.indexOf(end + "\n", err);
+
+            int exitStatus = -1;
+            String stdout = batch.stdout.substring(out, outEnd < 0 ? batch.stdout.length() : outEnd);
+            String stderr = batch.stderr.substring(err, errEnd < 0 ? batch.stderr.length() : errEnd);
+            if (outEnd >= 0) {
+                int start = outEnd + end.length() + 1;
+                int lineEnd = batch.stdout.indexOf('\n', start);
+                if (lineEnd >= 0) {
+                    exitStatus = Integer.parseInt(batch.stdout.substring(start, lineEnd));
+                    out = lineEnd + 1;
+                } else {
+                    outEnd = -1;
+                }
+            }
+            if (errEnd >= 0) err = errEnd + end.length() + 1;
+
+            results.add(new Result(exitStatus, stdout, stderr));
+            if (outEnd < 0) {
+                // The script stopped here, nothing after this command ran
+                results.addAll(failedBatch(count - results.size()));
+                break;
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    private static void deliver(String chunk, boolean stderr, StringBuilder captured, OutputListener listener) {
+        synchronized (captured) {
+            int room = MAX_CAPTURED_CHARS - captured.length();
+            if (room > 0) captured.append(chunk, 0, Math.min(room, chunk.length()));
+        }
+        if (listener != null) listener.onOutput(chunk, stderr);
+    }
+
+    // JSch writes stderr into this from its own thread as it arrives
+    private static class ChunkStream extends OutputStream {
+        private final StringBuilder captured;
+        private final OutputListener listener;
+        private final Runnable onClose;
+
+        ChunkStream(StringBuilder captured, OutputListener listener, Runnable onClose) {
+            this.captured = captured;
+            this.listener = listener;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            deliver(new String(b, off, len, StandardCharsets.UTF_8), true, captured, listener);
+        }
+
+        @Override
+        public void close() {
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.knockly.ssh;
+
+import android.util.Log;
+
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.utils.SSHUtils;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * App wide pool of logged in SSH sessions, one per (host, user).
+ * Screens lease a session instead of opening their own, so moving between pages reuses a warm
+ * session rather than paying for a key exchange and login on the Pi every time.
+ * Sessions send keepalives, are checked in the background and reconnected with backoff if they
+ * drop while in use, and are closed once nobody has used them for a while.
+ * To use call "SshSessionPool.getInstance()", then "try (Lease lease = pool.lease(...)) {...}"
+ */
+public class SshSessionPool {
+    private static final String TAG = "SshSessionPool";
+
+    // Keepalive every 15s, the session is dropped after 3 go unanswered
+    static final int KEEPALIVE_INTERVAL_MS = 15000;
+    static final int KEEPALIVE_COUNT_MAX = 3;
+    static final int CONNECT_TIMEOUT_MS = 5000;
+    static final long HEALTH_CHECK_INTERVAL_MS = 30000;
+    // Sessions nobody has leased for this long are closed
+    static final long IDLE_TIMEOUT_MS = 5 * 60000;
+    // Background reconnects wait 0.5s, 1s, 2s... up to 30s between attempts
+    static final long INITIAL_BACKOFF_MS = 500;
+    static final long MAX_BACKOFF_MS = 30000;
+
+    private static SshSessionPool instance;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Logins and health checks block, so they run on the SSH pool, timed by the app's scheduler
+    private final AppExecutors executors = AppExecutors.getInstance();
+    final ScheduledFuture<?> healthCheck;
+
+    // One pooled session along with who is using it
+    private static class Entry {
+        final String host;
+        final String username;
+        String password;
+        Session session;
+        int leases = 0;
+        long lastUsedMs = now();
+        int failures = 0;
+        boolean reconnectScheduled = false;
+
+        Entry(String host, String username, String password) {
+            this.host = host;
+            this.username = username;
+            this.password = password;
+        }
+
+        boolean isConnected() {
+            return session != null && session.isConnected();
+        }
+    }
+
+    /**
+     * A session on loan from the pool, close it when done rather than disconnecting the session.
+     * Several leases can share one session at once, each opens its own channels.
+     */
+    public class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final Session session;
+        private boolean closed = false;
+
+        private Lease(Entry entry, Session session) {
+            this.entry = entry;
+            this.session = session;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        // Call if the session turned out to be broken, a new one is logged in in the background
+        public void invalidate() {
+            synchronized (entry) {
+                if (entry.session != session) return;
+                disconnect(entry);
+                scheduleReconnect(entry, 0);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (entry) {
+                if (closed) return;
+                closed = true;
+                entry.leases--;
+                entry.lastUsedMs = now();
+            }
+        }
+    }
+
+    SshSessionPool() {
+        healthCheck = executors.scheduleWithFixedDelay(executors.ssh(), this::checkHealth, HEALTH_CHECK_INTERVAL_MS);
+    }
+
+    public static synchronized SshSessionPool getInstance() {
+        if (instance == null) {
+            instance = new SshSessionPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Leases a logged in session to the host, reusing the pooled one if it is still connected.
+     * Blocks while logging in, so don't call it on the main thread.
+     * @throws JSchException if no session could be opened
+     */
+    public Lease lease(String host, String username, String password) throws JSchException {
+        Entry entry = entryFor(host, username, password);
+        synchronized (entry) {
+            if (!entry.isConnected()) connect(entry);
+            entry.leases++;
+            entry.lastUsedMs = now();
+            return new Lease(entry, entry.session);
+        }
+    }
+
+    // Closes every pooled session, e.g. when moving to another network
+    public void closeAll() {
+        for (Map.Entry<String, Entry> pooled : entries.entrySet()) {
+            Entry entry = pooled.getValue();
+            synchronized (entry) {
+                disconnect(entry);
+                entry.lastUsedMs = now() - IDLE_TIMEOUT_MS - 1;
+            }
+            // Leases still out can't bring it back, their close() would otherwise make it look freshly used
+            entries.remove(pooled.getKey(), entry);
+        }
+    }
+
+    // Stops the health checks and closes every session, the app wide pool lives as long as the app
+    public void shutdown() {
+        healthCheck.cancel(false);
+        closeAll();
+    }
+
+    /**
+     * Runs in the background every {@link #HEALTH_CHECK_INTERVAL_MS}.
+     * Idle sessions are closed, and sessions still in use that have dropped are reconnected.
+     */
+    void checkHealth() {
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                // Idle entries stay in the pool without a session, the next lease logs in again
+                if (isIdle(entry)) {
+                    if (entry.session != null) {
+                        Log.d(TAG, "checkHealth() :: closing idle session to " + entry.host);
+                        disconnect(entry);
+                    }
+                    continue;
+                }
+
+                if (entry.isConnected()) {
+                    try {
+                        entry.session.sendKeepAliveMsg();
+                        continue;
+                    } catch (Exception e) {
+                        Log.d(TAG, "checkHealth() :: session to " + entry.host + " is broken: " + e.getMessage());
+                        disconnect(entry);
+                    }
+                }
+                scheduleReconnect(entry, 0);
+            }
+        }
+    }
+
+    // Called with the entry locked, retries with a growing delay until it connects or goes idle
+    private void scheduleReconnect(Entry entry, long delayMs) {
+        if (entry.reconnectScheduled) return;
+        entry.reconnectScheduled = true;
+
+        executors.schedule(executors.ssh(), () -> {
+            synchronized (entry) {
+                entry.reconnectScheduled = false;
+                if (isIdle(entry) || entry.isConnected() || !entries.containsValue(entry)) return;
+                try {
+                    connect(entry);
+                } catch (JSchException e) {
+                    long backoffMs = backoffMs(entry.failures);
+                    Log.d(TAG, "scheduleReconnect() :: reconnect to " + entry.host + " failed, retrying in "
+                            + backoffMs + " ms");
+                    scheduleReconnect(entry, backoffMs);
+                }
+            }
+        }, delayMs);
+    }
+
+    private static boolean isIdle(Entry entry) {
+        return entry.leases == 0 && now() - entry.lastUsedMs > IDLE_TIMEOUT_MS;
+    }
+
+    private Entry entryFor(String host, String username, String password) {
+        Entry entry = entries.computeIfAbsent(host + "|" + username, key -> new Entry(host, username, password));
+        synchronized (entry) {
+            // A different password means the old session logged in as someone it shouldn't have
+            if (!entry.password.equals(password)) {
+                disconnect(entry);
+                entry.password = password;
+            }
+        }
+        return entry;
+    }
+
+    // Called with the entry locked
+    private static void connect(Entry entry) throws JSchException {
+        disconnect(entry);
+        try {
+            Session session = SshConnector.getInstance().newSession(entry.username, entry.host,
+                    SSHUtils.sshPort, entry.password);
+            session.setServerAliveInterval(KEEPALIVE_INTERVAL_MS);
+            session.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+
+            SshConnector.getInstance().connect(session, CONNECT_TIMEOUT_MS);
+            Log.d(TAG, "connect() :: SSH session to " + entry.username + "@" + entry.host + " established");
+
+            entry.session = session;
+            entry.failures = 0;
+            SshConnector.getInstance().installKey(session);
+        } catch (JSchException e) {
+            entry.failures++;
+            throw e;
+        }
+    }
+
+    // Called with the entry locked
+    private static void disconnect(Entry entry) {
+        if (entry.session != null) {
+            entry.session.disconnect();
+            entry.session = null;
+        }
+    }
+
+    static long backoffMs(int failures) {
+        long backoff = INITIAL_BACKOFF_MS << Math.min(failures - 1, 16);
+        return Math.min(backoff, MAX_BACKOFF_MS);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
@@ -3,101 +3,138 @@ package com.example.knockly.utils;
 import static android.content.ContentValues.TAG;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.RouteInfo;
 import android.net.wifi.WifiManager;
 import android.text.format.Formatter;
 import android.util.Log;
 
-import com.jcraft.jsch.Channel;
-import com.jcraft.jsch.ChannelExec;
-import com.jcraft.jsch.JSch;
+import com.example.knockly.concurrent.AppExecutor;
+import com.example.knockly.concurrent.AppExecutors;
+import com.example.knockly.discovery.DiscoveryMetrics;
+import com.example.knockly.discovery.DiscoveryPipeline;
+import com.example.knockly.discovery.FallbackHostResolver;
+import com.example.knockly.discovery.HostResolver;
+import com.example.knockly.discovery.HostSource;
+import com.example.knockly.discovery.NeighbourTable;
+import com.example.knockly.discovery.NetworkIdentity;
+import com.example.knockly.discovery.NsdHostResolver;
+import com.example.knockly.discovery.PiProfile;
+import com.example.knockly.discovery.SelectorSubnetScanner;
+import com.example.knockly.discovery.SshBannerFingerprinter;
+import com.example.knockly.discovery.SubnetPlan;
+import com.example.knockly.ssh.SshConnector;
+import com.example.knockly.ssh.SshExec;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.Inet4Address;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.NetworkInterface;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class SSHUtils {
     private static List<String> cachedHosts = null;  // Cache reachable hosts
+    private static String cachedHostsNetwork = null;  // Network the cached hosts were found on
+
+    // mDNS service type advertised by the doorbell Pis (see edge_device/Discovery)
+    public static final String SERVICE_TYPE = "_knockly._tcp";
+    private static final long SERVICE_DISCOVERY_TIMEOUT_MS = 1500;
+    // Large subnets are swept nearest first until this runs out
+    private static final long MAX_SCAN_BUDGET_MS = 8000;
+    private static final int MAX_SCAN_CANDIDATES = 8192;
+    // Overall limit on finding a Pi, covers discovery plus the SSH logins
+    private static final long PI_DISCOVERY_TIMEOUT_MS = 10000;
+    private static final int HOST_CHECK_TIMEOUT_MS = 300;
+    // Limit on each wait for a host while logging in, so one that accepts TCP and then stalls is given up on
+    private static final int LOGIN_TIMEOUT_MS = 3000;
+    // Set to false to skip service discovery and always sweep the subnet
+    public static boolean useServiceDiscovery = true;
+    // Port the Pis run SSH on, only changed by the discovery benchmarks
+    public static int sshPort = 22;
 
+    public static int getLocalHost(Context context) {
+        WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        return wm.getConnectionInfo().getIpAddress();
+    }
 
-    public static List<String> ping(String subnetIP) {
-        final ExecutorService es = Executors.newFixedThreadPool(128);
-        final List<Future<String>> futures = new ArrayList<>();
-        final List<String> hosts = new ArrayList<>();
-        final int timeout = 300;
+    public static String formatToIPV4(int address) {
+        return Formatter.formatIpAddress(address);
+    }
 
-        for (int i = 1; i < 255; i++) {
-            String ip = subnetIP + "." + i;
-            futures.add(ipIsReachable(es, ip, timeout));
-        }
+    // Prefix length of the Wi-Fi network, e.g. 24 for 255.255.255.0, assumes a /24 if it can't be read
+    public static short getSubnetFormat(Context context) {
+        LinkAddress address = getWifiLinkAddress(context);
+        return (short) (address == null ? 24 : address.getPrefixLength());
+    }
 
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
-                if (result != null) {
-                    hosts.add(result);
-                }
-            } catch (Exception ignored) {}
-        }
+    // The phone's IPv4 address on Wi-Fi along with its prefix length, null if not on Wi-Fi
+    public static LinkAddress getWifiLinkAddress(Context context) {
+        LinkProperties properties = getWifiLinkProperties(context);
+        if (properties == null) return null;
 
-        es.shutdown();
-        return hosts;
+        for (LinkAddress address : properties.getLinkAddresses()) {
+            if (address.getAddress() instanceof Inet4Address) return address;
+        }
+        return null;
     }
 
-    private static boolean isReachable(String ip, int port, int timeout) {
-        // Any Open port on other machine
-        // openPort =  22 - ssh, 80 or 443 - webserver, 25 - mailserver etc.
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(ip, port), timeout);
-            socket.close();
-            return true;
-        } catch (Exception ex) {
-            return false;
+    // Address of the Wi-Fi network's router, null if not known
+    public static String getGatewayIP(Context context) {
+        LinkProperties properties = getWifiLinkProperties(context);
+        if (properties == null) return null;
+
+        for (RouteInfo route : properties.getRoutes()) {
+            if (route.isDefaultRoute() && route.getGateway() instanceof Inet4Address) {
+                return route.getGateway().getHostAddress();
+            }
         }
+        return null;
     }
 
-    public static Future<String> ipIsReachable(final ExecutorService es, final String ip, final int timeout) {
-        return es.submit(() -> {
-            try {
-                if (InetAddress.getByName(ip).isReachable(timeout) || isReachable(ip, 80, timeout)) {
-                    Log.d(TAG, "ping() :: "+ip + " is reachable");
-                    return ip;
-                }
-            } catch (Exception ignored) {}
-            return null;
-        });
-    }
+    @SuppressWarnings("deprecation")
+    private static LinkProperties getWifiLinkProperties(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return null;
 
-    public static int getLocalHost(Context context) {
-        WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-        return wm.getConnectionInfo().getIpAddress();
+        // The active network can be mobile data if the Wi-Fi has no internet, so look for Wi-Fi itself
+        for (Network network : cm.getAllNetworks()) {
+            NetworkCapabilities capabilities = cm.getNetworkCapabilities(network);
+            if (capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+                return cm.getLinkProperties(network);
+            }
+        }
+        return null;
     }
 
-    public static String formatToIPV4(int address) {
-        return Formatter.formatIpAddress(address);
+    // Addresses to sweep, most likely first, sized to the real subnet rather than assuming a /24
+    public static List<String> getScanCandidates(Context context) {
+        LinkAddress address = getWifiLinkAddress(context);
+        if (address == null) {
+            return SelectorSubnetScanner.subnetCandidates(getSubnetIP(getLocalHost(context)));
+        }
+        return SubnetPlan.candidates(address.getAddress().getHostAddress(), address.getPrefixLength(),
+                getGatewayIP(context), MAX_SCAN_CANDIDATES);
     }
 
-    public static short getSubnetFormat() throws IOException, InterruptedException {
-        Process proc = Runtime.getRuntime()
-                .exec(new String[] {"su", "--command", "Djava.net.preferIPv4Stack=true"});
-        proc.waitFor();
-
-        InetAddress local = Inet4Address.getLocalHost();
-        NetworkInterface networkInterface = NetworkInterface.getByInetAddress(local);
-        return networkInterface.getInterfaceAddresses().get(1).getNetworkPrefixLength();
+    // Time for service discovery plus a sweep of the candidates, capped for very large subnets
+    private static long scanBudgetMs(int candidates) {
+        long sweepMs = (long) candidates * 1000 / SelectorSubnetScanner.DEFAULT_MAX_CONNECTS_PER_SECOND
+                + SelectorSubnetScanner.DEFAULT_CONNECT_TIMEOUT_MS;
+        return Math.min(MAX_SCAN_BUDGET_MS, SERVICE_DISCOVERY_TIMEOUT_MS + sweepMs);
     }
 
     public static String getSubnetIP(int address)
@@ -111,63 +148,229 @@ public class SSHUtils {
         return ipString;
     }
 
+    // Service discovery first, then the selector sweep if no Pi announces itself
+    private static FallbackHostResolver discoverySource(Context context, List<String> candidates) {
+        // The sweep looks for open SSH ports from a single thread rather than pinging with a pool
+        HostResolver sweep = new SelectorSubnetScanner(candidates, sshPort,
+                SelectorSubnetScanner.DEFAULT_CONNECT_TIMEOUT_MS,
+                SelectorSubnetScanner.DEFAULT_MAX_CONNECTS_PER_SECOND, null);
+        HostResolver nsd = useServiceDiscovery
+                ? new NsdHostResolver(context, SERVICE_TYPE)
+                : timeoutMs -> new ArrayList<>();
+        return new FallbackHostResolver(nsd, sweep, SERVICE_DISCOVERY_TIMEOUT_MS);
+    }
+
     public static void initializeNetworkScan(Context context) {
         if (cachedHosts != null) return;
 
-        int localHost = getLocalHost(context);
-        String subnet = getSubnetIP(localHost);
-        cachedHosts = ping(subnet);
+        List<String> candidates = getScanCandidates(context);
+        cachedHosts = discoverySource(context, candidates).resolve(scanBudgetMs(candidates.size()));
         Log.d(TAG, "initializeNetworkScan() :: Found hosts = " + cachedHosts);
     }
 
     public static String getPiIP(Context context, String username, String password) {
-        if (cachedHosts == null) initializeNetworkScan(context); // Ensure ping is done
-
-        final ExecutorService es = Executors.newFixedThreadPool(32);
-        List<Future<String>> futures = new ArrayList<>();
-
-        for (String ip : cachedHosts) {
-            futures.add(es.submit(() -> {
-                Session session = startSSH(username, ip, password);
-                if (session != null && session.isConnected()) {
-                    session.disconnect();
-                    Log.d(TAG, "getPiIP() :: SSH successful on " + ip);
-                    return ip;
-                }
-                return null;
-            }));
+        return getPiIP(context, username, password, null);
+    }
+
+    /**
+     * Finds the Pi that accepts the given login.
+     * @param marker text the Pi appends to its SSH banner (e.g. "knockly-main"), null if not set up
+     */
+    public static String getPiIP(Context context, String username, String password, String marker) {
+        PiProfile profile = new PiProfile("pi", username, password, marker);
+        return getPiIPs(context, Collections.singletonList(profile)).get(profile.role);
+    }
+
+    /**
+     * Finds every Pi in the list with one shared scan.
+     * Each host's SSH banner is read once and checked against all the profiles still missing,
+     * and the scan stops as soon as every profile has a match.
+     * Only the chosen candidate for each profile is logged into.
+     * @return the address found for each role, an empty string for any that weren't found
+     */
+    public static Map<String, String> getPiIPs(Context context, List<PiProfile> profiles) {
+        List<String> knownHosts;
+        synchronized (SSHUtils.class) {
+            // Hosts from another Wi-Fi network are no use here
+            String network = NetworkIdentity.currentKey(context);
+            if (!network.equals(cachedHostsNetwork)) {
+                cachedHosts = null;
+                cachedHostsNetwork = network;
+            }
+            knownHosts = cachedHosts == null ? new ArrayList<>() : new ArrayList<>(cachedHosts);
+        }
+
+        // Neighbours the kernel already knows about are free to get, so probe them first
+        List<String> neighbours = NeighbourTable.candidates(NeighbourTable.read());
+        Log.d(TAG, "getPiIPs() :: Neighbour table candidates = " + neighbours);
+        List<String> firstHosts = new ArrayList<>(neighbours);
+        for (String ip : knownHosts) {
+            if (!firstHosts.contains(ip)) firstHosts.add(ip);
+        }
+
+        List<String> scanCandidates = getScanCandidates(context);
+        long scanBudgetMs = scanBudgetMs(scanCandidates.size());
+        Log.d(TAG, "getPiIPs() :: " + scanCandidates.size() + " scan candidates, budget " + scanBudgetMs + " ms");
+
+        HostSource source = (timeoutMs, listener) ->
+                discoverySource(context, scanCandidates).discover(timeoutMs, new HostSource.Listener() {
+                    @Override
+                    public void onHostFound(String ip) {
+                        rememberHost(ip);
+                        listener.onHostFound(ip);
+                    }
+
+                    // Lets the sweep be skipped once the announced Pis are all identified
+                    @Override
+                    public boolean wantsMore() throws InterruptedException {
+                        return listener.wantsMore();
+                    }
+                });
+        Map<String, String> piIPs = getPiIPs(source, firstHosts, scanBudgetMs, profiles);
+
+        for (PiProfile profile : profiles) {
+            String piIP = piIPs.get(profile.role);
+            if (!piIP.isEmpty()) DiscoveryMetrics.recordPiFound(neighbours.contains(piIP));
         }
+        return piIPs;
+    }
 
+    /**
+     * The part of {@link #getPiIPs(Context, List)} that doesn't need Android, so it can be
+     * benchmarked on a plain JVM.
+     * @param source where hosts come from, each one is fingerprinted as soon as it answers
+     * @param firstHosts hosts to fingerprint straight away, before the source finds anything
+     * @param scanBudgetMs time the source is given to find hosts
+     */
+    public static Map<String, String> getPiIPs(HostSource source, List<String> firstHosts,
+                                               long scanBudgetMs, List<PiProfile> profiles) {
+        // Every host that spoke SSH, in case some Pis don't carry a marker
+        final List<String> sshHosts = new CopyOnWriteArrayList<>();
+        final Map<String, String> candidates = new HashMap<>();
+        final SshBannerFingerprinter fingerprinter =
+                new SshBannerFingerprinter(sshPort, SshBannerFingerprinter.DEFAULT_TIMEOUT_MS);
+
+        // Each host is fingerprinted as soon as it answers, finished once every role has a banner match
+        DiscoveryPipeline pipeline = new DiscoveryPipeline(source,
+                ip -> {
+                    String banner = fingerprinter.fingerprint(ip);
+                    if (banner == null) return false;
+                    Log.d(TAG, "getPiIPs() :: " + ip + " is " + banner);
+                    sshHosts.add(ip);
+
+                    synchronized (candidates) {
+                        for (PiProfile profile : profiles) {
+                            if (profile.marker != null && !candidates.containsKey(profile.role)
+                                    && SshBannerFingerprinter.matches(banner, profile.marker)) {
+                                candidates.put(profile.role, ip);
+                            }
+                        }
+                        return candidates.size() == profiles.size();
+                    }
+                });
+
+        CompletableFuture<String> search = pipeline.find(firstHosts, scanBudgetMs);
         try {
-            for (Future<String> future : futures) {
-                try {
-                    String result = future.get(1500, java.util.concurrent.TimeUnit.MILLISECONDS);
-                    if (result != null) {
-                        es.shutdownNow();
-                        return result;
+            search.get(PI_DISCOVERY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            search.cancel(true);
+        }
+
+        // Full login only against the chosen candidate for each role, all at once
+        final Map<String, String> piIPs = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> logins = new ArrayList<>();
+        synchronized (candidates) {
+            for (PiProfile profile : profiles) {
+                String candidate = candidates.get(profile.role);
+                if (candidate == null) continue;
+
+                logins.add(AppExecutors.getInstance().ssh().run(AppExecutor.Priority.NORMAL, () -> {
+                    if (canLogin(profile.username, candidate, profile.password)) {
+                        piIPs.put(profile.role, candidate);
                     }
-                } catch (Exception ignored) {}
+                }));
             }
+        }
+        try {
+            CompletableFuture.allOf(logins.toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // A failed login just leaves that role to the fallback below
+        }
+
+        // Pis without the marker set up look like any other SSH server, so log in to the rest
+        List<String> unclaimed = new ArrayList<>(sshHosts);
+        unclaimed.removeAll(piIPs.values());
+        if (piIPs.size() < profiles.size() && !unclaimed.isEmpty()) {
+            findByLogin(unclaimed, profiles, piIPs);
+        }
+
+        for (PiProfile profile : profiles) {
+            if (!piIPs.containsKey(profile.role)) piIPs.put(profile.role, "");
+        }
+        return piIPs;
+    }
+
+    // Each host is taken once, all at the same time on the ssh pool, and tried as every role still
+    // missing in turn. Returns as soon as every role has a host
+    private static void findByLogin(List<String> hosts, List<PiProfile> profiles, Map<String, String> piIPs) {
+        final CompletableFuture<Void> allFound = new CompletableFuture<>();
+        List<CompletableFuture<Void>> logins = new ArrayList<>();
+        for (String ip : hosts) {
+            logins.add(AppExecutors.getInstance().ssh().run(AppExecutor.Priority.NORMAL, () -> {
+                for (PiProfile profile : profiles) {
+                    if (allFound.isDone()) return;
+                    if (piIPs.containsKey(profile.role) || !canLogin(profile.username, ip, profile.password)) continue;
+                    // Another host may have been logged in to as this role meanwhile
+                    if (piIPs.putIfAbsent(profile.role, ip) == null) {
+                        if (piIPs.size() == profiles.size()) allFound.complete(null);
+                        return;
+                    }
+                }
+            }));
+        }
+        try {
+            CompletableFuture.anyOf(allFound, CompletableFuture.allOf(logins.toArray(new CompletableFuture<?>[0]))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // A failed login just leaves that host out
         } finally {
-            es.shutdownNow();
+            for (CompletableFuture<Void> login : logins) {
+                login.cancel(true);
+            }
         }
+    }
 
-        return "";
+    // Cheap check that a remembered Pi is still there, only reads the SSH banner
+    public static boolean hostIsReachable(String host) {
+        return !host.isBlank()
+                && new SshBannerFingerprinter(sshPort, HOST_CHECK_TIMEOUT_MS).fingerprint(host) != null;
     }
 
-    public static Session startSSH(String username, String host, String password) {
-        try{
-            JSch jsch = new JSch();
-            Session session = jsch.getSession(username, host, 22);
-            session.setPassword(password);
+    private static boolean canLogin(String username, String host, String password) {
+        Session session = startSSH(username, host, password);
+        if (session != null && session.isConnected()) {
+            session.disconnect();
+            Log.d(TAG, "canLogin() :: SSH successful on " + host);
+            return true;
+        }
+        return false;
+    }
 
-            Properties prop = new Properties();
-            prop.put("StrictHostKeyChecking", "no");
-            session.setConfig(prop);
+    // Keep every host the scan has seen so the next lookup can try them first
+    private static synchronized void rememberHost(String ip) {
+        if (cachedHosts == null) cachedHosts = new ArrayList<>();
+        if (!cachedHosts.contains(ip)) cachedHosts.add(ip);
+    }
 
-            session.connect();
+    public static Session startSSH(String username, String host, String password) {
+        try{
+            Session session = SshConnector.getInstance().newSession(username, host, sshPort, password);
+            SshConnector.getInstance().connect(session, LOGIN_TIMEOUT_MS);
 
-            System.out.println("SSH session to "+username+" established");
+            Log.d(TAG, "startSSH() :: SSH session to " + username + "@" + host + " established");
 
             return session;
         } catch (JSchException e) {
@@ -176,46 +379,47 @@ public class SSHUtils {
         }
     }
 
+    /**
+     * Runs the command and waits for it to finish, see {@link SshExec} to run it in the background.
+     * @return the command's exit status, -1 if it couldn't be run or timed out
+     */
     public static int execSSHCmd(String cmd, Session session) {
-        try{
-            Channel channel = session.openChannel("exec");
-            ((ChannelExec)channel).setCommand(cmd);
-            channel.setInputStream(null);
-            ((ChannelExec)channel).setErrStream(System.err);
-            channel.setOutputStream(System.out);
-
-            InputStream in=channel.getInputStream();
-            StringBuilder output = new StringBuilder();
-            int exitStatus;
-
-            channel.connect();
-            while (true) {
-                for (int c; ((c = in.read()) >= 0);) {
-                    output.append((char) c);
-                }
-                System.out.println(output);
-
-                if (channel.isClosed()) {
-                    if (in.available() > 0) continue;
-                    exitStatus = channel.getExitStatus();
-                    System.out.println("EXIT STATUS: "+exitStatus);
-                    break;
-                }
-            }
-            channel.disconnect();
-
-            System.out.println("CMD:\n"+cmd+"\nSTATUS COMPLETE");
-            return 200;
-        } catch (JSchException | IOException e) {
-            System.out.println(e.getMessage());
+        try {
+            SshExec.Result result = SshExec.exec(session, cmd).get();
+            Log.d(TAG, "execSSHCmd() :: " + cmd.trim() + " exited with " + result.exitStatus);
+            return result.exitStatus;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return -1;
+        } catch (ExecutionException e) {
+            Log.d(TAG, "execSSHCmd() :: " + e.getCause().getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the commands together over one channel and waits for them all, see {@link SshExec#execBatch}.
+     * @return each command's exit status and output in order, every status -1 if the batch
+     *         couldn't be run or timed out
+     */
+    public static List<SshExec.Result> execSSHCmds(List<String> cmds, Session session) {
+        try {
+            List<SshExec.Result> results = SshExec.execBatch(session, cmds).get();
+            Log.d(TAG, "execSSHCmds() :: " + cmds.size() + " commands ran in one batch");
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SshExec.failedBatch(cmds.size());
+        } catch (ExecutionException e) {
+            Log.d(TAG, "execSSHCmds() :: " + e.getCause().getMessage());
+            return SshExec.failedBatch(cmds.size());
         }
     }
 
     public static void stopSSH(Session sshSession) {
         if (sshSession != null && sshSession.isConnected()) {
             sshSession.disconnect();
-            System.out.println("SSH session disconnected.");
+            Log.d(TAG, "stopSSH() :: SSH session disconnected");
         }
     }
 
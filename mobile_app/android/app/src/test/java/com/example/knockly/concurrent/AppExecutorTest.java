@@ -0,0 +1,116 @@
+package com.example.knockly.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AppExecutorTest {
+
+    private final AppExecutor pool = new AppExecutor("test", 1);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Keeps the only thread busy until released, so the tasks behind it queue up
+    private CountDownLatch blockPool() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    public void execute_runsHighestPriorityFirstThenInOrder() throws Exception {
+        CountDownLatch release = blockPool();
+        List<String> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        for (String name : new String[]{"low", "normal1", "high1", "normal2", "high2"}) {
+            AppExecutor.Priority priority = name.startsWith("high") ? AppExecutor.Priority.HIGH
+                    : name.startsWith("low") ? AppExecutor.Priority.LOW : AppExecutor.Priority.NORMAL;
+            pool.execute(priority, () -> {
+                synchronized (order) {
+                    order.add(name);
+                }
+                done.countDown();
+            });
+        }
+
+        assertEquals(5, pool.getPeakQueueDepth());
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("high1", "high2", "normal1", "normal2", "low"), order);
+    }
+
+    @Test
+    public void supply_cancelInterruptsRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Void> task = pool.run(AppExecutor.Priority.NORMAL, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        task.cancel(true);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void supply_cancelledBeforeStartingNeverRuns() throws Exception {
+        CountDownLatch release = blockPool();
+        List<String> ran = new ArrayList<>();
+        CompletableFuture<String> task = pool.supply(AppExecutor.Priority.NORMAL, () -> {
+            ran.add("task");
+            return "task";
+        });
+
+        task.cancel(true);
+        release.countDown();
+        // Anything queued after it has run by now
+        pool.supply(AppExecutor.Priority.LOW, () -> null).get(1, TimeUnit.SECONDS);
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void threads_stayWithinLimit() throws Exception {
+        AppExecutor wide = new AppExecutor("wide", 3);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(wide.run(AppExecutor.Priority.NORMAL, () -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, wide.getLargestPoolSize());
+        assertTrue(wide.getPeakQueueDepth() > 0);
+        wide.shutdownNow();
+    }
+}
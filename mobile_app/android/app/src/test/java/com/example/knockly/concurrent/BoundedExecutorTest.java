@@ -0,0 +1,107 @@
+package com.example.knockly.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BoundedExecutorTest {
+
+    private final AppExecutor pool = new AppExecutor("test", 8);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void execute_neverRunsMoreThanLimit() throws Exception {
+        BoundedExecutor bounded = new BoundedExecutor(pool, AppExecutor.Priority.NORMAL, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            bounded.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    public void serial_runsInOrder() throws Exception {
+        BoundedExecutor serial = BoundedExecutor.serial(pool, AppExecutor.Priority.NORMAL);
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            final int task = i;
+            serial.execute(() -> {
+                order.add(task);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void shutdown_runsGivenTasksButRejectsNewOnes() throws Exception {
+        BoundedExecutor serial = BoundedExecutor.serial(pool, AppExecutor.Priority.NORMAL);
+        CompletableFuture<Void> ran = new CompletableFuture<>();
+        serial.execute(() -> ran.complete(null));
+        serial.shutdown();
+
+        ran.get(1, TimeUnit.SECONDS);
+        try {
+            serial.execute(() -> {});
+            fail("Should reject after shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void shutdownNow_interruptsRunningAndDropsWaiting() throws Exception {
+        BoundedExecutor serial = BoundedExecutor.serial(pool, AppExecutor.Priority.NORMAL);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger waitingRan = new AtomicInteger();
+        serial.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        serial.execute(waitingRan::incrementAndGet);
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        serial.shutdownNow();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(0, waitingRan.get());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.knockly.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TaskScopeTest {
+
+    private final AppExecutor pool = new AppExecutor("test", 2);
+    private final TaskScope scope = new TaskScope();
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void cancel_interruptsRunningTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Void> task = scope.run(pool, AppExecutor.Priority.NORMAL, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertEquals(1, scope.getActiveCount());
+        scope.cancel();
+
+        assertTrue(task.isCancelled());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel_cancelsTrackedFutures() {
+        CompletableFuture<String> elsewhere = scope.track(new CompletableFuture<>());
+        scope.cancel();
+
+        assertTrue(elsewhere.isCancelled());
+    }
+
+    @Test
+    public void afterCancel_newTasksNeverRun() throws Exception {
+        scope.cancel();
+        CountDownLatch ran = new CountDownLatch(1);
+        CompletableFuture<Void> task = scope.run(pool, AppExecutor.Priority.NORMAL, ran::countDown);
+
+        assertTrue(task.isCancelled());
+        assertTrue(scope.track(new CompletableFuture<>()).isCancelled());
+        assertTrue(!ran.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void finishedTasksAreForgotten() throws Exception {
+        scope.supply(pool, AppExecutor.Priority.NORMAL, () -> "done").get(1, TimeUnit.SECONDS);
+
+        // Forgotten by a callback that can run just after get() returns
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (scope.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, scope.getActiveCount());
+    }
+}
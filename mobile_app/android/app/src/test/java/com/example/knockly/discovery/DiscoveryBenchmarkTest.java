@@ -0,0 +1,282 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.knockly.utils.SSHUtils;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times whole Pi lookups against a {@link SimulatedSubnet} with real SSH servers behind it.
+ * Each strategy reports time to the first Pi login, total time, and the peak number of threads
+ * and sockets it had open, so a heavier discovery shows up as a failing build and a slower one in the report.
+ * New discovery strategies can be added as another {@link Strategy} and compared in the report.
+ */
+public class DiscoveryBenchmarkTest {
+
+    private static final String MAIN_PI = "127.0.0.42";
+    private static final String FEED_PI = "127.0.0.200";
+    private static final List<String> OTHER_SSH_HOSTS = Arrays.asList("127.0.0.7", "127.0.0.120");
+    private static final long PI_LATENCY_MS = 40;
+    private static final long OTHER_LATENCY_MS = 10;
+
+    private static final List<PiProfile> PROFILES = Arrays.asList(
+            new PiProfile("main", "admin", "admin", "knockly-main"),
+            new PiProfile("feed", "pi", "raspberry", "knockly-feed"));
+
+    // Runs a whole lookup for every profile, returns the address found for each role
+    interface Strategy {
+        Map<String, String> find(SimulatedSubnet subnet, List<PiProfile> profiles);
+    }
+
+    private SimulatedSubnet subnet;
+    private int originalSshPort;
+
+    @Before
+    public void startSubnet() {
+        subnet = new SimulatedSubnet()
+                .addPi(MAIN_PI, "knockly-main", "admin", "admin", PI_LATENCY_MS)
+                .addPi(FEED_PI, "knockly-feed", "pi", "raspberry", PI_LATENCY_MS);
+        for (String ip : OTHER_SSH_HOSTS) {
+            subnet.addSshHost(ip, OTHER_LATENCY_MS);
+        }
+
+        try {
+            subnet.start();
+        } catch (IOException e) {
+            // Loopback aliases are not routed on every OS (e.g. macOS)
+            Assume.assumeNoException(e);
+        }
+
+        originalSshPort = SSHUtils.sshPort;
+        SSHUtils.sshPort = subnet.getPort();
+    }
+
+    @After
+    public void stopSubnet() throws IOException {
+        SSHUtils.sshPort = originalSshPort;
+        if (subnet != null) subnet.stop();
+    }
+
+    // What the app does when nothing is cached: selector sweep straight into banner checks
+    private static final Strategy SELECTOR_SWEEP = (subnet, profiles) -> SSHUtils.getPiIPs(
+            new SelectorSubnetScanner(SelectorSubnetScanner.subnetCandidates("127.0.0"), subnet.getPort(),
+                    SelectorSubnetScanner.DEFAULT_CONNECT_TIMEOUT_MS,
+                    SelectorSubnetScanner.DEFAULT_MAX_CONNECTS_PER_SECOND, null),
+            Collections.<String>emptyList(), 3000, profiles);
+
+    // The same lookup when the neighbour table or the cache already holds the Pis
+    private static final Strategy KNOWN_HOSTS = (subnet, profiles) -> SSHUtils.getPiIPs(
+            new SelectorSubnetScanner(SelectorSubnetScanner.subnetCandidates("127.0.0"), subnet.getPort(),
+                    SelectorSubnetScanner.DEFAULT_CONNECT_TIMEOUT_MS,
+                    SelectorSubnetScanner.DEFAULT_MAX_CONNECTS_PER_SECOND, null),
+            Arrays.asList(MAIN_PI, FEED_PI), 3000, profiles);
+
+    // The original thread pool ping sweep feeding the same banner checks, for comparison
+    private static final Strategy PING_SWEEP = (subnet, profiles) -> SSHUtils.getPiIPs(
+            (timeoutMs, listener) -> {
+                for (String ip : new PingSweep("127.0.0").resolve(timeoutMs)) {
+                    listener.onHostFound(ip);
+                }
+            },
+            Collections.<String>emptyList(), 3000, profiles);
+
+    @Test
+    public void selectorSweep_findsBothPis() {
+        Result result = run("Selector sweep", SELECTOR_SWEEP);
+
+        assertEquals(MAIN_PI, result.piIPs.get("main"));
+        assertEquals(FEED_PI, result.piIPs.get("feed"));
+        // Source thread, identification pool and the two logins
+        assertTrue("Peak of " + result.peakThreads + " threads", result.peakThreads <= 16);
+    }
+
+    @Test
+    public void knownHosts_skipTheSweep() {
+        Result result = run("Known hosts", KNOWN_HOSTS);
+
+        assertEquals(MAIN_PI, result.piIPs.get("main"));
+        assertEquals(FEED_PI, result.piIPs.get("feed"));
+        // At most a scan and a banner check per host plus the two logins, no logins onto other hosts
+        assertTrue("Made " + result.connections + " connections", result.connections <= 10);
+    }
+
+    @Test
+    public void unmarkedPis_eachHostLoggedInToOnceAtMost() throws IOException {
+        // The Pis in use today, set up before the banner marker
+        subnet.stop();
+        subnet = new SimulatedSubnet()
+                .addPi(MAIN_PI, null, "admin", "admin", PI_LATENCY_MS)
+                .addPi(FEED_PI, null, "pi", "raspberry", PI_LATENCY_MS);
+        for (String ip : OTHER_SSH_HOSTS) {
+            subnet.addSshHost(ip, OTHER_LATENCY_MS);
+        }
+        subnet.start();
+        SSHUtils.sshPort = subnet.getPort();
+
+        Result result = run("Unmarked Pis", SELECTOR_SWEEP);
+
+        assertEquals(MAIN_PI, result.piIPs.get("main"));
+        assertEquals(FEED_PI, result.piIPs.get("feed"));
+        // A scan and a banner check per host, then each host tried as each profile at most once
+        int hosts = 2 + OTHER_SSH_HOSTS.size();
+        assertTrue("Made " + result.connections + " connections",
+                result.connections <= hosts * (2 + PROFILES.size()));
+    }
+
+    @Test
+    public void benchmark_report() {
+        List<Result> results = Arrays.asList(
+                run("Selector sweep", SELECTOR_SWEEP),
+                run("Known hosts", KNOWN_HOSTS),
+                run("Ping sweep", PING_SWEEP));
+
+        System.out.println(String.format("%-16s %10s %10s %8s %8s %12s",
+                "Strategy", "First Pi", "Total", "Threads", "Sockets", "Connections"));
+        for (Result result : results) {
+            System.out.println(result);
+        }
+
+        for (Result result : results) {
+            assertEquals(result.name, MAIN_PI, result.piIPs.get("main"));
+            assertEquals(result.name, FEED_PI, result.piIPs.get("feed"));
+        }
+        // Compared with each other on the same machine rather than with fixed limits
+        Result sweep = results.get(0);
+        Result known = results.get(1);
+        assertTrue(known.name + " took " + known.totalMs + " ms, " + sweep.name + " " + sweep.totalMs + " ms",
+                known.totalMs < sweep.totalMs);
+        assertTrue(known.name + " made " + known.connections + " connections, " + sweep.name + " " + sweep.connections,
+                known.connections < sweep.connections);
+    }
+
+    private Result run(String name, Strategy strategy) {
+        subnet.resetCounters();
+        Sampler sampler = new Sampler(subnet.getPort());
+        sampler.start();
+
+        long start = System.nanoTime();
+        Map<String, String> piIPs = strategy.find(subnet, PROFILES);
+        long end = System.nanoTime();
+        sampler.finish();
+
+        long firstLogin = subnet.getFirstLoginNanos();
+        return new Result(name, piIPs,
+                firstLogin == 0 ? -1 : (firstLogin - start) / 1_000_000,
+                (end - start) / 1_000_000,
+                sampler.peakThreads, sampler.peakSockets, subnet.getAcceptedConnections());
+    }
+
+    private static class Result {
+        final String name;
+        final Map<String, String> piIPs;
+        final long firstPiMs;
+        final long totalMs;
+        final int peakThreads;
+        final int peakSockets;
+        final int connections;
+
+        Result(String name, Map<String, String> piIPs, long firstPiMs, long totalMs,
+               int peakThreads, int peakSockets, int connections) {
+            this.name = name;
+            this.piIPs = piIPs;
+            this.firstPiMs = firstPiMs;
+            this.totalMs = totalMs;
+            this.peakThreads = peakThreads;
+            this.peakSockets = peakSockets;
+            this.connections = connections;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %7d ms %7d ms %8d %8d %12d",
+                    name, firstPiMs, totalMs, peakThreads, peakSockets, connections);
+        }
+    }
+
+    /**
+     * Polls the threads and sockets the lookup has open, leaving out the simulation's own.
+     * Sockets are the client ends of connections to the simulated port, read from /proc/net.
+     */
+    private static class Sampler extends Thread {
+        private final int port;
+        private final int baselineThreads;
+        private volatile boolean running = true;
+        volatile int peakThreads;
+        volatile int peakSockets;
+
+        Sampler(int port) {
+            super(SimulatedSubnet.THREAD_PREFIX + "sampler");
+            this.port = port;
+            this.baselineThreads = lookupThreads();
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void finish() {
+            running = false;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+        }
+
+        private void sample() {
+            peakThreads = Math.max(peakThreads, lookupThreads() - baselineThreads);
+            peakSockets = Math.max(peakSockets, clientSockets("/proc/net/tcp") + clientSockets("/proc/net/tcp6"));
+        }
+
+        // Everything but the simulation and its SSH servers
+        private static int lookupThreads() {
+            int count = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                String name = thread.getName();
+                if (!name.startsWith(SimulatedSubnet.THREAD_PREFIX) && !name.startsWith("sshd-")) count++;
+            }
+            return count;
+        }
+
+        // Open sockets whose remote end is the simulated port, i.e. made by the lookup
+        private int clientSockets(String table) {
+            int count = 0;
+            try (BufferedReader reader = new BufferedReader(new FileReader(table))) {
+                reader.readLine();
+                for (String line; (line = reader.readLine()) != null; ) {
+                    String[] fields = line.trim().split("\\s+");
+                    String remote = fields[2];
+                    int remotePort = Integer.parseInt(remote.substring(remote.indexOf(':') + 1), 16);
+                    // Connections the lookup already closed linger in TIME_WAIT (06)
+                    if (remotePort == port && !"06".equals(fields[3])) count++;
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // Not on Linux, sockets just aren't counted
+            }
+            return count;
+        }
+    }
+}
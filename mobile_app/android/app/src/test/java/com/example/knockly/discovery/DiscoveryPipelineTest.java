@@ -0,0 +1,98 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DiscoveryPipelineTest {
+
+    // Answers with one host every delayMs, like a slow sweep
+    private static class SlowSource implements HostSource {
+        final List<String> hosts;
+        final long delayMs;
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicInteger reported = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        SlowSource(List<String> hosts, long delayMs) {
+            this.hosts = hosts;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void discover(long timeoutMs, Listener listener) {
+            try {
+                for (String ip : hosts) {
+                    Thread.sleep(delayMs);
+                    reported.incrementAndGet();
+                    listener.onHostFound(ip);
+                }
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void firstIdentifiedHost_completesBeforeScanFinishes() throws Exception {
+        SlowSource source = new SlowSource(
+                Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4", "10.0.0.5"), 200);
+
+        String ip = new DiscoveryPipeline(source, host -> host.equals("10.0.0.2"))
+                .find(null, 5000).get(5, TimeUnit.SECONDS);
+        int reportedByThen = source.reported.get();
+
+        assertEquals("10.0.0.2", ip);
+        // The Pi is the second host, the rest of the scan hadn't come in yet
+        assertTrue("Scan had reported " + reportedByThen + " hosts", reportedByThen < 5);
+        assertTrue(source.finished.await(1, TimeUnit.SECONDS));
+        assertTrue(source.interrupted.get());
+    }
+
+    @Test
+    public void knownHosts_identifiedWithoutWaitingForScan() throws Exception {
+        SlowSource source = new SlowSource(Collections.singletonList("10.0.0.9"), 2000);
+
+        String ip = new DiscoveryPipeline(source, host -> host.equals("10.0.0.7"))
+                .find(Collections.singletonList("10.0.0.7"), 5000).get(1, TimeUnit.SECONDS);
+
+        assertEquals("10.0.0.7", ip);
+    }
+
+    @Test
+    public void eachHostIdentifiedOnce() throws Exception {
+        AtomicInteger identifications = new AtomicInteger();
+        SlowSource source = new SlowSource(Arrays.asList("10.0.0.1", "10.0.0.1", "10.0.0.2"), 10);
+
+        String ip = new DiscoveryPipeline(source, host -> {
+            identifications.incrementAndGet();
+            return false;
+        }).find(Collections.singletonList("10.0.0.2"), 5000).get(5, TimeUnit.SECONDS);
+
+        assertNull(ip);
+        assertEquals(2, identifications.get());
+    }
+
+    @Test
+    public void noPi_completesWithNull() throws Exception {
+        SlowSource source = new SlowSource(Arrays.asList("10.0.0.1", "10.0.0.2"), 10);
+
+        String ip = new DiscoveryPipeline(source, host -> {
+            throw new Exception("Auth fail");
+        }).find(null, 5000).get(5, TimeUnit.SECONDS);
+
+        assertNull(ip);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the service discovery / sweep fallback order.
+ * The time each path takes is compared in {@link DiscoveryBenchmarkTest}.
+ */
+public class FallbackHostResolverTest {
+
+    // Stands in for a resolver, answers with fixed hosts after a fixed delay
+    private static class FakeResolver implements HostResolver {
+        final List<String> hosts;
+        final long delayMs;
+        int calls = 0;
+
+        FakeResolver(List<String> hosts, long delayMs) {
+            this.hosts = hosts;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public List<String> resolve(long timeoutMs) {
+            calls++;
+            try {
+                Thread.sleep(Math.min(delayMs, timeoutMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(hosts);
+        }
+    }
+
+    @Test
+    public void primaryAnswer_skipsFallback() {
+        FakeResolver nsd = new FakeResolver(Collections.singletonList("192.168.0.18"), 0);
+        FakeResolver sweep = new FakeResolver(Collections.singletonList("192.168.0.99"), 0);
+
+        List<String> hosts = new FallbackHostResolver(nsd, sweep).resolve(1500);
+
+        assertEquals(Collections.singletonList("192.168.0.18"), hosts);
+        assertEquals(0, sweep.calls);
+    }
+
+    @Test
+    public void noPrimaryAnswer_usesFallback() {
+        FakeResolver nsd = new FakeResolver(Collections.<String>emptyList(), 0);
+        FakeResolver sweep = new FakeResolver(Collections.singletonList("192.168.0.99"), 0);
+
+        List<String> hosts = new FallbackHostResolver(nsd, sweep).resolve(1500);
+
+        assertEquals(Collections.singletonList("192.168.0.99"), hosts);
+        assertEquals(1, nsd.calls);
+        assertEquals(1, sweep.calls);
+    }
+
+    @Test
+    public void discover_announcedPiIdentified_skipsFallback() throws Exception {
+        FakeResolver nsd = new FakeResolver(Collections.singletonList("192.168.0.18"), 0);
+        FakeResolver sweep = new FakeResolver(Collections.singletonList("192.168.0.99"), 0);
+
+        String ip = new DiscoveryPipeline(new FallbackHostResolver(nsd, sweep), host -> host.equals("192.168.0.18"))
+                .find(null, 1500).get(5, TimeUnit.SECONDS);
+
+        assertEquals("192.168.0.18", ip);
+        assertEquals(0, sweep.calls);
+    }
+
+    @Test
+    public void discover_announcedHostsNotEnough_sweepsForTheRest() throws Exception {
+        // Something else on the network announces itself, the Pi doesn't
+        FakeResolver nsd = new FakeResolver(Collections.singletonList("192.168.0.18"), 0);
+        FakeResolver sweep = new FakeResolver(Arrays.asList("192.168.0.18", "192.168.0.99"), 0);
+
+        String ip = new DiscoveryPipeline(new FallbackHostResolver(nsd, sweep), host -> host.equals("192.168.0.99"))
+                .find(null, 1500).get(5, TimeUnit.SECONDS);
+
+        assertEquals("192.168.0.99", ip);
+        assertEquals(1, sweep.calls);
+    }
+
+    @Test
+    public void discover_nothingIdentifiedAnywhere_endsWithNull() throws Exception {
+        FakeResolver nsd = new FakeResolver(Collections.singletonList("192.168.0.18"), 0);
+        FakeResolver sweep = new FakeResolver(Collections.singletonList("192.168.0.99"), 0);
+
+        String ip = new DiscoveryPipeline(new FallbackHostResolver(nsd, sweep), host -> false)
+                .find(null, 1500).get(5, TimeUnit.SECONDS);
+
+        assertNull(ip);
+        assertEquals(1, sweep.calls);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+public class NeighbourTableTest {
+
+    @Test
+    public void parsesProcNetArp() throws IOException {
+        String table =
+                "IP address       HW type     Flags       HW address            Mask     Device\n" +
+                "192.168.0.1      0x1         0x2         a0:b1:c2:d3:e4:f5     *        wlan0\n" +
+                "192.168.0.18     0x1         0x2         B8:27:EB:12:34:56     *        wlan0\n" +
+                "192.168.0.40     0x1         0x0         00:00:00:00:00:00     *        wlan0\n";
+
+        List<NeighbourTable.Entry> entries = NeighbourTable.parse(new StringReader(table));
+
+        assertEquals(Arrays.asList("192.168.0.18", "192.168.0.1"), NeighbourTable.candidates(entries));
+        assertEquals("b8:27:eb:12:34:56", entries.get(0).mac);
+        assertTrue(entries.get(0).isRaspberryPi());
+        assertFalse(entries.get(1).isRaspberryPi());
+    }
+
+    @Test
+    public void parsesIpNeigh() throws IOException {
+        String table =
+                "192.168.0.1 dev wlan0 lladdr a0:b1:c2:d3:e4:f5 REACHABLE\n" +
+                "192.168.0.25 dev wlan0 lladdr dc:a6:32:00:11:22 STALE\n" +
+                "192.168.0.30 dev wlan0 FAILED\n" +
+                "192.168.0.31 dev wlan0 lladdr 11:22:33:44:55:66 INCOMPLETE\n" +
+                "fe80::1 dev wlan0 lladdr a0:b1:c2:d3:e4:f5 router STALE\n";
+
+        List<NeighbourTable.Entry> entries = NeighbourTable.parse(new StringReader(table));
+
+        assertEquals(Arrays.asList("192.168.0.25", "192.168.0.1"), NeighbourTable.candidates(entries));
+    }
+
+    @Test
+    public void ignoresGarbage() throws IOException {
+        String table = "\nsomething unexpected\n300.1.1.1 0x1 0x2 b8:27:eb:00:00:01 * wlan0\n";
+
+        assertTrue(NeighbourTable.parse(new StringReader(table)).isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NetworkIdentityTest {
+
+    private static final String BSSID = "aa:bb:cc:dd:ee:ff";
+    private static final String HIDDEN_BSSID = "02:00:00:00:00:00";
+
+    @Test
+    public void keyFor_usesSsidAndGateway() {
+        assertEquals("ssid:Home|gateway:192.168.0.1",
+                NetworkIdentity.keyFor("\"Home\"", "192.168.0.1", "192.168.0", BSSID));
+    }
+
+    @Test
+    public void keyFor_sameNetworkOnAnotherAccessPointKeepsItsKey() {
+        assertEquals(NetworkIdentity.keyFor("\"Home\"", "192.168.0.1", "192.168.0", BSSID),
+                NetworkIdentity.keyFor("\"Home\"", "192.168.0.1", "192.168.0", "11:22:33:44:55:66"));
+    }
+
+    @Test
+    public void keyFor_subnetStandsInForMissingGateway() {
+        assertEquals("ssid:Home|subnet:192.168.0", NetworkIdentity.keyFor("\"Home\"", null, "192.168.0", BSSID));
+    }
+
+    @Test
+    public void keyFor_hiddenSsidLeavesAddressOnly() {
+        assertEquals("gateway:192.168.0.1",
+                NetworkIdentity.keyFor("<unknown ssid>", "192.168.0.1", "192.168.0", HIDDEN_BSSID));
+    }
+
+    @Test
+    public void keyFor_bssidOnlyWhenNoAddressIsKnown() {
+        assertEquals("bssid:" + BSSID, NetworkIdentity.keyFor("\"Home\"", null, null, BSSID));
+        assertEquals("unknown", NetworkIdentity.keyFor(null, null, null, HIDDEN_BSSID));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.knockly.discovery;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The app's original host sweep, kept as it was for the benchmarks to compare against.
+ * Every address in a /24 is pinged, or failing that connected to on port 80, from a pool of its own
+ * 128 threads. Each address has its own timeout, so the one passed to {@link #resolve(long)} is ignored.
+ */
+class PingSweep implements HostResolver {
+
+    private final String subnetIP;
+
+    // subnetIP is the first three octets, e.g. "192.168.0"
+    PingSweep(String subnetIP) {
+        this.subnetIP = subnetIP;
+    }
+
+    @Override
+    public List<String> resolve(long timeoutMs) {
+        final ExecutorService es = Executors.newFixedThreadPool(128);
+        final List<Future<String>> futures = new ArrayList<>();
+        final List<String> hosts = new ArrayList<>();
+        final int timeout = 300;
+
+        for (int i = 1; i < 255; i++) {
+            String ip = subnetIP + "." + i;
+            futures.add(es.submit(() -> {
+                try {
+                    if (InetAddress.getByName(ip).isReachable(timeout) || isReachable(ip, 80, timeout)) {
+                        return ip;
+                    }
+                } catch (Exception ignored) {}
+                return null;
+            }));
+        }
+
+        for (Future<String> future : futures) {
+            try {
+                String result = future.get();
+                if (result != null) {
+                    hosts.add(result);
+                }
+            } catch (Exception ignored) {}
+        }
+
+        es.shutdown();
+        return hosts;
+    }
+
+    private static boolean isReachable(String ip, int port, int timeout) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(ip, port), timeout);
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.knockly.discovery;
+
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pretend LAN on the loopback aliases 127.0.0.x, which Linux routes without any setup.
+ * Every host listens on the same port. Behind each one is an embedded SSH server standing in
+ * for a Pi or some other SSH box, and connections are held for the host's latency before the
+ * server is reached. Addresses without a host refuse connections, like a LAN host with SSH closed.
+ */
+class SimulatedSubnet {
+
+    // Threads the simulation runs on, so benchmarks can leave them out of their counts
+    static final String THREAD_PREFIX = "simulated-subnet-";
+
+    private static class Host {
+        final String ip;
+        final String identification;
+        final String username;
+        final String password;
+        final long latencyMs;
+
+        Host(String ip, String identification, String username, String password, long latencyMs) {
+            this.ip = ip;
+            this.identification = identification;
+            this.username = username;
+            this.password = password;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    private final List<Host> hosts = new ArrayList<>();
+    // One SSH server per distinct banner and login, shared by every host that uses it
+    private final Map<String, SshServer> servers = new LinkedHashMap<>();
+    private final List<ServerSocket> listeners = new ArrayList<>();
+    private final List<Socket> connections = new ArrayList<>();
+    private final AtomicLong firstLoginNanos = new AtomicLong();
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+    private volatile boolean running;
+    private int port;
+
+    /** A Pi whose SSH banner carries the marker, e.g. "knockly-main", null for no marker. */
+    SimulatedSubnet addPi(String ip, String marker, String username, String password, long latencyMs) {
+        String identification = "OpenSSH_9.2p1 Raspbian-2" + (marker == null ? "" : " " + marker);
+        hosts.add(new Host(ip, identification, username, password, latencyMs));
+        return this;
+    }
+
+    /** Some other SSH server on the network (a NAS, a laptop) that won't let the Pi logins in. */
+    SimulatedSubnet addSshHost(String ip, long latencyMs) {
+        hosts.add(new Host(ip, "OpenSSH_9.6", null, null, latencyMs));
+        return this;
+    }
+
+    SimulatedSubnet start() throws IOException {
+        running = true;
+        for (Host host : hosts) {
+            SshServer server = serverFor(host);
+
+            ServerSocket listener = new ServerSocket();
+            listener.bind(new InetSocketAddress(host.ip, port));
+            port = listener.getLocalPort();
+            listeners.add(listener);
+
+            startThread("accept-" + host.ip, () -> acceptLoop(listener, host, server.getPort()));
+        }
+        return this;
+    }
+
+    void stop() throws IOException {
+        running = false;
+        for (ServerSocket listener : listeners) {
+            listener.close();
+        }
+        synchronized (connections) {
+            for (Socket connection : connections) {
+                IoUtils.closeQuietly(connection);
+            }
+        }
+        for (SshServer server : servers.values()) {
+            server.stop(true);
+        }
+    }
+
+    /** Port every simulated host listens on. */
+    int getPort() {
+        return port;
+    }
+
+    /** When the first login onto a Pi was accepted, 0 if none has been yet. */
+    long getFirstLoginNanos() {
+        return firstLoginNanos.get();
+    }
+
+    /** Connections made to any simulated host. */
+    int getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    void resetCounters() {
+        firstLoginNanos.set(0);
+        acceptedConnections.set(0);
+    }
+
+    private SshServer serverFor(Host host) throws IOException {
+        String key = host.identification + "|" + host.username + "|" + host.password;
+        SshServer server = servers.get(key);
+        if (server != null) return server;
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        CoreModuleProperties.SERVER_IDENTIFICATION.set(server, host.identification);
+        server.setPasswordAuthenticator((username, password, session) -> {
+            boolean accepted = host.username != null
+                    && host.username.equals(username) && host.password.equals(password);
+            if (accepted) firstLoginNanos.compareAndSet(0, System.nanoTime());
+            return accepted;
+        });
+        server.start();
+
+        servers.put(key, server);
+        return server;
+    }
+
+    private void acceptLoop(ServerSocket listener, Host host, int serverPort) {
+        while (running) {
+            Socket client;
+            try {
+                client = listener.accept();
+            } catch (IOException e) {
+                return;
+            }
+            track(client);
+            acceptedConnections.incrementAndGet();
+
+            startThread("relay-" + host.ip, () -> {
+                try {
+                    Thread.sleep(host.latencyMs);
+                    Socket server = new Socket("127.0.0.1", serverPort);
+                    track(server);
+                    startThread("pipe-" + host.ip, () -> pipe(server, client));
+                    pipe(client, server);
+                } catch (IOException | InterruptedException e) {
+                    IoUtils.closeQuietly(client);
+                }
+            });
+        }
+    }
+
+    private void track(Socket socket) {
+        synchronized (connections) {
+            connections.add(socket);
+        }
+    }
+
+    // Copies one direction of a connection, closing both ends once either side hangs up
+    private static void pipe(Socket from, Socket to) {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                out.write(buffer, 0, n);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            IoUtils.closeQuietly(from, to);
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, THREAD_PREFIX + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class SshBannerFingerprinterTest {
+
+    private ServerSocket server;
+
+    // Accepts one connection on loopback and writes the given text to it
+    private int serve(String text) throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                OutputStream out = socket.getOutputStream();
+                out.write(text.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                socket.getInputStream().read();
+            } catch (IOException ignored) {}
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        if (server != null) server.close();
+    }
+
+    @Test
+    public void readsIdentificationLine() throws IOException {
+        int port = serve("SSH-2.0-OpenSSH_9.2p1 Debian-2+deb12u3 knockly-main\r\n");
+
+        String banner = new SshBannerFingerprinter(port, 1000).fingerprint("127.0.0.1");
+
+        assertEquals("SSH-2.0-OpenSSH_9.2p1 Debian-2+deb12u3 knockly-main", banner);
+    }
+
+    @Test
+    public void skipsLinesBeforeIdentification() throws IOException {
+        int port = serve("Authorised users only\r\n\r\nSSH-2.0-dropbear_2022.83\r\n");
+
+        String banner = new SshBannerFingerprinter(port, 1000).fingerprint("127.0.0.1");
+
+        assertEquals("SSH-2.0-dropbear_2022.83", banner);
+    }
+
+    @Test
+    public void nonSshServer_returnsNull() throws IOException {
+        int port = serve("HTTP/1.1 400 Bad Request\r\n\r\n");
+
+        assertNull(new SshBannerFingerprinter(port, 1000).fingerprint("127.0.0.1"));
+    }
+
+    @Test
+    public void silentServer_timesOut() throws IOException {
+        int port = serve("");
+
+        assertNull(new SshBannerFingerprinter(port, 200).fingerprint("127.0.0.1"));
+    }
+
+    @Test
+    public void matches_checksMarkerAsWholeWord() {
+        String banner = "SSH-2.0-OpenSSH_9.2p1 Debian-2+deb12u3 knockly-main";
+
+        assertTrue(SshBannerFingerprinter.matches(banner, "knockly-main"));
+        assertTrue(SshBannerFingerprinter.matches(banner, null));
+        assertFalse(SshBannerFingerprinter.matches(banner, "knockly-feed"));
+        assertFalse(SshBannerFingerprinter.matches(banner, "knockly"));
+        assertFalse(SshBannerFingerprinter.matches("SSH-1.5-OldServer", null));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class SubnetPlanTest {
+
+    @Test
+    public void slash24_outwardsFromPhone() {
+        List<String> ips = SubnetPlan.candidates("192.168.0.50", 24, "192.168.0.1", 10000);
+
+        assertEquals(253, ips.size());
+        assertEquals(Arrays.asList("192.168.0.49", "192.168.0.51", "192.168.0.48", "192.168.0.52"),
+                ips.subList(0, 4));
+        assertFalse(ips.contains("192.168.0.50"));
+        assertFalse(ips.contains("192.168.0.0"));
+        assertFalse(ips.contains("192.168.0.255"));
+        assertEquals(253, new HashSet<>(ips).size());
+    }
+
+    @Test
+    public void slash23_coversBothBlocks_phoneBlockFirst() {
+        List<String> ips = SubnetPlan.candidates("10.0.1.20", 23, "10.0.0.1", 10000);
+
+        assertEquals("10.0.1.19", ips.get(0));
+        // 510 usable addresses in a /23, less the phone's own
+        assertEquals("10.0.0.20", ips.get(254));
+        assertEquals(509, new HashSet<>(ips).size());
+        assertTrue(ips.contains("10.0.0.255"));
+        assertTrue(ips.contains("10.0.1.0"));
+        assertFalse(ips.contains("10.0.0.0"));
+        assertFalse(ips.contains("10.0.1.255"));
+    }
+
+    @Test
+    public void slash22_gatewayBlockBeforeOtherBlocks() {
+        List<String> ips = SubnetPlan.candidates("172.16.2.10", 22, "172.16.0.1", 10000);
+
+        assertEquals("172.16.2.9", ips.get(0));
+        // Gateway's block comes straight after the phone's own
+        assertEquals("172.16.0.10", ips.get(255));
+        assertTrue(ips.indexOf("172.16.0.200") < ips.indexOf("172.16.1.10"));
+        assertTrue(ips.indexOf("172.16.0.200") < ips.indexOf("172.16.3.10"));
+        assertFalse(ips.contains("172.16.3.255"));
+        assertFalse(ips.contains("172.16.0.0"));
+        assertEquals(ips.size(), new HashSet<>(ips).size());
+    }
+
+    @Test
+    public void slash16_cappedAndNearestBlocksFirst() {
+        List<String> ips = SubnetPlan.candidates("192.168.100.5", 16, "192.168.0.1", 2000);
+
+        assertEquals(2000, ips.size());
+        assertEquals("192.168.100.4", ips.get(0));
+        assertTrue(ips.contains("192.168.99.5"));
+        assertTrue(ips.contains("192.168.101.5"));
+        assertFalse(ips.contains("192.168.150.5"));
+    }
+
+    @Test
+    public void widePrefix_clampedToSlash16() {
+        List<String> ips = SubnetPlan.candidates("10.1.2.3", 8, "10.0.0.1", 100000);
+
+        assertFalse(ips.contains("10.2.2.3"));
+        assertTrue(ips.contains("10.1.200.3"));
+    }
+}
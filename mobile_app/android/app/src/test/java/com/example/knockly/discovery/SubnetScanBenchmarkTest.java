@@ -0,0 +1,108 @@
+package com.example.knockly.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the selector scanner with the app's original thread pool sweep, {@link PingSweep}.
+ * Fake Pis listen on loopback aliases (127.0.0.x), which Linux routes without any setup.
+ */
+public class SubnetScanBenchmarkTest {
+
+    private static final List<String> PI_ALIASES = Arrays.asList("127.0.0.18", "127.0.0.42", "127.0.0.200");
+
+    private final List<ServerSocket> fakePis = new ArrayList<>();
+    private int port;
+
+    @Before
+    public void startFakePis() {
+        try {
+            for (String ip : PI_ALIASES) {
+                ServerSocket server = new ServerSocket();
+                server.bind(new InetSocketAddress(ip, port));
+                port = server.getLocalPort();
+                fakePis.add(server);
+            }
+        } catch (IOException e) {
+            // Loopback aliases are not routed on every OS (e.g. macOS)
+            Assume.assumeNoException(e);
+        }
+    }
+
+    @After
+    public void stopFakePis() throws IOException {
+        for (ServerSocket server : fakePis) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void selectorScan_findsOnlyListeningHosts() {
+        List<String> found = Collections.synchronizedList(new ArrayList<String>());
+        SelectorSubnetScanner scanner = new SelectorSubnetScanner(
+                SelectorSubnetScanner.subnetCandidates("127.0.0"), port, 300, 0, found::add);
+
+        List<String> hosts = scanner.scan(5000);
+
+        assertEquals(PI_ALIASES.size(), hosts.size());
+        assertTrue(hosts.containsAll(PI_ALIASES));
+        assertEquals(hosts, found);
+    }
+
+    @Test
+    public void rateLimit_spreadsConnectsOut() {
+        // 254 connects at 1000 per second can't finish in much under a quarter of a second
+        SelectorSubnetScanner scanner = new SelectorSubnetScanner(
+                SelectorSubnetScanner.subnetCandidates("127.0.0"), port, 300, 1000, null);
+
+        long start = System.nanoTime();
+        List<String> hosts = scanner.scan(5000);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(hosts.containsAll(PI_ALIASES));
+        assertTrue("Scan took " + elapsedMs + " ms", elapsedMs >= 200);
+    }
+
+    @Test
+    public void benchmark_selectorScanVsPing() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        List<String> pingHosts = new PingSweep("127.0.0").resolve(0);
+        long pingMs = (System.nanoTime() - start) / 1_000_000;
+        int pingThreads = threads.getPeakThreadCount() - baseline;
+
+        baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        start = System.nanoTime();
+        List<String> scanHosts = new SelectorSubnetScanner(
+                SelectorSubnetScanner.subnetCandidates("127.0.0"), port, 300, 0, null).scan(5000);
+        long scanMs = (System.nanoTime() - start) / 1_000_000;
+        int scanThreads = threads.getPeakThreadCount() - baseline;
+
+        System.out.println("Ping sweep:      " + pingMs + " ms, " + pingThreads + " extra threads, "
+                + pingHosts.size() + " host(s)");
+        System.out.println("Selector scan:   " + scanMs + " ms, " + scanThreads + " extra threads, "
+                + scanHosts.size() + " host(s)");
+
+        assertTrue(scanHosts.containsAll(PI_ALIASES));
+        assertTrue(scanThreads <= 2);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.knockly.feed.DecoderBudget.Tier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DecoderBudgetTest {
+
+    private static final int STREAM_FPS = 30;
+
+    @After
+    public void restoreKnobs() {
+        DecoderBudget.reducedFps = 5;
+        DecoderBudget.renderBudgetFps = 75;
+    }
+
+    @Test
+    public void assign_fastPhoneGetsFullThenReducedThenStills() {
+        // 16 decoders, fast enough for 30 streams, drawing is what runs out
+        DecoderBudget budget = new DecoderBudget(16, 900, STREAM_FPS);
+        assertEquals(2, budget.getFullTiles());
+        assertEquals(3, budget.getReducedTiles());
+        assertEquals(6, budget.getMaxPlayers());
+
+        Tier[] tiers = budget.assign(new boolean[]{true, true, true, true, true, true, true});
+        assertArrayEquals(new Tier[]{Tier.FULL, Tier.FULL, Tier.REDUCED, Tier.REDUCED, Tier.REDUCED,
+                Tier.STILL, Tier.STILL}, tiers);
+    }
+
+    @Test
+    public void assign_offscreenTilesGetNothingAndDontUseTheBudget() {
+        DecoderBudget budget = new DecoderBudget(16, 900, STREAM_FPS);
+
+        Tier[] tiers = budget.assign(new boolean[]{false, false, true, true, true});
+        assertArrayEquals(new Tier[]{Tier.OFF, Tier.OFF, Tier.FULL, Tier.FULL, Tier.REDUCED}, tiers);
+    }
+
+    @Test
+    public void assign_fewDecodersLimitsLiveTiles() {
+        // Three decoders, one kept for stills
+        DecoderBudget budget = new DecoderBudget(3, 900, STREAM_FPS);
+        assertEquals(2, budget.getFullTiles());
+        assertEquals(0, budget.getReducedTiles());
+        assertTrue(budget.refreshesStills());
+
+        Tier[] tiers = budget.assign(new boolean[]{true, true, true});
+        assertArrayEquals(new Tier[]{Tier.FULL, Tier.FULL, Tier.STILL}, tiers);
+    }
+
+    @Test
+    public void assign_slowDecoderLimitsLiveTiles() {
+        // Only one stream's worth of decoding
+        DecoderBudget budget = new DecoderBudget(16, 45, STREAM_FPS);
+        assertEquals(1, budget.getFullTiles());
+        assertEquals(0, budget.getReducedTiles());
+        assertEquals(2, budget.getMaxPlayers());
+    }
+
+    @Test
+    public void assign_singleDecoderShowsOneFeedAndFixedStills() {
+        DecoderBudget budget = new DecoderBudget(1, 900, STREAM_FPS);
+        assertEquals(1, budget.getFullTiles());
+        assertFalse(budget.refreshesStills());
+        assertEquals(1, budget.getMaxPlayers());
+
+        Tier[] tiers = budget.assign(new boolean[]{true, true});
+        assertArrayEquals(new Tier[]{Tier.FULL, Tier.STILL}, tiers);
+    }
+
+    @Test
+    public void assign_tooSlowForAnyFeedShowsStills() {
+        DecoderBudget budget = new DecoderBudget(4, 20, STREAM_FPS);
+        assertEquals(0, budget.getFullTiles());
+
+        Tier[] tiers = budget.assign(new boolean[]{true, true});
+        assertArrayEquals(new Tier[]{Tier.STILL, Tier.STILL}, tiers);
+    }
+
+    @Test
+    public void assign_lowerRenderBudgetMovesTilesToReduced() {
+        DecoderBudget.renderBudgetFps = 40;
+        DecoderBudget budget = new DecoderBudget(16, 900, STREAM_FPS);
+        assertEquals(1, budget.getFullTiles());
+        assertEquals(2, budget.getReducedTiles());
+    }
+}
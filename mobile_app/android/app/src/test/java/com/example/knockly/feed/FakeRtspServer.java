@@ -0,0 +1,62 @@
+package com.example.knockly.feed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for the feed Pi's RTSP server on 127.0.0.1, answering each request with the given
+ * status line and a tiny SDP.
+ */
+public class FakeRtspServer {
+
+    private final ServerSocket server;
+    private final String status;
+    private final AtomicInteger describes = new AtomicInteger();
+
+    public FakeRtspServer(String status) throws IOException {
+        this.status = status;
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread accepter = new Thread(this::accept, "fake-rtsp");
+        accepter.setDaemon(true);
+        accepter.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getDescribes() {
+        return describes.get();
+    }
+
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                String request = in.readLine();
+                // Rest of the headers, up to the blank line
+                for (String line; (line = in.readLine()) != null && !line.isEmpty(); ) { }
+                if (request != null && request.startsWith("DESCRIBE ")) describes.incrementAndGet();
+
+                String sdp = "v=0\r\ns=doorbell\r\n";
+                OutputStream out = socket.getOutputStream();
+                out.write((status + "\r\nCSeq: 1\r\nContent-Type: application/sdp\r\nContent-Length: "
+                        + sdp.length() + "\r\n\r\n" + sdp).getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            } catch (IOException e) {
+                // Closed, or the client went away
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class FeedMetricsLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void enable() {
+        FeedMetricsLog.enabled = true;
+    }
+
+    @Test
+    public void append_writesHeaderOnceThenRows() throws Exception {
+        File file = new File(folder.getRoot(), FeedMetricsLog.FILE_NAME);
+        FeedMetricsLog.append(file, "row one");
+        FeedMetricsLog.append(file, "row two");
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("time," + FeedTelemetry.CSV_HEADER, lines.get(0));
+        assertTrue(lines.get(1), lines.get(1).endsWith(",row one"));
+        assertTrue(lines.get(2), lines.get(2).endsWith(",row two"));
+    }
+
+    @Test
+    public void append_rollsOverLargeFile() throws Exception {
+        File file = new File(folder.getRoot(), FeedMetricsLog.FILE_NAME);
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < 1024; i++) row.append('x');
+        while (file.length() <= FeedMetricsLog.MAX_BYTES) {
+            FeedMetricsLog.append(file, row.toString());
+        }
+        long full = file.length();
+
+        FeedMetricsLog.append(file, "newest");
+
+        assertEquals(full, new File(file.getPath() + ".1").length());
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).endsWith(",newest"));
+    }
+
+    @Test
+    public void append_rollsOverFileWithOtherColumns() throws Exception {
+        File file = new File(folder.getRoot(), FeedMetricsLog.FILE_NAME);
+        Files.write(file.toPath(), "time,old,columns\nrow\n".getBytes(StandardCharsets.UTF_8));
+
+        FeedMetricsLog.append(file, "newest");
+
+        assertEquals("time,old,columns", Files.readAllLines(new File(file.getPath() + ".1").toPath()).get(0));
+        assertEquals("time," + FeedTelemetry.CSV_HEADER, Files.readAllLines(file.toPath()).get(0));
+    }
+
+    @Test
+    public void append_doesNothingWhenDisabled() {
+        FeedMetricsLog.enabled = false;
+        File file = new File(folder.getRoot(), FeedMetricsLog.FILE_NAME);
+        FeedMetricsLog.append(file, "row");
+
+        assertTrue(!file.exists());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FeedTelemetryTest {
+
+    private final FeedTelemetry telemetry = new FeedTelemetry(1000, "buffer 250/500/50/50 offset 40", "new");
+
+    @Test
+    public void timeToFirstFrame_fromPlayerBuilt() {
+        assertEquals(-1, telemetry.getTimeToFirstFrameMs());
+        telemetry.onFirstFrame(1800);
+        // Only the first one counts
+        telemetry.onFirstFrame(5000);
+
+        assertEquals(800, telemetry.getTimeToFirstFrameMs());
+    }
+
+    @Test
+    public void rebuffers_onlyCountedAfterFirstReady() {
+        telemetry.onBuffering(1000);
+        telemetry.onReady(1500);
+        telemetry.onBuffering(3000);
+        telemetry.onReady(3400);
+        telemetry.onBuffering(5000);
+
+        assertEquals(2, telemetry.getRebuffers());
+        assertEquals(400 + 100, telemetry.getRebufferMs(5100));
+    }
+
+    @Test
+    public void frames_droppedAndLateAddUp() {
+        telemetry.onDroppedFrames(2);
+        telemetry.onDroppedFrames(3);
+        // Ready early, as a healthy stream's frames are
+        telemetry.onFrameOffsets(250000, 30);
+        // Late on average
+        telemetry.onFrameOffsets(-40000, 10);
+
+        assertEquals(5, telemetry.getDroppedFrames());
+        assertEquals(10, telemetry.getLateFrames());
+    }
+
+    @Test
+    public void frames_earlyAreNotLate() {
+        telemetry.onFrameOffsets(300000, 30);
+        telemetry.onFrameOffsets(0, 30);
+
+        assertEquals(0, telemetry.getLateFrames());
+    }
+
+    @Test
+    public void bitrate_measuredWinsOverAdvertised() {
+        assertEquals(-1, telemetry.getBitrateBps());
+        telemetry.onBitrateAdvertised(2_000_000);
+        assertEquals(2_000_000, telemetry.getBitrateBps());
+
+        telemetry.onBitrateMeasured(1_500_000);
+        telemetry.onBitrateAdvertised(2_000_000);
+        assertEquals(1_500_000, telemetry.getBitrateBps());
+    }
+
+    @Test
+    public void csvRow_matchesHeader() {
+        telemetry.onFirstFrame(1500);
+        telemetry.onDecoderInitialized(120);
+        for (long offset = 100; offset <= 1000; offset += 100) {
+            telemetry.onLatencySample(offset, 300, 1f);
+        }
+        telemetry.onBitrateMeasured(1_500_000);
+
+        String row = telemetry.csvRow(61000, "Pixel, 7", "closed");
+        String[] columns = row.split(",");
+
+        assertEquals(FeedTelemetry.CSV_HEADER.split(",").length, columns.length);
+        assertEquals("Pixel; 7", columns[0]);
+        assertEquals("buffer 250/500/50/50 offset 40", columns[1]);
+        assertEquals("new", columns[2]);
+        assertEquals("60", columns[4]);
+        assertEquals("500", columns[5]);
+        assertEquals("120", columns[6]);
+        // Percentiles are within the histogram's bucket precision
+        long p50 = Long.parseLong(columns[7]);
+        assertTrue(columns[7], p50 >= 500 && p50 <= 530);
+        assertEquals("1000", columns[8]);
+        assertEquals("300", columns[9]);
+        assertEquals("1500", columns[14]);
+    }
+
+    @Test
+    public void overlayText_showsLatestSample() {
+        telemetry.onLatencySample(420, 310, 1.1f);
+
+        String text = telemetry.overlayText(2000);
+        assertTrue(text, text.contains("offset 420 ms"));
+        assertTrue(text, text.contains("buffer 310 ms"));
+        assertTrue(text, text.contains("1.10x"));
+        assertTrue(text, text.contains("bitrate unknown"));
+    }
+}
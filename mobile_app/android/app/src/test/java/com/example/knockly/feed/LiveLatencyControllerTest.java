@@ -0,0 +1,182 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LiveLatencyControllerTest {
+
+    private static final long STEP = LiveLatencyController.SAMPLE_INTERVAL_MS;
+
+    private final LiveLatencyController controller = new LiveLatencyController(300, 3000, 3000, 10000);
+    private long now = 1000;
+    private long position = 0;
+
+    @Test
+    public void onSample_staysAtNormalSpeedWhileKeepingUp() {
+        for (int i = 0; i < 40; i++) {
+            LiveLatencyController.Decision decision = play(STEP, 400);
+            assertFalse(decision.rebuild);
+            assertEquals(1f, decision.speed, 0f);
+        }
+        assertEquals(0, controller.getDriftMs());
+    }
+
+    @Test
+    public void onSample_catchesUpSmallDriftBySpeedingUp() {
+        play(STEP, 400);
+        // A short hiccup leaves the picture 600 ms behind
+        now += 600;
+        LiveLatencyController.Decision decision = play(STEP, 800);
+
+        assertFalse(decision.rebuild);
+        assertEquals(600, controller.getDriftMs());
+        assertEquals(1.15f, decision.speed, 0.001f);
+
+        // Playing at that speed wins the drift back, then it drops to normal speed
+        for (int i = 0; i < 20 && decision.speed > 1f; i++) {
+            decision = play((long) (STEP * decision.speed), 400);
+            assertFalse(decision.rebuild);
+        }
+        assertEquals(1f, decision.speed, 0f);
+        assertTrue(controller.getDriftMs() < LiveLatencyController.TOLERANCE_MS);
+    }
+
+    @Test
+    public void onSample_doesNotSpeedUpWithoutBuffer() {
+        play(STEP, 400);
+        now += 600;
+
+        assertEquals(1f, play(STEP, 50).speed, 0f);
+    }
+
+    @Test
+    public void onSample_rebuildsOnceDriftPassesThreshold() {
+        play(STEP, 400);
+        now += 3500;
+        LiveLatencyController.Decision decision = play(STEP, 400);
+
+        assertTrue(decision.rebuild);
+        assertTrue(decision.reason, decision.reason.startsWith("drifted"));
+        assertEquals(1, controller.getRebuilds());
+    }
+
+    @Test
+    public void onSample_rebuildsWhenPictureStalls() {
+        play(STEP, 400);
+        LiveLatencyController.Decision decision = null;
+        for (int i = 0; i < 6; i++) {
+            now += STEP;
+            decision = sample(0, true, false);
+        }
+
+        assertTrue(decision.rebuild);
+        assertTrue(decision.reason, decision.reason.startsWith("stalled"));
+    }
+
+    @Test
+    public void onSample_pausedIsNotAStallButIsBehindOnceResumed() {
+        play(STEP, 400);
+        for (int i = 0; i < 20; i++) {
+            now += STEP;
+            assertFalse(sample(400, false, false).rebuild);
+        }
+
+        LiveLatencyController.Decision decision = play(STEP, 400);
+        assertTrue(decision.rebuild);
+        assertTrue(decision.reason, decision.reason.startsWith("drifted"));
+    }
+
+    @Test
+    public void onSample_slowConnectIsNotDriftOrStall() {
+        // DESCRIBE, SETUP and PLAY take 4 s, the position stays at 0 meanwhile
+        for (int i = 0; i < 8; i++) {
+            now += STEP;
+            LiveLatencyController.Decision decision = sample(0, true, false);
+            assertFalse(decision.rebuild);
+            assertEquals(1f, decision.speed, 0f);
+            assertEquals(0, controller.getDriftMs());
+        }
+
+        // Then it plays along with the wall clock, which is live
+        for (int i = 0; i < 20; i++) {
+            LiveLatencyController.Decision decision = play(STEP, 250);
+            assertFalse(decision.rebuild);
+            assertEquals(1f, decision.speed, 0f);
+        }
+        assertEquals(0, controller.getDriftMs());
+    }
+
+    @Test
+    public void onSample_rebuildsStreamThatNeverStarts() {
+        // 10 s from the first sample
+        LiveLatencyController.Decision decision = null;
+        for (int i = 0; i < 21; i++) {
+            now += STEP;
+            decision = sample(0, true, false);
+        }
+
+        assertTrue(decision.rebuild);
+        assertTrue(decision.reason, decision.reason.startsWith("not started"));
+    }
+
+    @Test
+    public void onSample_rebuildsOnErrorButNotRepeatedly() {
+        play(STEP, 400);
+        now += STEP;
+        assertTrue(sample(0, true, true).rebuild);
+        now += STEP;
+        assertFalse(sample(0, true, true).rebuild);
+
+        now += LiveLatencyController.MIN_REBUILD_INTERVAL_MS;
+        assertTrue(sample(0, true, true).rebuild);
+        assertEquals(2, controller.getRebuilds());
+    }
+
+    @Test
+    public void onSample_usesLiveOffsetWhenStreamReportsOne() {
+        now += STEP;
+        position += STEP;
+        LiveLatencyController.Decision decision = controller.onSample(now, position, 400, 700, true, false);
+
+        assertEquals(400, controller.getDriftMs());
+        assertEquals(1.1f, decision.speed, 0.001f);
+    }
+
+    @Test
+    public void getLiveOffsetMs_estimatesFromBufferAndDrift() {
+        play(STEP, 400);
+        now += 200;
+        play(STEP, 300);
+
+        assertEquals(500, controller.getLiveOffsetMs());
+        controller.onSample(now + STEP, position + STEP, 300, 900, true, false);
+        assertEquals(900, controller.getLiveOffsetMs());
+    }
+
+    @Test
+    public void reset_measuresNewPlayerFromItsStart() {
+        play(STEP, 400);
+        now += 1000;
+        play(STEP, 400);
+        controller.reset();
+
+        position = 0;
+        LiveLatencyController.Decision decision = play(STEP, 400);
+        assertEquals(0, controller.getDriftMs());
+        assertEquals(1f, decision.speed, 0f);
+    }
+
+    // Wall clock moves on by a step and the picture by advanceMs
+    private LiveLatencyController.Decision play(long advanceMs, long bufferedMs) {
+        now += STEP;
+        position += advanceMs;
+        return controller.onSample(now, position, bufferedMs, -1, true, false);
+    }
+
+    private LiveLatencyController.Decision sample(long bufferedMs, boolean playing, boolean failed) {
+        return controller.onSample(now, position, bufferedMs, -1, playing, failed);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PlayerPoolTest {
+
+    private static final String FRONT = "rtsp://192.168.1.20:8554/doorbell";
+    private static final String BACK = "rtsp://192.168.1.21:8554/doorbell";
+    private static final long WARM_MS = 15000;
+    private static final long IDLE_MS = 60000;
+
+    // Stands in for a real player, remembering what the pool did to it
+    private static class FakePlayer {
+        String uri;
+        int loads;
+        boolean released;
+    }
+
+    private final List<FakePlayer> built = new ArrayList<>();
+    private final PlayerPool<FakePlayer> pool = new PlayerPool<>(new PlayerPool.Players<FakePlayer>() {
+        @Override
+        public FakePlayer create() {
+            FakePlayer player = new FakePlayer();
+            built.add(player);
+            return player;
+        }
+
+        @Override
+        public void load(FakePlayer player, String uri) {
+            player.uri = uri;
+            player.loads++;
+        }
+
+        @Override
+        public void stop(FakePlayer player) {
+            player.uri = null;
+        }
+
+        @Override
+        public void release(FakePlayer player) {
+            player.released = true;
+        }
+    }, 2, WARM_MS, IDLE_MS);
+
+    @Test
+    public void acquire_comingBackSoonGetsPlayerStillPlaying() {
+        PlayerPool<FakePlayer>.Lease first = pool.acquire(FRONT, false, 0);
+        assertEquals(PlayerPool.Source.NEW, first.getSource());
+        first.close(1000, true);
+
+        PlayerPool<FakePlayer>.Lease second = pool.acquire(FRONT, false, 5000);
+        assertEquals(PlayerPool.Source.WARM, second.getSource());
+        assertSame(first.getPlayer(), second.getPlayer());
+        assertEquals(FRONT, second.getPlayer().uri);
+        assertEquals(1, second.getPlayer().loads);
+        assertEquals(1, built.size());
+    }
+
+    @Test
+    public void acquire_comingBackLaterReusesStoppedPlayer() {
+        PlayerPool<FakePlayer>.Lease first = pool.acquire(FRONT, false, 0);
+        first.close(1000, true);
+
+        pool.trim(1000 + WARM_MS);
+        assertNull(first.getPlayer().uri);
+
+        PlayerPool<FakePlayer>.Lease second = pool.acquire(FRONT, false, 1000 + WARM_MS);
+        assertEquals(PlayerPool.Source.REUSED, second.getSource());
+        assertSame(first.getPlayer(), second.getPlayer());
+        assertEquals(2, second.getPlayer().loads);
+        assertEquals(1, built.size());
+    }
+
+    @Test
+    public void acquire_freshReloadsEvenIfStillPlaying() {
+        PlayerPool<FakePlayer>.Lease first = pool.acquire(FRONT, false, 0);
+        first.close(1000, true);
+
+        PlayerPool<FakePlayer>.Lease second = pool.acquire(FRONT, true, 2000);
+        assertEquals(PlayerPool.Source.REUSED, second.getSource());
+        assertEquals(2, second.getPlayer().loads);
+    }
+
+    @Test
+    public void acquire_otherStreamTakesIdlePlayer() {
+        pool.acquire(FRONT, false, 0).close(1000, true);
+
+        PlayerPool<FakePlayer>.Lease back = pool.acquire(BACK, false, 2000);
+        assertEquals(PlayerPool.Source.REUSED, back.getSource());
+        assertEquals(BACK, back.getPlayer().uri);
+        assertEquals(1, built.size());
+    }
+
+    @Test
+    public void acquire_refusedOnceCapInUse() {
+        PlayerPool<FakePlayer>.Lease front = pool.acquire(FRONT, false, 0);
+        PlayerPool<FakePlayer>.Lease rebuild = pool.acquire(FRONT, true, 0);
+        assertNotSame(front.getPlayer(), rebuild.getPlayer());
+
+        assertNull(pool.acquire(BACK, false, 0));
+        assertEquals(1, pool.getRefused());
+
+        front.close(100, false);
+        assertEquals(PlayerPool.Source.REUSED, pool.acquire(BACK, false, 200).getSource());
+        assertEquals(2, built.size());
+    }
+
+    @Test
+    public void close_notWarmStopsPlayerAndRunsCleanup() {
+        PlayerPool<FakePlayer>.Lease lease = pool.acquire(FRONT, false, 0);
+        boolean[] cleanedUp = {false};
+        lease.onClose(() -> cleanedUp[0] = true);
+
+        lease.close(1000, false);
+        // Closing twice doesn't give it back twice
+        lease.close(1000, false);
+
+        assertTrue(cleanedUp[0]);
+        assertNull(lease.getPlayer().uri);
+        assertEquals(1, pool.getIdle());
+        assertEquals(0, pool.getLeased());
+    }
+
+    @Test
+    public void trim_releasesPlayersIdleTooLong() {
+        PlayerPool<FakePlayer>.Lease lease = pool.acquire(FRONT, false, 0);
+        lease.close(1000, true);
+
+        pool.trim(1000 + IDLE_MS - 1);
+        assertEquals(1, pool.getIdle());
+        pool.trim(1000 + IDLE_MS);
+
+        assertEquals(0, pool.getIdle());
+        assertTrue(lease.getPlayer().released);
+    }
+
+    @Test
+    public void setMaxPlayers_releasesPlayersOverLowerCap() {
+        PlayerPool<FakePlayer>.Lease front = pool.acquire(FRONT, false, 0);
+        PlayerPool<FakePlayer>.Lease back = pool.acquire(BACK, false, 0);
+        front.close(100, true);
+
+        pool.setMaxPlayers(1);
+        assertTrue(front.getPlayer().released);
+        assertEquals(0, pool.getIdle());
+
+        // The one left fits under the new cap when it comes back
+        back.close(200, true);
+        assertEquals(false, back.getPlayer().released);
+        assertEquals(1, pool.getIdle());
+        assertSame(back.getPlayer(), pool.acquire(FRONT, false, 300).getPlayer());
+        assertNull(pool.acquire(BACK, false, 300));
+    }
+
+    @Test
+    public void releaseIdle_leavesPlayersInUse() {
+        PlayerPool<FakePlayer>.Lease front = pool.acquire(FRONT, false, 0);
+        PlayerPool<FakePlayer>.Lease back = pool.acquire(BACK, false, 0);
+        back.close(100, true);
+
+        pool.releaseIdle();
+
+        assertTrue(back.getPlayer().released);
+        assertEquals(false, front.getPlayer().released);
+        assertEquals(1, pool.getLeased());
+    }
+}
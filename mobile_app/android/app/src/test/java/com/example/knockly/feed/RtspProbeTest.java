@@ -0,0 +1,48 @@
+package com.example.knockly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+public class RtspProbeTest {
+
+    @Test
+    public void describe_trueWhenStreamServed() throws Exception {
+        FakeRtspServer server = new FakeRtspServer("RTSP/1.0 200 OK");
+        try {
+            assertTrue(RtspProbe.describe("127.0.0.1", server.getPort(), 1000));
+            assertEquals(1, server.getDescribes());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void describe_falseWhenStreamMissing() throws Exception {
+        FakeRtspServer server = new FakeRtspServer("RTSP/1.0 404 Not Found");
+        try {
+            assertFalse(RtspProbe.describe("127.0.0.1", server.getPort(), 1000));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void describe_falseWhenNothingListening() throws Exception {
+        int port;
+        try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            port = unused.getLocalPort();
+        }
+        assertFalse(RtspProbe.describe("127.0.0.1", port, 500));
+    }
+
+    @Test
+    public void uriFor_matchesFeedServer() {
+        assertEquals("rtsp://10.0.0.5:8554/doorbell", RtspProbe.uriFor("10.0.0.5"));
+    }
+}
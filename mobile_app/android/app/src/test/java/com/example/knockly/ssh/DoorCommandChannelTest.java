@@ -0,0 +1,183 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.knockly.utils.SSHUtils;
+import com.jcraft.jsch.JSchException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class DoorCommandChannelTest {
+
+    private static final long ACTUATOR_DELAY_MS = 50;
+
+    private TestSshServer sshServer;
+    private FakeDoorServer doorServer;
+    private int originalSshPort;
+    private SshSessionPool pool;
+    private DoorCommandChannel channel;
+
+    @Before
+    public void start() throws Exception {
+        sshServer = new TestSshServer().start();
+        doorServer = new FakeDoorServer(ACTUATOR_DELAY_MS);
+        originalSshPort = SSHUtils.sshPort;
+        SSHUtils.sshPort = sshServer.getPort();
+        pool = new SshSessionPool();
+        channel = newChannel(doorServer.getPort(), 2000);
+    }
+
+    @After
+    public void stop() throws Exception {
+        channel.close();
+        pool.shutdown();
+        SSHUtils.sshPort = originalSshPort;
+        doorServer.stop();
+        sshServer.stop();
+    }
+
+    private DoorCommandChannel newChannel(int port, long ackTimeoutMs) {
+        return new DoorCommandChannel(pool, TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD,
+                port, ackTimeoutMs);
+    }
+
+    @Test
+    public void send_completesOnAck() throws Exception {
+        DoorCommandChannel.Ack ack = channel.send(DoorCommandChannel.OPEN).get(5, TimeUnit.SECONDS);
+
+        assertEquals(DoorCommandChannel.OPEN, ack.command);
+        assertEquals("opened", ack.detail);
+        assertTrue("Ack after " + ack.latencyMs + " ms", ack.latencyMs >= ACTUATOR_DELAY_MS);
+    }
+
+    @Test
+    public void send_marksEachStageInOrder() throws Exception {
+        LatencyTrace trace = new LatencyTrace(DoorCommandChannel.OPEN);
+        channel.send(DoorCommandChannel.OPEN, trace).get(5, TimeUnit.SECONDS);
+
+        long previous = 0;
+        for (String stage : new String[]{LatencyTrace.SESSION, LatencyTrace.CHANNEL, LatencyTrace.SENT, LatencyTrace.RESULT}) {
+            long elapsedMs = trace.elapsedMs(stage);
+            assertTrue(stage + " at " + elapsedMs + " ms, after " + previous + " ms", elapsedMs >= previous);
+            previous = elapsedMs;
+        }
+        assertTrue(trace.elapsedMs(LatencyTrace.RESULT) - trace.elapsedMs(LatencyTrace.SENT) >= ACTUATOR_DELAY_MS);
+        assertEquals(-1, trace.elapsedMs(LatencyTrace.UI));
+    }
+
+    @Test
+    public void send_reusesOneLineAndLogin() throws Exception {
+        channel.connect();
+        for (int i = 0; i < 5; i++) {
+            channel.send(i % 2 == 0 ? DoorCommandChannel.OPEN : DoorCommandChannel.CLOSE).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, doorServer.getConnections());
+        assertEquals(1, sshServer.getLogins());
+    }
+
+    @Test
+    public void send_matchesAnswersById() throws Exception {
+        CompletableFuture<DoorCommandChannel.Ack> open = channel.send(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> close = channel.send(DoorCommandChannel.CLOSE);
+
+        assertEquals("opened", open.get(5, TimeUnit.SECONDS).detail);
+        assertEquals("closed", close.get(5, TimeUnit.SECONDS).detail);
+        assertTrue(open.get().id != close.get().id);
+    }
+
+    @Test
+    public void send_failsWhenPiRefuses() throws Exception {
+        try {
+            channel.send("jam").get(5, TimeUnit.SECONDS);
+            fail("Expected the command to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DoorCommandChannel.CommandFailedException);
+            assertEquals("door is jammed", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void send_timesOutWithoutAck() throws Exception {
+        channel.close();
+        channel = newChannel(doorServer.getPort(), 200);
+        try {
+            channel.send("ignore").get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void send_slowLoginDoesNotCountTowardsAckTimeout() throws Exception {
+        channel.close();
+        // Logging in takes longer than the actuator is given
+        SshSessionPool slowPool = new SshSessionPool() {
+            @Override
+            public Lease lease(String host, String username, String password) throws JSchException {
+                try {
+                    Thread.sleep(400);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.lease(host, username, password);
+            }
+        };
+        channel = new DoorCommandChannel(slowPool, TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD,
+                doorServer.getPort(), 300);
+        try {
+            assertEquals("opened", channel.send(DoorCommandChannel.OPEN).get(5, TimeUnit.SECONDS).detail);
+        } finally {
+            channel.close();
+            slowPool.shutdown();
+        }
+    }
+
+    @Test
+    public void send_reconnectsAfterLineDrops() throws Exception {
+        channel.send(DoorCommandChannel.OPEN).get(5, TimeUnit.SECONDS);
+        doorServer.dropConnections();
+        Thread.sleep(200);
+
+        assertEquals("closed", channel.send(DoorCommandChannel.CLOSE).get(5, TimeUnit.SECONDS).detail);
+        assertEquals(2, doorServer.getConnections());
+        assertEquals(1, sshServer.getLogins());
+    }
+
+    @Test
+    public void send_failsWithJSchExceptionWhenNoCommandServer() throws Exception {
+        int closedPort = doorServer.getPort();
+        doorServer.stop();
+        channel.close();
+        channel = newChannel(closedPort, 2000);
+
+        try {
+            channel.send(DoorCommandChannel.OPEN).get(5, TimeUnit.SECONDS);
+            fail("Expected the channel to fail to open");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof JSchException);
+        }
+    }
+
+    @Test
+    public void send_afterCloseFails() throws Exception {
+        channel.close();
+        try {
+            channel.send(DoorCommandChannel.OPEN).get(5, TimeUnit.SECONDS);
+            fail("Expected the closed channel to refuse");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DoorCommandDispatcherTest {
+
+    // Commands handed to the Pi, answered by the test
+    private final List<String> sent = new ArrayList<>();
+    private final List<LatencyTrace> traces = new ArrayList<>();
+    private final List<CompletableFuture<DoorCommandChannel.Ack>> answers = new ArrayList<>();
+    private DoorCommandDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new DoorCommandDispatcher((command, trace) -> {
+            synchronized (sent) {
+                sent.add(command);
+                traces.add(trace);
+                CompletableFuture<DoorCommandChannel.Ack> answer = new CompletableFuture<>();
+                answers.add(answer);
+                return answer;
+            }
+        });
+    }
+
+    private void ack(int index) {
+        answers.get(index).complete(new DoorCommandChannel.Ack(index, sent.get(index), "done", 0));
+    }
+
+    @Test
+    public void submit_sendsStraightAwayWhenIdle() throws Exception {
+        CompletableFuture<DoorCommandChannel.Ack> open = dispatcher.submit(DoorCommandChannel.OPEN);
+        assertEquals(1, sent.size());
+
+        ack(0);
+        assertEquals(DoorCommandChannel.OPEN, open.get(1, TimeUnit.SECONDS).command);
+    }
+
+    @Test
+    public void submit_coalescesRepeatedTaps() throws Exception {
+        CompletableFuture<DoorCommandChannel.Ack> first = dispatcher.submit(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> second = dispatcher.submit(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> third = dispatcher.submit(DoorCommandChannel.OPEN);
+
+        assertSame(first, second);
+        assertSame(first, third);
+        ack(0);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void submit_waitsForInFlightBeforeSendingNext() throws Exception {
+        dispatcher.submit(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> close = dispatcher.submit(DoorCommandChannel.CLOSE);
+        assertEquals(1, sent.size());
+
+        ack(0);
+        assertEquals(2, sent.size());
+        assertEquals(DoorCommandChannel.CLOSE, sent.get(1));
+        assertFalse(close.isDone());
+
+        ack(1);
+        assertEquals(DoorCommandChannel.CLOSE, close.get(1, TimeUnit.SECONDS).command);
+    }
+
+    @Test
+    public void submit_queuedCommandKeepsTraceFromItsTap() {
+        LatencyTrace open = new LatencyTrace(DoorCommandChannel.OPEN);
+        LatencyTrace close = new LatencyTrace(DoorCommandChannel.CLOSE);
+        dispatcher.submit(DoorCommandChannel.OPEN, open);
+        dispatcher.submit(DoorCommandChannel.CLOSE, close);
+        // A repeated tap shares the queued command, and its trace
+        dispatcher.submit(DoorCommandChannel.CLOSE, new LatencyTrace(DoorCommandChannel.CLOSE));
+
+        ack(0);
+        assertEquals(2, traces.size());
+        assertSame(open, traces.get(0));
+        assertSame(close, traces.get(1));
+    }
+
+    @Test
+    public void submit_dropsSupersededQueuedCommand() throws Exception {
+        dispatcher.submit(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> close = dispatcher.submit(DoorCommandChannel.CLOSE);
+        // Back to open, which is already on its way
+        CompletableFuture<DoorCommandChannel.Ack> reopen = dispatcher.submit(DoorCommandChannel.OPEN);
+
+        assertTrue(close.isCancelled());
+        try {
+            close.get();
+            fail("Superseded command should not complete");
+        } catch (DoorCommandDispatcher.SupersededException e) {
+            // Expected
+        }
+
+        ack(0);
+        assertEquals(DoorCommandChannel.OPEN, reopen.get(1, TimeUnit.SECONDS).command);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void submit_failureDoesNotBlockNextCommand() throws Exception {
+        CompletableFuture<DoorCommandChannel.Ack> open = dispatcher.submit(DoorCommandChannel.OPEN);
+        CompletableFuture<DoorCommandChannel.Ack> close = dispatcher.submit(DoorCommandChannel.CLOSE);
+
+        answers.get(0).completeExceptionally(new IOException("jammed"));
+        try {
+            open.get(1, TimeUnit.SECONDS);
+            fail("Failed command should report its error");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        ack(1);
+        assertEquals(DoorCommandChannel.CLOSE, close.get(1, TimeUnit.SECONDS).command);
+    }
+
+    @Test
+    public void submit_hammeringKeepsOneInFlightAndEveryTapAnswered() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger sentCount = new AtomicInteger();
+        ExecutorService pi = Executors.newSingleThreadExecutor();
+        DoorCommandDispatcher hammered = new DoorCommandDispatcher((command, trace) -> {
+            sentCount.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                return new DoorCommandChannel.Ack(0, command, "done", 2);
+            }, pi);
+        });
+
+        int taps = 400;
+        List<CompletableFuture<DoorCommandChannel.Ack>> results = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService fingers = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Void>> tapping = new ArrayList<>();
+        for (int finger = 0; finger < 4; finger++) {
+            final int seed = finger;
+            tapping.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < taps / 4; i++) {
+                    String command = (i + seed) % 3 == 0 ? DoorCommandChannel.CLOSE : DoorCommandChannel.OPEN;
+                    CompletableFuture<DoorCommandChannel.Ack> result = hammered.submit(command);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            }, fingers));
+        }
+        start.countDown();
+        CompletableFuture.allOf(tapping.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        for (CompletableFuture<DoorCommandChannel.Ack> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+            } catch (DoorCommandDispatcher.SupersededException e) {
+                // Dropped in favour of a later tap, still an answer
+            }
+        }
+        fingers.shutdown();
+        pi.shutdown();
+
+        assertEquals(1, maxInFlight.get());
+        assertTrue("Sent " + sentCount.get() + " of " + taps + " taps", sentCount.get() < taps);
+    }
+}
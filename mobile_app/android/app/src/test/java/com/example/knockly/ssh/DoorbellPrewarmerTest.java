@@ -0,0 +1,96 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.knockly.feed.FakeRtspServer;
+import com.example.knockly.utils.SSHUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.IntSupplier;
+
+public class DoorbellPrewarmerTest {
+
+    private TestSshServer sshServer;
+    private FakeRtspServer rtspServer;
+    private int originalSshPort;
+    private SshSessionPool pool;
+    private DoorbellPrewarmer prewarmer;
+
+    @Before
+    public void start() throws Exception {
+        sshServer = new TestSshServer().start();
+        rtspServer = new FakeRtspServer("RTSP/1.0 200 OK");
+        originalSshPort = SSHUtils.sshPort;
+        SSHUtils.sshPort = sshServer.getPort();
+        pool = new SshSessionPool();
+        prewarmer = new DoorbellPrewarmer(pool, rtspServer.getPort());
+    }
+
+    @After
+    public void stop() throws Exception {
+        pool.shutdown();
+        SSHUtils.sshPort = originalSshPort;
+        rtspServer.stop();
+        sshServer.stop();
+    }
+
+    // Warming happens in the background, so wait for it to show up
+    private static void awaitCount(IntSupplier count, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (count.getAsInt() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, count.getAsInt());
+    }
+
+    @Test
+    public void warmSession_leaseAfterwardsNeedsNoLogin() throws Exception {
+        prewarmer.warmSession(TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD);
+        awaitCount(sshServer::getLogins, 1);
+
+        try (SshSessionPool.Lease lease = pool.lease(TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD)) {
+            assertTrue(lease.getSession().isConnected());
+        }
+
+        // The lease got the warmed session, it didn't log in again
+        assertEquals(1, sshServer.getLogins());
+    }
+
+    @Test
+    public void warmSession_repeatsWithinIntervalIgnored() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            prewarmer.warmSession(TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD);
+        }
+        awaitCount(sshServer::getLogins, 1);
+        Thread.sleep(100);
+
+        assertEquals(1, sshServer.getLogins());
+    }
+
+    @Test
+    public void warmSession_failedLoginCanBeRetried() throws Exception {
+        prewarmer.warmSession(TestSshServer.HOST, TestSshServer.USERNAME, "wrong");
+
+        // Asked again until the failed login has let go, well within the rewarm interval
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (sshServer.getLogins() == 0 && System.nanoTime() < deadline) {
+            prewarmer.warmSession(TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD);
+            Thread.sleep(50);
+        }
+        awaitCount(sshServer::getLogins, 1);
+    }
+
+    @Test
+    public void warmFeed_describesStreamOnce() throws Exception {
+        prewarmer.warmFeed(TestSshServer.HOST);
+        prewarmer.warmFeed(TestSshServer.HOST);
+        awaitCount(rtspServer::getDescribes, 1);
+        Thread.sleep(100);
+
+        assertEquals(1, rtspServer.getDescribes());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.knockly.ssh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for the command server in auto_processing.py.
+ * Answers "ID open" and "ID close" with "ID ack opened/closed" after the actuator delay,
+ * "ID jam" with an error, and never answers "ID ignore".
+ */
+class FakeDoorServer {
+
+    private final ServerSocket server;
+    private final long actuatorDelayMs;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    FakeDoorServer(long actuatorDelayMs) throws IOException {
+        this.actuatorDelayMs = actuatorDelayMs;
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.incrementAndGet();
+                    sockets.add(socket);
+                    Thread handler = new Thread(() -> serve(socket), "fake-door");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "fake-door-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Connections made so far, one per command channel
+    int getConnections() {
+        return connections.get();
+    }
+
+    // Drops every command channel, like auto_processing.py restarting
+    void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    void stop() throws IOException {
+        server.close();
+        dropConnections();
+    }
+
+    private void serve(Socket socket) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            OutputStream out = socket.getOutputStream();
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] parts = line.split(" ");
+                String id = parts[0];
+                String command = parts[1];
+
+                // Each command moves the door on its own thread, like the Arduino answering later
+                Thread actuator = new Thread(() -> {
+                    try {
+                        Thread.sleep(actuatorDelayMs);
+                        String answer;
+                        if (command.equals("open")) answer = id + " ack opened";
+                        else if (command.equals("close")) answer = id + " ack closed";
+                        else if (command.equals("jam")) answer = id + " err door is jammed";
+                        else return;
+
+                        synchronized (out) {
+                            out.write((answer + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        }
+                    } catch (IOException | InterruptedException ignored) {
+                    }
+                });
+                actuator.setDaemon(true);
+                actuator.start();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
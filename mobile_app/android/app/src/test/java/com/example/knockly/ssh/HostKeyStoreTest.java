@@ -0,0 +1,145 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.HostKeyRepository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+public class HostKeyStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] PI_KEY = key((byte) 1);
+    private static final byte[] OTHER_KEY = key((byte) 2);
+    private static final String HOME = "bssid:aa:bb:cc:dd:ee:01";
+    private static final String OFFICE = "bssid:aa:bb:cc:dd:ee:02";
+
+    @Test
+    public void check_trustsFirstKeyAndRemembersIt() throws Exception {
+        File file = folder.newFile();
+        HostKeyStore store = new HostKeyStore(file);
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.20", PI_KEY));
+        store.confirm(new HostKey("192.168.1.20", PI_KEY));
+
+        HostKeyStore reloaded = new HostKeyStore(file);
+        assertEquals(1, reloaded.getHostKey("192.168.1.20", "ssh-ed25519").length);
+        assertEquals(HostKeyRepository.OK, reloaded.check("192.168.1.20", PI_KEY));
+    }
+
+    @Test
+    public void check_refusesDifferentKeyForKnownHost() throws Exception {
+        HostKeyStore store = new HostKeyStore(folder.newFile());
+        trust(store, "192.168.1.20", PI_KEY);
+
+        assertEquals(HostKeyRepository.CHANGED, store.check("192.168.1.20", OTHER_KEY));
+        // Still refused next time, the new key wasn't saved
+        assertEquals(HostKeyRepository.CHANGED, store.check("192.168.1.20", OTHER_KEY));
+    }
+
+    @Test
+    public void check_acceptsKnownPiAtAddressOfAnother() throws Exception {
+        HostKeyStore store = new HostKeyStore(folder.newFile());
+        trust(store, "192.168.1.20", PI_KEY);
+        trust(store, "192.168.1.21", OTHER_KEY);
+
+        // The Pis swapped addresses
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.20", OTHER_KEY));
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.21", PI_KEY));
+    }
+
+    @Test
+    public void clear_forgetsEveryKey() throws Exception {
+        HostKeyStore store = new HostKeyStore(folder.newFile());
+        trust(store, "192.168.1.20", PI_KEY);
+        store.clear();
+
+        assertEquals(0, store.getHostKey().length);
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.20", OTHER_KEY));
+    }
+
+    @Test
+    public void check_reflashedPiIsTrustedAgainOnceNetworkForgotten() throws Exception {
+        File file = folder.newFile();
+        HostKeyStore store = new HostKeyStore(file, () -> HOME);
+        trust(store, "192.168.1.20", PI_KEY);
+
+        // Reinstalled, so it has a new key
+        assertEquals(HostKeyRepository.CHANGED, store.check("192.168.1.20", OTHER_KEY));
+        store.clearNetwork();
+        trust(store, "192.168.1.20", OTHER_KEY);
+        assertEquals(HostKeyRepository.OK, new HostKeyStore(file, () -> HOME).check("192.168.1.20", OTHER_KEY));
+    }
+
+    @Test
+    public void check_keepsKeysApartPerNetwork() throws Exception {
+        String[] network = {HOME};
+        File file = folder.newFile();
+        HostKeyStore store = new HostKeyStore(file, () -> network[0]);
+        trust(store, "192.168.1.20", PI_KEY);
+
+        // Another site's Pi at the same address
+        network[0] = OFFICE;
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.20", OTHER_KEY));
+        store.confirm(new HostKey("192.168.1.20", OTHER_KEY));
+        store.clearNetwork();
+
+        // Forgetting the other site's keys leaves these
+        network[0] = HOME;
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.20", PI_KEY));
+        assertEquals(HostKeyRepository.CHANGED, store.check("192.168.1.20", OTHER_KEY));
+        assertEquals(1, new HostKeyStore(file, () -> HOME).getHostKey().length);
+    }
+
+    @Test
+    public void check_keyNotKeptWhenLoginFails() throws Exception {
+        File file = folder.newFile();
+        HostKeyStore store = new HostKeyStore(file);
+        // Some other SSH server on the network, the Pi's login doesn't work on it
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.30", OTHER_KEY));
+        store.discard(new HostKey("192.168.1.30", OTHER_KEY));
+
+        assertEquals(0, new HostKeyStore(file).getHostKey().length);
+        // Nothing was pinned, so the Pi that later gets the address is trusted on its first login
+        assertEquals(HostKeyRepository.OK, store.check("192.168.1.30", PI_KEY));
+    }
+
+    @Test
+    public void typeOf_readsTypeFromBlob() {
+        assertEquals("ssh-ed25519", HostKeyStore.typeOf(PI_KEY));
+        assertEquals("", HostKeyStore.typeOf(new byte[]{0, 0, 0, 9}));
+    }
+
+    // A key seen on a login that worked
+    private static void trust(HostKeyStore store, String host, byte[] key) throws Exception {
+        assertEquals(HostKeyRepository.OK, store.check(host, key));
+        store.confirm(new HostKey(host, key));
+    }
+
+    // An Ed25519 host key blob whose 32 key bytes are all fill
+    private static byte[] key(byte fill) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] type = "ssh-ed25519".getBytes(StandardCharsets.US_ASCII);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(type.length);
+        out.write(type, 0, type.length);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(32);
+        for (int i = 0; i < 32; i++) {
+            out.write(fill);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+public class KeyPairIdentityTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestSshServer server;
+    private SshConnector connector;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new TestSshServer().start();
+        connector = new SshConnector();
+        connector.setHostKeyStore(new HostKeyStore(folder.newFile()));
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    // The embedded server can't check Ed25519 signatures, so this checks the SSH encoding instead
+    @Test
+    public void ed25519_signsInSshFormat() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        KeyPairIdentity identity = new KeyPairIdentity("test", keyPair);
+        assertEquals(KeyPairIdentity.ED25519, identity.getAlgName());
+        assertTrue(identity.getAuthorizedKey().startsWith("ssh-ed25519 AAAAC3NzaC1lZDI1NTE5AAAAI"));
+        assertTrue(identity.getAuthorizedKey().endsWith(" test"));
+
+        // string "ssh-ed25519", string key, the key being the last 32 bytes of the X.509 encoding
+        byte[] blob = identity.getPublicKeyBlob();
+        byte[] encoded = keyPair.getPublic().getEncoded();
+        assertEquals(4 + 11 + 4 + 32, blob.length);
+        assertArrayEquals(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length),
+                Arrays.copyOfRange(blob, blob.length - 32, blob.length));
+
+        // string "ssh-ed25519", string signature
+        byte[] data = "session data".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = identity.getSignature(data, KeyPairIdentity.ED25519);
+        assertEquals(4 + 11 + 4 + 64, signature.length);
+        Signature verifier = Signature.getInstance("Ed25519");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        assertTrue(verifier.verify(Arrays.copyOfRange(signature, signature.length - 64, signature.length)));
+    }
+
+    @Test
+    public void ecdsaP256_logsInWithoutPassword() throws Exception {
+        KeyPairIdentity identity = new KeyPairIdentity("test", p256());
+        assertEquals(KeyPairIdentity.ECDSA_P256, identity.getAlgName());
+
+        assertKeyLogsIn(identity);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rsa_isNotSupported() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        new KeyPairIdentity("test", generator.generateKeyPair());
+    }
+
+    @Test
+    public void derToSsh_stripsDerFraming() throws Exception {
+        // SEQUENCE { INTEGER 0x00ff, INTEGER 0x01 }
+        byte[] der = {0x30, 0x07, 0x02, 0x02, 0x00, (byte) 0xff, 0x02, 0x01, 0x01};
+        byte[] ssh = KeyPairIdentity.derToSsh(der);
+
+        byte[] expected = {0, 0, 0, 2, 0x00, (byte) 0xff, 0, 0, 0, 1, 0x01};
+        assertArrayEquals(expected, ssh);
+    }
+
+    private void assertKeyLogsIn(KeyPairIdentity identity) throws Exception {
+        connector.setIdentity(identity);
+        server.authorize(identity.getAuthorizedKey());
+
+        Session session = connector.newSession(TestSshServer.USERNAME, TestSshServer.HOST, server.getPort(), "wrong");
+        session.connect(5000);
+        try {
+            assertTrue(session.isConnected());
+            assertEquals(0, server.getLogins());
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    @Test(expected = JSchException.class)
+    public void unauthorizedKey_isRefused() throws Exception {
+        connector.setIdentity(new KeyPairIdentity("test", p256()));
+        connector.newSession(TestSshServer.USERNAME, TestSshServer.HOST, server.getPort(), "wrong").connect(5000);
+    }
+
+    static KeyPair p256() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
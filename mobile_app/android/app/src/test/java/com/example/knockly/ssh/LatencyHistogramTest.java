@@ -0,0 +1,90 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class LatencyHistogramTest {
+
+    @After
+    public void resetMetrics() {
+        DoorLatencyMetrics.reset();
+    }
+
+    @Test
+    public void buckets_coverEveryValueOnce() {
+        for (long value = 0; value <= LatencyHistogram.MAX_VALUE_MS; value++) {
+            int bucket = LatencyHistogram.bucketFor(value);
+            assertTrue(value + " below its bucket", LatencyHistogram.lowestValue(bucket) <= value);
+            assertTrue(value + " above its bucket", LatencyHistogram.lowestValue(bucket + 1) > value);
+        }
+    }
+
+    @Test
+    public void percentiles_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(950, histogram.getPercentile(95));
+        assertWithin(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentiles_smallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) histogram.record(12);
+        histogram.record(25);
+
+        assertEquals(12, histogram.getPercentile(50));
+        assertEquals(12, histogram.getPercentile(99));
+        assertEquals(25, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentiles_emptyIsZero() {
+        assertEquals(0, new LatencyHistogram().getPercentile(99));
+    }
+
+    @Test
+    public void export_writesRowPerTransportAndStage() throws Exception {
+        LatencyTrace trace = new LatencyTrace(DoorCommandChannel.OPEN);
+        trace.mark(LatencyTrace.SENT);
+        trace.mark(LatencyTrace.RESULT);
+        DoorLatencyMetrics.record(trace);
+        trace.setTransport(LatencyTrace.TRANSPORT_SCRIPT);
+        DoorLatencyMetrics.record(trace);
+
+        File file = File.createTempFile("door_latency", ".csv");
+        try {
+            DoorLatencyMetrics.export(file);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+            assertEquals("transport,stage,count,p50_ms,p95_ms,p99_ms,max_ms", lines.get(0));
+            assertEquals(5, lines.size());
+            assertTrue(lines.get(1), lines.get(1).startsWith("channel,sent,1,"));
+            assertTrue(lines.get(4), lines.get(4).startsWith("script,result,1,"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Percentiles are reported as the top of their bucket, at most ~6% over
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.07);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.knockly.ssh;
+
+import com.example.knockly.utils.SSHUtils;
+import com.jcraft.jsch.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the app's own SSH calls, {@link SSHUtils#startSSH} and {@link SSHUtils#execSSHCmd},
+ * against a {@link TestSshServer} on loopback that answers the door scripts straight away.
+ * Run through {@link SshBenchmarkTest}, which also reports the bytes allocated per call.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SshBenchmark {
+
+    // Sent exactly as IndvDoorbellActivity sends them
+    static final String OPEN_CMD = "\nchmod +x open.sh\n./open.sh\n";
+    static final String CLOSE_CMD = "\nchmod +x close.sh\n./close.sh\n";
+    // Below OpenSSH's default MaxSessions of 10 channels per login
+    static final int CONCURRENT_COMMANDS = 8;
+
+    // The Pi, with a session already logged in for the command benchmarks
+    @State(Scope.Benchmark)
+    public static class Pi {
+        TestSshServer server;
+        Session session;
+        private int originalSshPort;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            // The door scripts arrive as "chmod +x open.sh" then "./open.sh"
+            server = new TestSshServer().handle("chmod", (args, in, out, err) -> {
+                if (args.contains("./open.sh")) {
+                    out.write("opened\n".getBytes(StandardCharsets.UTF_8));
+                } else if (args.contains("./close.sh")) {
+                    out.write("closed\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    return 127;
+                }
+                return 0;
+            }).start();
+            originalSshPort = SSHUtils.sshPort;
+            SSHUtils.sshPort = server.getPort();
+            session = login();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            SSHUtils.stopSSH(session);
+            SSHUtils.sshPort = originalSshPort;
+            server.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Crypto {
+        @Param({"CHACHA20", "AES_GCM", "DEFAULT"})
+        public String profile;
+        private SshCryptoProfile original;
+
+        @Setup(Level.Trial)
+        public void apply() {
+            original = SshConnector.cryptoProfile;
+            SshConnector.cryptoProfile = SshCryptoProfile.valueOf(profile);
+        }
+
+        @TearDown(Level.Trial)
+        public void restore() {
+            SshConnector.cryptoProfile = original;
+        }
+    }
+
+    // Connecting and logging in, as every discovery check and the old per-page logins did
+    @Benchmark
+    public void handshake(Pi pi, Crypto crypto) {
+        SSHUtils.stopSSH(login());
+    }
+
+    // One door command on a warm session, from sending to the exit status coming back
+    @Benchmark
+    public int execRoundTrip(Pi pi) {
+        return check(SSHUtils.execSSHCmd(OPEN_CMD, pi.session));
+    }
+
+    // Commands from several threads sharing the one session, each on its own channel
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(CONCURRENT_COMMANDS)
+    public int execConcurrent(Pi pi) {
+        return check(SSHUtils.execSSHCmd(CLOSE_CMD, pi.session));
+    }
+
+    private static Session login() {
+        Session session = SSHUtils.startSSH(TestSshServer.USERNAME, TestSshServer.HOST, TestSshServer.PASSWORD);
+        if (session == null) throw new IllegalStateException("Could not log in to the test server");
+        return session;
+    }
+
+    // A failed command would be timed as a fast one, so fail the benchmark instead
+    private static int check(int exitStatus) {
+        if (exitStatus != 0) throw new IllegalStateException("Command exited with " + exitStatus);
+        return exitStatus;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runs {@link SshBenchmark} with JMH and prints time per call, throughput and bytes allocated per call.
+ * Skipped unless -Pjmh.full is passed to Gradle, timings on a shared build machine say little.
+ */
+public class SshBenchmarkTest {
+
+    private static final boolean FULL = Boolean.getBoolean("knockly.jmh.full");
+
+    @Test
+    public void benchmark_report() throws RunnerException {
+        Assume.assumeTrue("Benchmarks only run with -Pjmh.full", FULL);
+
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(SshBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        Result<?> roundTrip = null;
+        List<Result<?>> handshakes = new ArrayList<>();
+        System.out.println(String.format("%-34s %14s %16s", "Benchmark", "Score", "Allocated"));
+        for (RunResult run : results) {
+            String name = run.getParams().getBenchmark().replace(SshBenchmark.class.getName() + ".", "");
+            String profile = run.getParams().getParam("profile");
+            if (profile != null) name += " (" + profile + ")";
+
+            Result<?> score = run.getPrimaryResult();
+            Result<?> allocated = run.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (name.startsWith("execRoundTrip")) roundTrip = score;
+            if (name.startsWith("handshake")) handshakes.add(score);
+            System.out.println(String.format("%-34s %8.2f %-6s %10.0f B/op", name, score.getScore(),
+                    score.getScoreUnit(), allocated == null ? Double.NaN : allocated.getScore()));
+        }
+
+        assertEquals(5, results.size());
+        assertNotNull(roundTrip);
+        assertEquals(SshCryptoProfile.values().length, handshakes.size());
+        // A command on a pooled session has to beat logging in again with any profile, or pooling is pointless
+        for (Result<?> handshake : handshakes) {
+            assertTrue("Round trip of " + roundTrip.getScore() + " ms, handshake of " + handshake.getScore() + " ms",
+                    roundTrip.getScore() < handshake.getScore());
+        }
+    }
+}
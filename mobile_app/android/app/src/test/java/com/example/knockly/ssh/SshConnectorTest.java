@@ -0,0 +1,115 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Base64;
+
+public class SshConnectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestSshServer server;
+    private HostKeyStore hostKeys;
+    private SshConnector connector;
+    private SshCryptoProfile originalProfile;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new TestSshServer().start();
+        hostKeys = new HostKeyStore(folder.newFile());
+        connector = new SshConnector();
+        connector.setHostKeyStore(hostKeys);
+        originalProfile = SshConnector.cryptoProfile;
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        SshConnector.cryptoProfile = originalProfile;
+        server.stop();
+    }
+
+    @Test
+    public void everyProfile_logsIn() throws Exception {
+        for (SshCryptoProfile profile : SshCryptoProfile.values()) {
+            SshConnector.cryptoProfile = profile;
+            Session session = connect("admin");
+            assertTrue(profile.name(), session.isConnected());
+            session.disconnect();
+        }
+    }
+
+    @Test
+    public void installKey_letsNextLoginSkipPassword() throws Exception {
+        connector.setIdentity(new KeyPairIdentity("test", KeyPairIdentityTest.p256()));
+
+        Session first = connect("admin");
+        connector.installKey(first);
+
+        // The key is added in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                connect("wrong").disconnect();
+                break;
+            } catch (JSchException e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(50);
+            }
+        }
+        first.disconnect();
+
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    public void newSession_refusesPiWhoseKeyChanged() throws Exception {
+        connect("admin").disconnect();
+        HostKey[] saved = hostKeys.getHostKey();
+        assertEquals(1, saved.length);
+
+        // A different server, with its own key, now answers at an address the first key was saved for
+        TestSshServer impostor = new TestSshServer().start();
+        try {
+            hostKeys.add(new HostKey("[" + TestSshServer.HOST + "]:" + impostor.getPort(),
+                    Base64.getDecoder().decode(saved[0].getKey())), null);
+            connector.newSession("admin", TestSshServer.HOST, impostor.getPort(), "admin").connect(5000);
+            fail("Logged in to a server with a changed host key");
+        } catch (JSchException e) {
+            assertEquals(0, impostor.getLogins());
+        } finally {
+            impostor.stop();
+        }
+    }
+
+    @Test
+    public void connect_failedLoginLeavesHostKeyUnsaved() throws Exception {
+        try {
+            connect("wrong");
+            fail("Logged in with the wrong password");
+        } catch (JSchException e) {
+            assertEquals(0, hostKeys.getHostKey().length);
+        }
+
+        connect("admin").disconnect();
+        assertEquals(1, hostKeys.getHostKey().length);
+    }
+
+    private Session connect(String password) throws JSchException {
+        Session session = connector.newSession(TestSshServer.USERNAME, TestSshServer.HOST, server.getPort(), password);
+        connector.connect(session, 5000);
+        return session;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.knockly.utils.SSHUtils;
+import com.jcraft.jsch.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SshExecTest {
+
+    private TestSshServer server;
+    private int originalSshPort;
+    private SshSessionPool pool;
+    private SshSessionPool.Lease lease;
+    private Session session;
+
+    @Before
+    public void connect() throws Exception {
+        server = new TestSshServer().start();
+        originalSshPort = SSHUtils.sshPort;
+        SSHUtils.sshPort = server.getPort();
+        pool = new SshSessionPool();
+        lease = pool.lease(TestSshServer.HOST, TestSshServer.USERNAME, TestSshServer.PASSWORD);
+        session = lease.getSession();
+    }
+
+    @After
+    public void disconnect() throws Exception {
+        lease.close();
+        pool.shutdown();
+        SSHUtils.sshPort = originalSshPort;
+        server.stop();
+    }
+
+    @Test
+    public void exec_returnsOutputAndExitStatus() throws Exception {
+        SshExec.Result result = SshExec.exec(session, "echo hello").get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, result.exitStatus);
+        assertTrue(result.isSuccess());
+        assertEquals("hello\n", result.stdout);
+    }
+
+    @Test
+    public void exec_returnsRealFailureStatus() throws Exception {
+        assertEquals(3, SshExec.exec(session, "exit 3").get(5, TimeUnit.SECONDS).exitStatus);
+
+        SshExec.Result result = SshExec.exec(session, "stderr oops").get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.exitStatus);
+        assertEquals("oops\n", result.stderr);
+    }
+
+    @Test
+    public void exec_streamsOutputAsItArrives() throws Exception {
+        List<String> chunks = Collections.synchronizedList(new ArrayList<String>());
+        CompletableFuture<SshExec.Result> future = SshExec.exec(session, "lines 20", 5000,
+                (chunk, stderr) -> chunks.add(chunk));
+
+        // Lines are 10ms apart, so some arrive well before the command finishes
+        long deadline = System.currentTimeMillis() + 5000;
+        while (chunks.isEmpty()) {
+            if (System.currentTimeMillis() > deadline) fail("No output arrived");
+            Thread.sleep(5);
+        }
+        assertFalse(future.isDone());
+
+        SshExec.Result result = future.get(5, TimeUnit.SECONDS);
+        assertTrue(result.stdout.startsWith("line 1\n"));
+        assertTrue(result.stdout.endsWith("line 20\n"));
+        assertEquals(result.stdout, String.join("", chunks));
+    }
+
+    @Test
+    public void exec_timesOut() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            SshExec.exec(session, "sleep 10000", 200, null).get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+
+        // The session is still fine for the next command
+        assertEquals(0, SshExec.exec(session, "echo again").get(5, TimeUnit.SECONDS).exitStatus);
+    }
+
+    @Test
+    public void exec_canBeCancelled() throws Exception {
+        CompletableFuture<SshExec.Result> future = SshExec.exec(session, "sleep 10000", 0, null);
+        Thread.sleep(100);
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertEquals(0, SshExec.exec(session, "echo again").get(5, TimeUnit.SECONDS).exitStatus);
+    }
+
+    @Test
+    public void execSSHCmd_returnsExitStatus() {
+        assertEquals(0, SSHUtils.execSSHCmd("echo hello", session));
+        assertEquals(3, SSHUtils.execSSHCmd("exit 3", session));
+    }
+
+    @Test
+    public void execBatch_splitsResultsPerCommandOverOneChannel() throws Exception {
+        server.runUnhandledInShell();
+        int commandsBefore = server.getCommands();
+
+        List<SshExec.Result> results = SshExec.execBatch(session, Arrays.asList(
+                "echo one; echo oops >&2",
+                "printf two\nexit 3",
+                "cd /",
+                "pwd")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, server.getCommands() - commandsBefore);
+        assertEquals(4, results.size());
+        assertEquals(0, results.get(0).exitStatus);
+        assertEquals("one\n", results.get(0).stdout);
+        assertEquals("oops\n", results.get(0).stderr);
+        // Runs after a failure, and keeps output without a trailing newline as it was
+        assertEquals(3, results.get(1).exitStatus);
+        assertEquals("two", results.get(1).stdout);
+        assertEquals("", results.get(1).stderr);
+        // Each command has its own subshell, so the cd doesn't carry over
+        assertEquals(0, results.get(2).exitStatus);
+        assertEquals("", results.get(2).stdout);
+        assertFalse(results.get(3).stdout.equals("/\n"));
+    }
+
+    @Test
+    public void execBatch_commandsAfterScriptIsKilledFail() throws Exception {
+        server.runUnhandledInShell();
+
+        // $$ is the script's own shell, not the command's subshell
+        List<SshExec.Result> results = SshExec.execBatch(session, Arrays.asList(
+                "echo before",
+                "echo partial; kill -9 $$",
+                "echo never")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, results.get(0).exitStatus);
+        assertEquals("before\n", results.get(0).stdout);
+        assertEquals(-1, results.get(1).exitStatus);
+        assertEquals("partial\n", results.get(1).stdout);
+        assertEquals(-1, results.get(2).exitStatus);
+        assertEquals("", results.get(2).stdout);
+    }
+
+    @Test
+    public void execSSHCmds_returnsEveryResult() {
+        server.runUnhandledInShell();
+
+        List<SshExec.Result> results = SSHUtils.execSSHCmds(Arrays.asList("echo hello", "exit 3"), session);
+
+        assertEquals("hello\n", results.get(0).stdout);
+        assertEquals(3, results.get(1).exitStatus);
+
+        session.disconnect();
+        for (SshExec.Result failed : SSHUtils.execSSHCmds(Arrays.asList("echo hello", "exit 3"), session)) {
+            assertEquals(-1, failed.exitStatus);
+        }
+    }
+
+    @Test
+    public void exec_doesNotSpinWhileWaiting() throws Exception {
+        Map<Long, Long> cpuBefore = threadCpuNanos();
+        long start = System.nanoTime();
+
+        SshExec.exec(session, "sleep 500").get(5, TimeUnit.SECONDS);
+
+        long waitedNanos = System.nanoTime() - start;
+        long cpuNanos = 0;
+        for (Map.Entry<Long, Long> thread : threadCpuNanos().entrySet()) {
+            cpuNanos += thread.getValue() - cpuBefore.getOrDefault(thread.getKey(), 0L);
+        }
+        // Waiting should cost a small part of the time waited, a thread spinning on it would cost all of it
+        assertTrue("Used " + cpuNanos / 1_000_000 + " ms of CPU in " + waitedNanos / 1_000_000 + " ms",
+                cpuNanos < waitedNanos / 2);
+    }
+
+    // CPU used so far by each Java thread. The JVM's own compiler threads aren't included, on a
+    // single core they can still be busy with the login when the command starts
+    private static Map<Long, Long> threadCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<Long, Long> cpu = new HashMap<>();
+        for (long id : threads.getAllThreadIds()) {
+            long nanos = threads.getThreadCpuTime(id);
+            if (nanos >= 0) cpu.put(id, nanos);
+        }
+        return cpu;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+
+import com.jcraft.jsch.Session;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times whole SSH logins, from opening the socket to being logged in, for each
+ * {@link SshCryptoProfile} with a password and with a P-256 key (the embedded server can't check
+ * Ed25519 signatures), against an embedded server.
+ * The server runs on the same machine, so the numbers are the cost of the handshake itself;
+ * on a Pi each round trip and the Pi's slower crypto come on top.
+ * Skipped unless -Pjmh.full is passed to Gradle, like {@link SshBenchmarkTest}.
+ */
+public class SshHandshakeBenchmarkTest {
+
+    private static final boolean FULL = Boolean.getBoolean("knockly.jmh.full");
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestSshServer server;
+    private SshConnector connector;
+    private KeyPairIdentity identity;
+    private SshCryptoProfile originalProfile;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new TestSshServer().start();
+        connector = new SshConnector();
+        connector.setHostKeyStore(new HostKeyStore(folder.newFile()));
+        identity = new KeyPairIdentity("bench", KeyPairIdentityTest.p256());
+        server.authorize(identity.getAuthorizedKey());
+        originalProfile = SshConnector.cryptoProfile;
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        SshConnector.cryptoProfile = originalProfile;
+        server.stop();
+    }
+
+    @Test
+    public void benchmark_report() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Pjmh.full", FULL);
+
+        List<Result> results = new ArrayList<>();
+        for (SshCryptoProfile profile : SshCryptoProfile.values()) {
+            results.add(run(profile, false));
+            results.add(run(profile, true));
+        }
+
+        System.out.println(String.format("%-10s %-9s %10s %10s %10s", "Profile", "Auth", "Median", "p95", "Max"));
+        for (Result result : results) {
+            System.out.println(result);
+        }
+
+        // Every password login got in first time, and the key logins never fell back to the password
+        assertEquals(SshCryptoProfile.values().length * (WARMUP + RUNS), server.getLogins());
+    }
+
+    private Result run(SshCryptoProfile profile, boolean keyAuth) throws Exception {
+        SshConnector.cryptoProfile = profile;
+        connector.setIdentity(keyAuth ? identity : null);
+        String password = keyAuth ? "wrong" : TestSshServer.PASSWORD;
+
+        for (int i = 0; i < WARMUP; i++) {
+            login(password);
+        }
+        double[] timesMs = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            timesMs[i] = login(password);
+        }
+        Arrays.sort(timesMs);
+        return new Result(profile, keyAuth, timesMs);
+    }
+
+    private double login(String password) throws Exception {
+        long start = System.nanoTime();
+        Session session = connector.newSession(TestSshServer.USERNAME, TestSshServer.HOST, server.getPort(), password);
+        session.connect(5000);
+        long end = System.nanoTime();
+        session.disconnect();
+        return (end - start) / 1_000_000.0;
+    }
+
+    private static class Result {
+        final SshCryptoProfile profile;
+        final boolean keyAuth;
+        final double[] sortedMs;
+
+        Result(SshCryptoProfile profile, boolean keyAuth, double[] sortedMs) {
+            this.profile = profile;
+            this.keyAuth = keyAuth;
+            this.sortedMs = sortedMs;
+        }
+
+        String name() {
+            return profile + (keyAuth ? " key" : " password");
+        }
+
+        double medianMs() {
+            return sortedMs[sortedMs.length / 2];
+        }
+
+        double p95Ms() {
+            return sortedMs[(int) Math.ceil(sortedMs.length * 0.95) - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %-9s %7.1f ms %7.1f ms %7.1f ms", profile, keyAuth ? "key" : "password",
+                    medianMs(), p95Ms(), sortedMs[sortedMs.length - 1]);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.knockly.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.knockly.utils.SSHUtils;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SshSessionPoolTest {
+
+    private static final String HOST = TestSshServer.HOST;
+
+    private TestSshServer server;
+    private int originalSshPort;
+    private SshSessionPool pool;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new TestSshServer().start();
+        originalSshPort = SSHUtils.sshPort;
+        SSHUtils.sshPort = server.getPort();
+        pool = new SshSessionPool();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        pool.shutdown();
+        SSHUtils.sshPort = originalSshPort;
+        server.stop();
+    }
+
+    @Test
+    public void lease_reusesWarmSession() throws Exception {
+        Session first;
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            first = lease.getSession();
+            assertTrue(first.isConnected());
+        }
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            assertSame(first, lease.getSession());
+        }
+
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    public void lease_sharesSessionBetweenConcurrentUsers() throws Exception {
+        try (SshSessionPool.Lease a = pool.lease(HOST, "admin", "admin");
+             SshSessionPool.Lease b = pool.lease(HOST, "admin", "admin")) {
+            assertSame(a.getSession(), b.getSession());
+        }
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    public void lease_wrongPasswordThrows() {
+        try {
+            pool.lease(HOST, "admin", "wrong").close();
+            fail("Expected the login to be refused");
+        } catch (JSchException expected) {
+            assertEquals(0, server.getLogins());
+        }
+    }
+
+    @Test
+    public void checkHealth_reconnectsDroppedSession() throws Exception {
+        Session first;
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            first = lease.getSession();
+        }
+
+        // Pi reboots or drops the connection
+        server.dropSessions();
+        waitFor(() -> !first.isConnected());
+
+        pool.checkHealth();
+        waitFor(() -> server.getLogins() == 2);
+
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            assertNotSame(first, lease.getSession());
+            assertTrue(lease.getSession().isConnected());
+        }
+        assertEquals(2, server.getLogins());
+    }
+
+    @Test
+    public void invalidate_logsInAgainInBackground() throws Exception {
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            lease.invalidate();
+        }
+        waitFor(() -> server.getLogins() == 2);
+    }
+
+    @Test
+    public void shutdown_stopsHealthChecksAndClosesSessions() throws Exception {
+        Session session;
+        try (SshSessionPool.Lease lease = pool.lease(HOST, "admin", "admin")) {
+            session = lease.getSession();
+        }
+        pool.shutdown();
+        assertTrue(pool.healthCheck.isCancelled());
+        assertFalse(session.isConnected());
+    }
+
+    @Test
+    public void backoff_doublesUpToMax() {
+        assertEquals(SshSessionPool.INITIAL_BACKOFF_MS, SshSessionPool.backoffMs(1));
+        assertEquals(SshSessionPool.INITIAL_BACKOFF_MS * 2, SshSessionPool.backoffMs(2));
+        assertEquals(SshSessionPool.INITIAL_BACKOFF_MS * 8, SshSessionPool.backoffMs(4));
+        assertEquals(SshSessionPool.MAX_BACKOFF_MS, SshSessionPool.backoffMs(40));
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.knockly.ssh;
+
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.common.session.helpers.AbstractSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded SSH server standing in for a Pi, logs in admin/admin on 127.0.0.1, or admin with any
+ * key added by {@link #authorize} or by the app's authorized_keys command.
+ * Exec requests run the handler registered for the first word of the command. Built in:
+ * "echo TEXT", "exit N", "sleep MS", "lines N" (N numbered lines 10ms apart), "stderr TEXT",
+ * and "mkdir ..." which only looks for a quoted authorized_keys line to add.
+ * After {@link #runUnhandledInShell()} any other command is run by the local /bin/sh, like the Pi's shell would.
+ * Port forwarding is allowed, so servers on 127.0.0.1 can stand in for ones on the Pi's loopback.
+ */
+class TestSshServer {
+
+    static final String HOST = "127.0.0.1";
+    static final String USERNAME = "admin";
+    static final String PASSWORD = "admin";
+
+    // Runs one exec request, returns its exit status
+    interface Handler {
+        int run(String args, InputStream in, OutputStream out, OutputStream err) throws Exception;
+    }
+
+    private final SshServer server = SshServer.setUpDefaultServer();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger commands = new AtomicInteger();
+    // "type base64" of each key allowed to log in
+    private final Set<String> authorizedKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean shell;
+
+    TestSshServer() {
+        handle("echo", (args, in, out, err) -> {
+            out.write((args + "\n").getBytes(StandardCharsets.UTF_8));
+            return 0;
+        });
+        handle("exit", (args, in, out, err) -> Integer.parseInt(args.trim()));
+        handle("sleep", (args, in, out, err) -> {
+            Thread.sleep(Long.parseLong(args.trim()));
+            return 0;
+        });
+        handle("lines", (args, in, out, err) -> {
+            for (int i = 1; i <= Integer.parseInt(args.trim()); i++) {
+                out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(10);
+            }
+            return 0;
+        });
+        handle("stderr", (args, in, out, err) -> {
+            err.write((args + "\n").getBytes(StandardCharsets.UTF_8));
+            return 1;
+        });
+        handle("mkdir", (args, in, out, err) -> {
+            int start = args.indexOf('\'');
+            int end = args.indexOf('\'', start + 1);
+            if (start < 0 || end < 0) return 1;
+            authorize(args.substring(start + 1, end));
+            return 0;
+        });
+    }
+
+    // Lets the key in an authorized_keys line log in as admin
+    TestSshServer authorize(String authorizedKey) {
+        String[] parts = authorizedKey.trim().split(" ");
+        authorizedKeys.add(parts[0] + " " + parts[1]);
+        return this;
+    }
+
+    TestSshServer handle(String name, Handler handler) {
+        handlers.put(name, handler);
+        return this;
+    }
+
+    // Commands with no handler, e.g. multi-line scripts, run in /bin/sh -c instead of exiting with 127
+    TestSshServer runUnhandledInShell() {
+        shell = true;
+        return this;
+    }
+
+    TestSshServer start() throws IOException {
+        server.setHost(HOST);
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) -> {
+            boolean accepted = USERNAME.equals(username) && PASSWORD.equals(password);
+            if (accepted) logins.incrementAndGet();
+            return accepted;
+        });
+        server.setPublickeyAuthenticator((username, key, session) ->
+                USERNAME.equals(username) && authorizedKeys.contains(PublicKeyEntry.toString(key)));
+        server.setCommandFactory((channel, command) -> new HandlerCommand(command));
+        // Lets the app reach servers on the "Pi's" loopback through the session
+        server.setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+        server.start();
+        return this;
+    }
+
+    void stop() throws IOException {
+        server.stop(true);
+    }
+
+    int getPort() {
+        return server.getPort();
+    }
+
+    int getLogins() {
+        return logins.get();
+    }
+
+    int getCommands() {
+        return commands.get();
+    }
+
+    // Drops every connection, like the Pi rebooting
+    void dropSessions() {
+        for (AbstractSession session : server.getActiveSessions()) {
+            session.close(true);
+        }
+    }
+
+    private class HandlerCommand implements Command {
+        private final String command;
+        private InputStream in;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback exitCallback;
+        private Thread thread;
+
+        HandlerCommand(String command) {
+            this.command = command.trim();
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exitCallback = callback;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            commands.incrementAndGet();
+            int space = command.indexOf(' ');
+            String name = space < 0 ? command : command.substring(0, space);
+            String args = space < 0 ? "" : command.substring(space + 1);
+            Handler handler = handlers.get(name);
+
+            thread = new Thread(() -> {
+                int status;
+                try {
+                    if (handler != null) status = handler.run(args, in, out, err);
+                    else status = shell ? runInShell(command, out, err) : 127;
+                    out.flush();
+                    err.flush();
+                } catch (Exception e) {
+                    status = 255;
+                }
+                exitCallback.onExit(status);
+            }, "test-ssh-command");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int runInShell(String script, OutputStream out, OutputStream err) throws Exception {
+            Process process = new ProcessBuilder("/bin/sh", "-c", script).start();
+            process.getOutputStream().close();
+            Thread errCopy = new Thread(() -> copy(process.getErrorStream(), err), "test-ssh-stderr");
+            errCopy.start();
+            copy(process.getInputStream(), out);
+            errCopy.join();
+            return process.waitFor();
+        }
+
+        private void copy(InputStream from, OutputStream to) {
+            byte[] buffer = new byte[4096];
+            try {
+                for (int n; (n = from.read(buffer)) >= 0; ) {
+                    to.write(buffer, 0, n);
+                    to.flush();
+                }
+            } catch (IOException ignored) {
+                // The channel closed, the process is stopped by the caller
+            }
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+            if (thread != null) thread.interrupt();
+        }
+    }
+}